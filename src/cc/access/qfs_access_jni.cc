@@ -33,6 +33,7 @@ typedef int64_t __int64;
 #include <jni.h>
 #include <string>
 #include <cstddef>
+#include <cstring>
 #include <iostream>
 #include <vector>
 #include <netinet/in.h>
@@ -46,10 +47,17 @@ using std::endl;
 using std::ostringstream;
 
 #include <fcntl.h>
+#include <pthread.h>
 #include "libclient/KfsClient.h"
+#include "common/kfsatomic.h"
+#include "qcdio/QCMutex.h"
 using namespace KFS;
 
 extern "C" {
+    jint JNI_OnLoad(JavaVM* jvm, void* reserved);
+
+    void JNI_OnUnload(JavaVM* jvm, void* reserved);
+
     jlong Java_com_quantcast_qfs_access_KfsAccess_initF(
         JNIEnv *jenv, jclass jcls, jstring jpath);
 
@@ -90,6 +98,19 @@ extern "C" {
         JNIEnv *jenv, jclass jcls, jlong jptr, jstring joldpath, jstring jnewpath,
         jboolean joverwrite);
 
+    jint Java_com_quantcast_qfs_access_KfsAccess_mkdirsBatch(
+        JNIEnv *jenv, jclass jcls, jlong jptr, jobjectArray jpaths, jint mode,
+        jint jmaxPending, jintArray jstatus);
+
+    jint Java_com_quantcast_qfs_access_KfsAccess_removeBatch(
+        JNIEnv *jenv, jclass jcls, jlong jptr, jobjectArray jpaths,
+        jint jmaxPending, jintArray jstatus);
+
+    jint Java_com_quantcast_qfs_access_KfsAccess_renameBatch(
+        JNIEnv *jenv, jclass jcls, jlong jptr, jobjectArray joldpaths,
+        jobjectArray jnewpaths, jboolean joverwrite, jint jmaxPending,
+        jintArray jstatus);
+
     jint Java_com_quantcast_qfs_access_KfsAccess_exists(
         JNIEnv *jenv, jclass jcls, jlong jptr, jstring jpath);
 
@@ -196,6 +217,19 @@ extern "C" {
     jint Java_com_quantcast_qfs_access_KfsAccess_stat(
         JNIEnv *jenv, jclass jcls, jlong jptr, jstring jpath, jobject attr);
 
+    jint Java_com_quantcast_qfs_access_KfsAccess_statBatch(
+        JNIEnv *jenv, jclass jcls, jlong jptr, jobjectArray jpaths,
+        jint jstart, jint jcount, jobject buf);
+
+    jint Java_com_quantcast_qfs_access_KfsAccess_statPacked(
+        JNIEnv *jenv, jclass jcls, jlong jptr, jstring jpath, jobject buf);
+
+    jint Java_com_quantcast_qfs_access_KfsAccess_statById(
+        JNIEnv *jenv, jclass jcls, jlong jptr, jlong jfileId, jobject attr);
+
+    jint Java_com_quantcast_qfs_access_KfsAccess_openById(
+        JNIEnv *jenv, jclass jcls, jlong jptr, jlong jfileId);
+
     jstring Java_com_quantcast_qfs_access_KfsAccess_strerror(
         JNIEnv *jenv, jclass jcls, jlong jptr, jint jerr);
 
@@ -236,6 +270,18 @@ extern "C" {
     jint Java_com_quantcast_qfs_access_KfsInputChannel_read(
         JNIEnv *jenv, jclass jcls, jlong jptr, jint jfd, jobject buf, jint begin, jint end);
 
+    jint Java_com_quantcast_qfs_access_KfsInputChannel_pread(
+        JNIEnv *jenv, jclass jcls, jlong jptr, jint jfd, jobject buf, jint begin, jint end,
+        jlong jpos);
+
+    jint Java_com_quantcast_qfs_access_KfsInputChannel_readPrefetch(
+        JNIEnv *jenv, jclass jcls, jlong jptr, jint jfd, jobject buf, jint begin, jint end,
+        jlong jpos);
+
+    jlong Java_com_quantcast_qfs_access_KfsInputChannel_readv(
+        JNIEnv *jenv, jclass jcls, jlong jptr, jint jfd, jobjectArray bufs,
+        jintArray begins, jintArray ends, jint count);
+
     jint Java_com_quantcast_qfs_access_KfsInputChannel_close(
         JNIEnv *jenv, jclass jcls, jlong jptr, jint jfd);
 
@@ -249,12 +295,108 @@ extern "C" {
     jint Java_com_quantcast_qfs_access_KfsOutputChannel_sync(
         JNIEnv *jenv, jclass jcls, jlong jptr, jint jfd);
 
+    jlong Java_com_quantcast_qfs_access_KfsOutputChannel_writev(
+        JNIEnv *jenv, jclass jcls, jlong jptr, jint jfd, jobjectArray bufs,
+        jintArray begins, jintArray ends, jint count);
+
+    jint Java_com_quantcast_qfs_access_KfsOutputChannel_writeAsync(
+        JNIEnv *jenv, jclass jcls, jlong jptr, jint jfd, jobject buf, jint begin, jint end);
+
+    jint Java_com_quantcast_qfs_access_KfsOutputChannel_writeAsyncCompletion(
+        JNIEnv *jenv, jclass jcls, jlong jptr, jint jfd);
+
     jint Java_com_quantcast_qfs_access_KfsOutputChannel_close(
         JNIEnv *jenv, jclass jcls, jlong jptr, jint jfd);
 }
 
 namespace
 {
+    // Per JNI entry point call count and time spent in the native code. The
+    // counters are process wide, and are reported by getStats() with the
+    // "JNI." prefix.
+    class JniCallStats
+    {
+    public:
+        JniCallStats(const char* name)
+            : mName(name),
+              mCalls(0),
+              mNanoSec(0),
+              mNextPtr(0)
+        {
+            const char* const kPrefix = "Java_com_quantcast_qfs_access_";
+            const size_t      len     = strlen(kPrefix);
+            if (strncmp(mName, kPrefix, len) == 0) {
+                mName += len;
+            }
+            pthread_mutex_lock(&sMutex);
+            mNextPtr  = sHeadPtr;
+            sHeadPtr  = this;
+            pthread_mutex_unlock(&sMutex);
+        }
+        const char* GetName() const
+            { return mName; }
+        void Update(QCMutex::Time nanoSec)
+        {
+            SyncAddAndFetch(mCalls, int64_t(1));
+            SyncAddAndFetch(mNanoSec, nanoSec);
+        }
+        static void GetStats(vector<string>& stats)
+        {
+            pthread_mutex_lock(&sMutex);
+            const JniCallStats* const head = sHeadPtr;
+            pthread_mutex_unlock(&sMutex);
+            ostringstream os;
+            for (const JniCallStats* p = head; p; p = p->mNextPtr) {
+                stats.push_back(string("JNI.") + p->mName + ".Calls");
+                os.str(string());
+                os << SyncAddAndFetch(p->mCalls, int64_t(0));
+                stats.push_back(os.str());
+                stats.push_back(string("JNI.") + p->mName + ".Usec");
+                os.str(string());
+                os << SyncAddAndFetch(p->mNanoSec, int64_t(0)) / 1000;
+                stats.push_back(os.str());
+            }
+        }
+    private:
+        const char*         mName;
+        mutable volatile int64_t mCalls;
+        mutable volatile int64_t mNanoSec;
+        const JniCallStats* mNextPtr;
+
+        static pthread_mutex_t     sMutex;
+        static const JniCallStats* sHeadPtr;
+    };
+    pthread_mutex_t     JniCallStats::sMutex   = PTHREAD_MUTEX_INITIALIZER;
+    const JniCallStats* JniCallStats::sHeadPtr = 0;
+
+    // Times the entry point, and sets the client op name for the client
+    // mutex accounting for the duration of the call.
+    class JniCallTimer
+    {
+    public:
+        JniCallTimer(JniCallStats& stats)
+            : mStats(stats),
+              mStart(QCMutex::Now()),
+              mPrevOpName(KfsClient::SetCurrentOpName(stats.GetName()))
+            {}
+        ~JniCallTimer()
+        {
+            KfsClient::SetCurrentOpName(mPrevOpName);
+            mStats.Update(QCMutex::Now() - mStart);
+        }
+    private:
+        JniCallStats&       mStats;
+        const QCMutex::Time mStart;
+        const char* const   mPrevOpName;
+    private:
+        JniCallTimer(const JniCallTimer&);
+        JniCallTimer& operator=(const JniCallTimer&);
+    };
+
+#define QFS_JNI_ENTRY_POINT() \
+    static JniCallStats qfsJniCallStats(__FUNCTION__); \
+    JniCallTimer const qfsJniCallTimer(qfsJniCallStats)
+
     inline void setStr(string & dst, JNIEnv * jenv, jstring src)
     {
         if (! src) {
@@ -266,11 +408,324 @@ namespace
             jenv->ReleaseStringUTFChars(src, s);
         }
     }
+
+    inline bool setStrs(vector<string>& dst, JNIEnv * jenv, jobjectArray src)
+    {
+        if (! src) {
+            return false;
+        }
+        const jsize cnt = jenv->GetArrayLength(src);
+        dst.resize(cnt);
+        for (jsize i = 0; i < cnt; i++) {
+            jstring const str = (jstring)jenv->GetObjectArrayElement(src, i);
+            if (! str) {
+                return false;
+            }
+            setStr(dst[i], jenv, str);
+            jenv->DeleteLocalRef(str);
+        }
+        return true;
+    }
+
+    inline jint setStatus(JNIEnv * jenv, jintArray jstatus,
+        const vector<int>& status)
+    {
+        if (jenv->GetArrayLength(jstatus) < (jsize)status.size()) {
+            return -EINVAL;
+        }
+        if (! status.empty()) {
+            jenv->SetIntArrayRegion(jstatus, 0, (jsize)status.size(),
+                (const jint*)&status[0]);
+        }
+        return 0;
+    }
+
+    // Read into or write from the sequence of direct buffer ranges with a
+    // single JNI call. All ranges are validated before any transfer. Adjacent
+    // ranges, i.e. ranges that start in memory right at the end of the
+    // previous one, are merged and transferred with one client call. The
+    // remaining ranges are transferred with one client call each, as the
+    // client has no vector read or write. The read stops at the first short
+    // read, i.e. at EOF.
+    // Returns the total number of bytes transferred, or the error code.
+    jlong ioVector(JNIEnv * jenv, KfsClient* clnt, int fd, jobjectArray bufs,
+        jintArray begins, jintArray ends, jint count, bool readFlag)
+    {
+        if (! bufs || ! begins || ! ends || count < 0 ||
+                jenv->GetArrayLength(bufs) < count ||
+                jenv->GetArrayLength(begins) < count ||
+                jenv->GetArrayLength(ends) < count) {
+            return -EINVAL;
+        }
+        if (count <= 0) {
+            return 0;
+        }
+        vector<jint> begs(count);
+        vector<jint> lims(count);
+        jenv->GetIntArrayRegion(begins, 0, count, &begs[0]);
+        jenv->GetIntArrayRegion(ends, 0, count, &lims[0]);
+        vector<char*>  ptrs;
+        vector<size_t> sizes;
+        ptrs.reserve(count);
+        sizes.reserve(count);
+        for (jint i = 0; i < count; i++) {
+            jobject const buf  = jenv->GetObjectArrayElement(bufs, i);
+            char* const   addr = buf ?
+                (char*)jenv->GetDirectBufferAddress(buf) : 0;
+            const jlong   cap  = buf ? jenv->GetDirectBufferCapacity(buf) : -1;
+            if (buf) {
+                jenv->DeleteLocalRef(buf);
+            }
+            const jint begin = begs[i];
+            const jint end   = lims[i];
+            if (! addr || cap < 0 || begin < 0 || end > cap || begin > end) {
+                return -EINVAL;
+            }
+            if (begin == end) {
+                continue;
+            }
+            char* const  ptr  = addr + begin;
+            const size_t size = (size_t)(end - begin);
+            if (! ptrs.empty() && ptrs.back() + sizes.back() == ptr) {
+                sizes.back() += size;
+            } else {
+                ptrs.push_back(ptr);
+                sizes.push_back(size);
+            }
+        }
+        jlong total = 0;
+        for (size_t i = 0; i < ptrs.size(); i++) {
+            const ssize_t ret = readFlag ?
+                clnt->Read(fd, ptrs[i], sizes[i]) :
+                clnt->Write(fd, ptrs[i], sizes[i]);
+            if (ret < 0) {
+                // Return partial read, the error will be reported by the
+                // subsequent read.
+                return ((readFlag && 0 < total) ? total : (jlong)ret);
+            }
+            total += ret;
+            if ((size_t)ret < sizes[i]) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    // Big endian serialization, matches java.nio.ByteBuffer default order.
+    class PackedWriter
+    {
+    public:
+        PackedWriter(char* ptr, char* end)
+            : mPtr(ptr),
+              mEnd(end)
+            {}
+        size_t Remaining() const
+            { return (size_t)(mEnd - mPtr); }
+        void Put8(int8_t val)
+            { *mPtr++ = (char)val; }
+        void Put16(int16_t val)
+        {
+            Put8((int8_t)(val >> 8));
+            Put8((int8_t)val);
+        }
+        void Put32(int32_t val)
+        {
+            Put16((int16_t)(val >> 16));
+            Put16((int16_t)val);
+        }
+        void Put64(int64_t val)
+        {
+            Put32((int32_t)(val >> 32));
+            Put32((int32_t)val);
+        }
+        void Put(const string& str)
+        {
+            memcpy(mPtr, str.data(), str.size());
+            mPtr += str.size();
+        }
+        // Readdir plus record size. The owner and group names lengths are
+        // passed explicitly, as the names can be omitted.
+        static size_t AttrSize(const KfsFileAttr& attr,
+            size_t unameLen, size_t gnameLen)
+        {
+            return (
+                (64 * 4 + 32 * 2 + 8 + 32 * 6 + 16 + 64 + 8 * 2 + 32 * 2) / 8 +
+                attr.filename.size() + unameLen + gnameLen +
+                (attr.isDirectory ? 2 * 64/8 : 64/8)
+            );
+        }
+        // Readdir plus record, the same format as the opendir input channel
+        // uses, see KfsAccess.PackedFileAttr.decode().
+        void PutAttr(const KfsFileAttr& attr,
+            const string* uname, const string* gname)
+        {
+            Put64((int64_t)attr.mtime.tv_sec * 1000 +
+                attr.mtime.tv_usec / 1000);
+            Put64((int64_t)attr.ctime.tv_sec * 1000 +
+                attr.ctime.tv_usec / 1000);
+            Put64((int64_t)attr.crtime.tv_sec * 1000 +
+                attr.crtime.tv_usec / 1000);
+            Put64(attr.fileSize);
+            Put32(attr.numReplicas);
+            Put32((int32_t)attr.filename.size());
+            Put8(attr.isDirectory ? 1 : 0);
+            Put32(attr.numStripes);
+            Put32(attr.numRecoveryStripes);
+            Put32(attr.striperType);
+            Put32(attr.stripeSize);
+            Put32(attr.user);
+            Put32(attr.group);
+            Put16(attr.mode);
+            Put64(attr.fileId);
+            if (attr.isDirectory) {
+                Put64(attr.fileCount());
+                Put64(attr.dirCount());
+            } else {
+                Put64(attr.chunkCount());
+            }
+            Put8(attr.minSTier);
+            Put8(attr.maxSTier);
+            Put32(uname ? (int32_t)uname->size() : 0);
+            Put32(gname ? (int32_t)gname->size() : 0);
+            Put(attr.filename);
+            if (uname) {
+                Put(*uname);
+            }
+            if (gname) {
+                Put(*gname);
+            }
+        }
+    private:
+        char*       mPtr;
+        char* const mEnd;
+    };
+
+    // Class and field ids resolved once by JNI_OnLoad(). The global class
+    // references keep the classes, and therefore the ids, valid until the
+    // library is unloaded.
+    enum FileAttrField
+    {
+        kAttrIsDirectory,
+        kAttrFilesize,
+        kAttrModificationTime,
+        kAttrAttrChangeTime,
+        kAttrCreationTime,
+        kAttrReplication,
+        kAttrStriperType,
+        kAttrNumStripes,
+        kAttrNumRecoveryStripes,
+        kAttrStripeSize,
+        kAttrOwner,
+        kAttrGroup,
+        kAttrMode,
+        kAttrFileId,
+        kAttrDirCount,
+        kAttrFileCount,
+        kAttrChunkCount,
+        kAttrMinSTier,
+        kAttrMaxSTier,
+        kAttrFilename,
+        kAttrOwnerName,
+        kAttrGroupName,
+        kAttrFieldCount
+    };
+
+    const char* const kFileAttrFields[kAttrFieldCount][2] = {
+        { "isDirectory",        "Z" },
+        { "filesize",           "J" },
+        { "modificationTime",   "J" },
+        { "attrChangeTime",     "J" },
+        { "creationTime",       "J" },
+        { "replication",        "I" },
+        { "striperType",        "I" },
+        { "numStripes",         "I" },
+        { "numRecoveryStripes", "I" },
+        { "stripeSize",         "I" },
+        { "owner",              "J" },
+        { "group",              "J" },
+        { "mode",               "I" },
+        { "fileId",             "J" },
+        { "dirCount",           "J" },
+        { "fileCount",          "J" },
+        { "chunkCount",         "J" },
+        { "minSTier",           "B" },
+        { "maxSTier",           "B" },
+        { "filename",           "Ljava/lang/String;" },
+        { "ownerName",          "Ljava/lang/String;" },
+        { "groupName",          "Ljava/lang/String;" }
+    };
+
+    jclass   sStringClass      = 0;
+    jclass   sStringArrayClass = 0;
+    jclass   sFileAttrClass    = 0;
+    jfieldID sFileAttrFieldIds[kAttrFieldCount];
+
+    jclass newGlobalClassRef(JNIEnv * jenv, const char* name)
+    {
+        jclass const cls = jenv->FindClass(name);
+        if (! cls) {
+            return 0;
+        }
+        jclass const ret = (jclass)jenv->NewGlobalRef(cls);
+        jenv->DeleteLocalRef(cls);
+        return ret;
+    }
+
+    void deleteJniIds(JNIEnv * jenv)
+    {
+        jclass* const classes[] =
+            { &sStringClass, &sStringArrayClass, &sFileAttrClass };
+        for (size_t i = 0; i < sizeof(classes) / sizeof(classes[0]); i++) {
+            if (*classes[i]) {
+                jenv->DeleteGlobalRef(*classes[i]);
+                *classes[i] = 0;
+            }
+        }
+    }
+
+    bool initJniIds(JNIEnv * jenv)
+    {
+        if (! (sStringClass = newGlobalClassRef(jenv, "java/lang/String")) ||
+                ! (sStringArrayClass =
+                    newGlobalClassRef(jenv, "[Ljava/lang/String;")) ||
+                ! (sFileAttrClass = newGlobalClassRef(jenv,
+                    "com/quantcast/qfs/access/KfsFileAttr"))) {
+            deleteJniIds(jenv);
+            return false;
+        }
+        for (int i = 0; i < kAttrFieldCount; i++) {
+            if (! (sFileAttrFieldIds[i] = jenv->GetFieldID(sFileAttrClass,
+                    kFileAttrFields[i][0], kFileAttrFields[i][1]))) {
+                deleteJniIds(jenv);
+                return false;
+            }
+        }
+        return true;
+    }
+}
+
+jint JNI_OnLoad(JavaVM* jvm, void* reserved)
+{
+    JNIEnv* jenv = 0;
+    if (jvm->GetEnv((void**)&jenv, JNI_VERSION_1_4) != JNI_OK || ! jenv ||
+            ! initJniIds(jenv)) {
+        return JNI_ERR;
+    }
+    return JNI_VERSION_1_4;
+}
+
+void JNI_OnUnload(JavaVM* jvm, void* reserved)
+{
+    JNIEnv* jenv = 0;
+    if (jvm->GetEnv((void**)&jenv, JNI_VERSION_1_4) == JNI_OK && jenv) {
+        deleteJniIds(jenv);
+    }
 }
 
 jlong Java_com_quantcast_qfs_access_KfsAccess_initF(
     JNIEnv *jenv, jclass jcls, jstring jpath)
 {
+    QFS_JNI_ENTRY_POINT();
     string path;
     setStr(path, jenv, jpath);
     KfsClient* const clnt = Connect(path.c_str());
@@ -280,6 +735,7 @@ jlong Java_com_quantcast_qfs_access_KfsAccess_initF(
 jint Java_com_quantcast_qfs_access_KfsAccess_compareChunkReplicas(
     JNIEnv *jenv, jclass jcls, jlong jptr, jstring jpath, jobject stringbuffermd5)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -308,6 +764,7 @@ jint Java_com_quantcast_qfs_access_KfsAccess_compareChunkReplicas(
 jlong Java_com_quantcast_qfs_access_KfsAccess_initS(
     JNIEnv *jenv, jclass jcls, jstring jmetaServerHost, jint metaServerPort)
 {
+    QFS_JNI_ENTRY_POINT();
     string path;
     setStr(path, jenv, jmetaServerHost);
     KfsClient* const clnt = Connect(path, metaServerPort);
@@ -317,6 +774,7 @@ jlong Java_com_quantcast_qfs_access_KfsAccess_initS(
 void Java_com_quantcast_qfs_access_KfsAccess_destroy(
     JNIEnv *jenv, jclass jcls, jlong jptr)
 {
+    QFS_JNI_ENTRY_POINT();
     KfsClient* const clnt = (KfsClient*)jptr;
     delete clnt;
 }
@@ -324,6 +782,7 @@ void Java_com_quantcast_qfs_access_KfsAccess_destroy(
 jint Java_com_quantcast_qfs_access_KfsAccess_cd(
     JNIEnv *jenv, jclass jcls, jlong jptr, jstring jpath)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -337,6 +796,7 @@ jint Java_com_quantcast_qfs_access_KfsAccess_cd(
 jint Java_com_quantcast_qfs_access_KfsAccess_mkdir(
     JNIEnv *jenv, jclass jcls, jlong jptr, jstring jpath, jint mode)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -350,6 +810,7 @@ jint Java_com_quantcast_qfs_access_KfsAccess_mkdir(
 jint Java_com_quantcast_qfs_access_KfsAccess_mkdirs(
     JNIEnv *jenv, jclass jcls, jlong jptr, jstring jpath, jint mode)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -363,6 +824,7 @@ jint Java_com_quantcast_qfs_access_KfsAccess_mkdirs(
 jint Java_com_quantcast_qfs_access_KfsAccess_rmdir(
     JNIEnv *jenv, jclass jcls, jlong jptr, jstring jpath)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -376,6 +838,7 @@ jint Java_com_quantcast_qfs_access_KfsAccess_rmdir(
 jint Java_com_quantcast_qfs_access_KfsAccess_rmdirs(
     JNIEnv *jenv, jclass jcls, jlong jptr, jstring jpath)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -389,6 +852,7 @@ jint Java_com_quantcast_qfs_access_KfsAccess_rmdirs(
 jobjectArray Java_com_quantcast_qfs_access_KfsAccess_readdir(
     JNIEnv *jenv, jclass jcls, jlong jptr, jstring jpath, jboolean jpreloadattr)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return 0;
     }
@@ -403,16 +867,8 @@ jobjectArray Java_com_quantcast_qfs_access_KfsAccess_readdir(
             clnt->Readdir(path.c_str(), entries)) != 0) {
         return 0;
     }
-    jclass jstrClass = jenv->FindClass("java/lang/String");
-    if (! jstrClass) {
-        jclass excl = jenv->FindClass("java/lang/ClassNotFoundException");
-        if (excl) {
-            jenv->ThrowNew(excl, 0);
-        }
-        return 0;
-    }
     const jsize  cnt      = jpreloadattr ? fattr.size() : entries.size();
-    jobjectArray jentries = jenv->NewObjectArray(cnt, jstrClass, 0);
+    jobjectArray jentries = jenv->NewObjectArray(cnt, sStringClass, 0);
     if (! jentries) {
         return 0;
     }
@@ -433,6 +889,7 @@ jint Java_com_quantcast_qfs_access_KfsAccess_open(
     jint jnumReplicas, jint jnumStripes, jint jnumRecoveryStripes,
     jint jstripeSize, jint jstripedType, jint jcreateMode)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -463,6 +920,7 @@ jint Java_com_quantcast_qfs_access_KfsAccess_open(
 jint Java_com_quantcast_qfs_access_KfsInputChannel_close(
     JNIEnv *jenv, jclass jcls, jlong jptr, jint jfd)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -474,6 +932,7 @@ jint Java_com_quantcast_qfs_access_KfsInputChannel_close(
 jint Java_com_quantcast_qfs_access_KfsOutputChannel_close(
     JNIEnv *jenv, jclass jcls, jlong jptr, jint jfd)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -487,6 +946,7 @@ jint Java_com_quantcast_qfs_access_KfsAccess_create(
     jint jnumStripes, jint jnumRecoveryStripes, jint jstripeSize, jint jstripedType,
     jboolean foreceType, jint mode, jint minSTier, jint maxSTier)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -503,6 +963,7 @@ jint Java_com_quantcast_qfs_access_KfsAccess_create2(
     JNIEnv *jenv, jclass jcls, jlong jptr, jstring jpath, jboolean jexclusive,
     jstring jcreateParams)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -517,6 +978,7 @@ jint Java_com_quantcast_qfs_access_KfsAccess_create2(
 jint Java_com_quantcast_qfs_access_KfsAccess_remove(
     JNIEnv *jenv, jclass jcls, jlong jptr, jstring jpath)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -531,6 +993,7 @@ jint Java_com_quantcast_qfs_access_KfsAccess_rename(
     JNIEnv *jenv, jclass jcls, jlong jptr, jstring joldpath,
     jstring jnewpath, jboolean joverwrite)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -543,9 +1006,73 @@ jint Java_com_quantcast_qfs_access_KfsAccess_rename(
     return clnt->Rename(opath.c_str(), npath.c_str(), joverwrite);
 }
 
+// The batch calls below store the per path status, 0 or -errno, into the
+// status array, and return 0, or -errno if the call fails as a whole.
+jint Java_com_quantcast_qfs_access_KfsAccess_mkdirsBatch(
+    JNIEnv *jenv, jclass jcls, jlong jptr, jobjectArray jpaths, jint mode,
+    jint jmaxPending, jintArray jstatus)
+{
+    QFS_JNI_ENTRY_POINT();
+    if (! jptr) {
+        return -EFAULT;
+    }
+    KfsClient* const clnt = (KfsClient*)jptr;
+
+    vector<string> paths;
+    if (! jstatus || ! setStrs(paths, jenv, jpaths)) {
+        return -EINVAL;
+    }
+    vector<int> status;
+    const int   ret = clnt->Mkdirs(paths, (kfsMode_t)mode, status,
+        jmaxPending);
+    return (ret != 0 ? ret : setStatus(jenv, jstatus, status));
+}
+
+jint Java_com_quantcast_qfs_access_KfsAccess_removeBatch(
+    JNIEnv *jenv, jclass jcls, jlong jptr, jobjectArray jpaths,
+    jint jmaxPending, jintArray jstatus)
+{
+    QFS_JNI_ENTRY_POINT();
+    if (! jptr) {
+        return -EFAULT;
+    }
+    KfsClient* const clnt = (KfsClient*)jptr;
+
+    vector<string> paths;
+    if (! jstatus || ! setStrs(paths, jenv, jpaths)) {
+        return -EINVAL;
+    }
+    vector<int> status;
+    const int   ret = clnt->Remove(paths, status, jmaxPending);
+    return (ret != 0 ? ret : setStatus(jenv, jstatus, status));
+}
+
+jint Java_com_quantcast_qfs_access_KfsAccess_renameBatch(
+    JNIEnv *jenv, jclass jcls, jlong jptr, jobjectArray joldpaths,
+    jobjectArray jnewpaths, jboolean joverwrite, jint jmaxPending,
+    jintArray jstatus)
+{
+    QFS_JNI_ENTRY_POINT();
+    if (! jptr) {
+        return -EFAULT;
+    }
+    KfsClient* const clnt = (KfsClient*)jptr;
+
+    vector<string> opaths, npaths;
+    if (! jstatus || ! setStrs(opaths, jenv, joldpaths) ||
+            ! setStrs(npaths, jenv, jnewpaths)) {
+        return -EINVAL;
+    }
+    vector<int> status;
+    const int   ret = clnt->Rename(opaths, npaths, joverwrite, status,
+        jmaxPending);
+    return (ret != 0 ? ret : setStatus(jenv, jstatus, status));
+}
+
 jlong Java_com_quantcast_qfs_access_KfsAccess_setDefaultIoBufferSize(
     JNIEnv *jenv, jclass jcls, jlong jptr, jlong jsize)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -557,6 +1084,7 @@ jlong Java_com_quantcast_qfs_access_KfsAccess_setDefaultIoBufferSize(
 jlong Java_com_quantcast_qfs_access_KfsAccess_getDefaultIoBufferSize(
     JNIEnv *jenv, jclass jcls, jlong jptr)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -568,6 +1096,7 @@ jlong Java_com_quantcast_qfs_access_KfsAccess_getDefaultIoBufferSize(
 jlong Java_com_quantcast_qfs_access_KfsAccess_setDefaultReadAheadSize(
     JNIEnv *jenv, jclass jcls, jlong jptr, jlong jsize)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -579,6 +1108,7 @@ jlong Java_com_quantcast_qfs_access_KfsAccess_setDefaultReadAheadSize(
 jlong Java_com_quantcast_qfs_access_KfsAccess_getDefaultReadAheadSize(
     JNIEnv *jenv, jclass jcls, jlong jptr)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -590,6 +1120,7 @@ jlong Java_com_quantcast_qfs_access_KfsAccess_getDefaultReadAheadSize(
 jlong Java_com_quantcast_qfs_access_KfsAccess_setIoBufferSize(
     JNIEnv *jenv, jclass jcls, jlong jptr, jint jfd, jlong jsize)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -601,6 +1132,7 @@ jlong Java_com_quantcast_qfs_access_KfsAccess_setIoBufferSize(
 jlong Java_com_quantcast_qfs_access_KfsAccess_getIoBufferSize(
     JNIEnv *jenv, jclass jcls, jlong jptr, jint jfd)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -612,6 +1144,7 @@ jlong Java_com_quantcast_qfs_access_KfsAccess_getIoBufferSize(
 jlong Java_com_quantcast_qfs_access_KfsAccess_setReadAheadSize(
     JNIEnv *jenv, jclass jcls, jlong jptr, jint jfd, jlong jsize)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -623,6 +1156,7 @@ jlong Java_com_quantcast_qfs_access_KfsAccess_setReadAheadSize(
 jlong Java_com_quantcast_qfs_access_KfsAccess_getReadAheadSize(
     JNIEnv *jenv, jclass jcls, jlong jptr, jint jfd)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -634,6 +1168,7 @@ jlong Java_com_quantcast_qfs_access_KfsAccess_getReadAheadSize(
 jint Java_com_quantcast_qfs_access_KfsAccess_getStripedType(
     JNIEnv *jenv, jclass jcls, jlong jptr, jstring jpath)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -650,6 +1185,7 @@ jint Java_com_quantcast_qfs_access_KfsAccess_getStripedType(
 void Java_com_quantcast_qfs_access_KfsAccess_setFileAttributeRevalidateTime(
     JNIEnv *jenv, jclass jcls, jlong jptr, jint secs)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return;
     }
@@ -660,6 +1196,7 @@ void Java_com_quantcast_qfs_access_KfsAccess_setFileAttributeRevalidateTime(
 jint Java_com_quantcast_qfs_access_KfsAccess_chmod(
     JNIEnv *jenv, jclass jcls, jlong jptr, jstring jpath, jint mode)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -672,6 +1209,7 @@ jint Java_com_quantcast_qfs_access_KfsAccess_chmod(
 jint Java_com_quantcast_qfs_access_KfsAccess_chmodr(
     JNIEnv *jenv, jclass jcls, jlong jptr, jstring jpath, jint mode)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -684,6 +1222,7 @@ jint Java_com_quantcast_qfs_access_KfsAccess_chmodr(
 jint Java_com_quantcast_qfs_access_KfsAccess_fchmod(
     JNIEnv *jenv, jclass jcls, jlong jptr, jint jfd, jint mode)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -694,6 +1233,7 @@ jint Java_com_quantcast_qfs_access_KfsAccess_fchmod(
 jint Java_com_quantcast_qfs_access_KfsAccess_chowns(
     JNIEnv *jenv, jclass jcls, jlong jptr, jstring jpath, jstring juser, jstring jgroup)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -714,6 +1254,7 @@ jint Java_com_quantcast_qfs_access_KfsAccess_chowns(
 jint Java_com_quantcast_qfs_access_KfsAccess_chownsr(
     JNIEnv *jenv, jclass jcls, jlong jptr, jstring jpath, jstring juser, jstring jgroup)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -734,6 +1275,7 @@ jint Java_com_quantcast_qfs_access_KfsAccess_chownsr(
 jint Java_com_quantcast_qfs_access_KfsAccess_chown(
     JNIEnv *jenv, jclass jcls, jlong jptr, jstring jpath, jlong user, jlong group)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -746,6 +1288,7 @@ jint Java_com_quantcast_qfs_access_KfsAccess_chown(
 jint Java_com_quantcast_qfs_access_KfsAccess_chownr(
     JNIEnv *jenv, jclass jcls, jlong jptr, jstring jpath, jlong user, jlong group)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -758,6 +1301,7 @@ jint Java_com_quantcast_qfs_access_KfsAccess_chownr(
 jint Java_com_quantcast_qfs_access_KfsAccess_chownR(
     JNIEnv *jenv, jclass jcls, jlong jptr, jstring jpath, jlong user, jlong group)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -770,6 +1314,7 @@ jint Java_com_quantcast_qfs_access_KfsAccess_chownR(
 jint Java_com_quantcast_qfs_access_KfsAccess_fchowns(
     JNIEnv *jenv, jclass jcls, jlong jptr, jint jfd, jstring juser, jstring jgroup)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -788,6 +1333,7 @@ jint Java_com_quantcast_qfs_access_KfsAccess_fchowns(
 jint Java_com_quantcast_qfs_access_KfsAccess_fchown(
     JNIEnv *jenv, jclass jcls, jlong jptr, jint jfd, jlong user, jlong group)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -798,6 +1344,7 @@ jint Java_com_quantcast_qfs_access_KfsAccess_fchown(
 jint Java_com_quantcast_qfs_access_KfsOutputChannel_sync(
     JNIEnv *jenv, jclass jcls, jlong jptr, jint jfd)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -805,9 +1352,21 @@ jint Java_com_quantcast_qfs_access_KfsOutputChannel_sync(
     return clnt->Sync(jfd);
 }
 
+jint Java_com_quantcast_qfs_access_KfsOutputChannel_writeAsyncCompletion(
+    JNIEnv *jenv, jclass jcls, jlong jptr, jint jfd)
+{
+    QFS_JNI_ENTRY_POINT();
+    if (! jptr) {
+        return -EFAULT;
+    }
+    KfsClient* const clnt = (KfsClient*)jptr;
+    return clnt->WriteAsyncCompletionHandler(jfd);
+}
+
 jint Java_com_quantcast_qfs_access_KfsAccess_setEUserAndEGroup(
     JNIEnv *jenv, jclass jcls, jlong jptr, jlong user, jlong group, jlongArray jgroups)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -832,6 +1391,7 @@ jint Java_com_quantcast_qfs_access_KfsAccess_setEUserAndEGroup(
 jint Java_com_quantcast_qfs_access_KfsAccess_exists(
     JNIEnv *jenv, jclass jcls, jlong jptr, jstring jpath)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -839,12 +1399,17 @@ jint Java_com_quantcast_qfs_access_KfsAccess_exists(
 
     string path;
     setStr(path, jenv, jpath);
-    return (clnt->Exists(path.c_str()) ? 1 : 0);
+    // Return the stat status, in order to allow the caller to distinguish
+    // "no such file" from other errors.
+    KfsFileAttr attr;
+    const int ret = clnt->Stat(path.c_str(), attr, false);
+    return (ret == 0 ? 1 : (ret < 0 ? ret : -ret));
 }
 
 jint Java_com_quantcast_qfs_access_KfsAccess_isFile(
     JNIEnv *jenv, jclass jcls, jlong jptr, jstring jpath)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -859,6 +1424,7 @@ jint Java_com_quantcast_qfs_access_KfsAccess_isFile(
 jint Java_com_quantcast_qfs_access_KfsAccess_isDirectory(
     JNIEnv *jenv, jclass jcls, jlong jptr, jstring jpath)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -873,6 +1439,7 @@ jint Java_com_quantcast_qfs_access_KfsAccess_isDirectory(
 jlong Java_com_quantcast_qfs_access_KfsAccess_filesize(
     JNIEnv *jenv, jclass jcls, jlong jptr, jstring jpath)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -892,6 +1459,7 @@ jlong Java_com_quantcast_qfs_access_KfsAccess_filesize(
 jlong Java_com_quantcast_qfs_access_KfsAccess_getModificationTime(
     JNIEnv *jenv, jclass jcls, jlong jptr, jstring jpath)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -911,6 +1479,7 @@ jlong Java_com_quantcast_qfs_access_KfsAccess_getModificationTime(
 jint Java_com_quantcast_qfs_access_KfsAccess_setModificationTime(
     JNIEnv *jenv, jclass jcls, jlong jptr, jstring jpath, jlong jmsec)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -935,32 +1504,16 @@ jint Java_com_quantcast_qfs_access_KfsAccess_setModificationTime(
 static jobjectArray CreateLocations(
     JNIEnv *jenv, vector< vector<string> > entries, const char* blockSize)
 {
-    jclass const jstrArrClass = jenv->FindClass("[Ljava/lang/String;");
-    if (! jstrArrClass) {
-        jclass excl = jenv->FindClass("java/lang/ClassNotFoundException");
-        if (excl) {
-            jenv->ThrowNew(excl, 0);
-        }
-        return 0;
-    }
-    jclass const jstrClass = jenv->FindClass("java/lang/String");
-    if (! jstrClass) {
-        jclass excl = jenv->FindClass("java/lang/ClassNotFoundException");
-        if (excl) {
-            jenv->ThrowNew(excl, 0);
-        }
-        return 0;
-    }
     // For each block, return its location(s)
     const jsize sz = (jsize)entries.size() + (blockSize ? 1 : 0);
-    jobjectArray jentries = jenv->NewObjectArray(sz, jstrArrClass, 0);
+    jobjectArray jentries = jenv->NewObjectArray(sz, sStringArrayClass, 0);
     if (! jentries) {
         return 0;
     }
     for (jsize i = 0, k = 0; k < sz; k++) {
         const jsize lsz =
             (k == 0 && blockSize) ? (jsize)1 : (jsize)entries[i].size();
-        jobjectArray jlocs = jenv->NewObjectArray(lsz, jstrClass, 0);
+        jobjectArray jlocs = jenv->NewObjectArray(lsz, sStringClass, 0);
         if (! jlocs) {
             return 0;
         }
@@ -985,6 +1538,7 @@ static jobjectArray CreateLocations(
 jobjectArray Java_com_quantcast_qfs_access_KfsAccess_getDataLocation(
     JNIEnv *jenv, jclass jcls, jlong jptr, jstring jpath, jlong jstart, jlong jlen)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return 0;
     }
@@ -1003,6 +1557,7 @@ jobjectArray Java_com_quantcast_qfs_access_KfsAccess_getDataLocation(
 jobjectArray Java_com_quantcast_qfs_access_KfsAccess_getBlocksLocation(
     JNIEnv *jenv, jclass jcls, jlong jptr, jstring jpath, jlong jstart, jlong jlen)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return 0;
     }
@@ -1041,6 +1596,7 @@ jobjectArray Java_com_quantcast_qfs_access_KfsAccess_getBlocksLocation(
 jshort Java_com_quantcast_qfs_access_KfsAccess_getReplication(
     JNIEnv *jenv, jclass jcls, jlong jptr, jstring jpath)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -1054,6 +1610,7 @@ jshort Java_com_quantcast_qfs_access_KfsAccess_getReplication(
 jshort Java_com_quantcast_qfs_access_KfsAccess_setReplication(
     JNIEnv *jenv, jclass jcls, jlong jptr, jstring jpath, jint jnumReplicas)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -1064,179 +1621,247 @@ jshort Java_com_quantcast_qfs_access_KfsAccess_setReplication(
     return clnt->SetReplicationFactor(path.c_str(), jnumReplicas);
 }
 
-jint Java_com_quantcast_qfs_access_KfsAccess_stat(
-    JNIEnv *jenv, jclass jcls, jlong jptr, jstring jpath, jobject attr)
+static jint SetFileAttr(
+    JNIEnv *jenv, KfsClient* clnt, const KfsFileAttr& kfsAttr, jobject attr)
 {
-    if (! jptr) {
-        return -EFAULT;
-    }
-    if (! jpath || ! attr) {
-        return -EINVAL;
-    }
-
-    jclass const acls = jenv->GetObjectClass(attr);
-    if (! acls) {
-        return -EINVAL;
-    }
-
-    string path;
-    setStr(path, jenv, jpath);
-    KfsFileAttr kfsAttr;
-    KfsClient* const clnt = (KfsClient*)jptr;
-    int ret = clnt->Stat(path.c_str(), kfsAttr);
-    if (ret != 0) {
-        return (jint)ret;
-    }
     string names[3];
     names[0] = kfsAttr.filename;
-    ret = clnt->GetUserAndGroupNames(
+    const int ret = clnt->GetUserAndGroupNames(
         kfsAttr.user, kfsAttr.group, names[1], names[2]);
     if (ret != 0) {
         return (jint)ret;
     }
 
-    jfieldID fid = jenv->GetFieldID(acls, "isDirectory", "Z");
-    if (! fid) {
-        return -EFAULT;
-    }
-    jenv->SetBooleanField(attr, fid, (jboolean)kfsAttr.isDirectory);
-
-    fid = jenv->GetFieldID(acls, "filesize", "J");
-    if (! fid) {
-        return -EFAULT;
-    }
-    jenv->SetLongField(attr, fid, (jlong)kfsAttr.fileSize);
-
-    fid = jenv->GetFieldID(acls, "modificationTime", "J");
-    if (! fid) {
-        return -EFAULT;
-    }
-    jenv->SetLongField(attr, fid,
+    const jfieldID* const fids = sFileAttrFieldIds;
+    jenv->SetBooleanField(attr, fids[kAttrIsDirectory],
+        (jboolean)kfsAttr.isDirectory);
+    jenv->SetLongField(attr, fids[kAttrFilesize], (jlong)kfsAttr.fileSize);
+    jenv->SetLongField(attr, fids[kAttrModificationTime],
         (jlong)kfsAttr.mtime.tv_sec * 1000 +
         (jlong)kfsAttr.mtime.tv_usec / 1000
     );
-
-    fid = jenv->GetFieldID(acls, "attrChangeTime", "J");
-    if (! fid) {
-        return -EFAULT;
-    }
-    jenv->SetLongField(attr, fid,
+    jenv->SetLongField(attr, fids[kAttrAttrChangeTime],
         (jlong)kfsAttr.ctime.tv_sec * 1000 +
         (jlong)kfsAttr.ctime.tv_usec / 1000
     );
-
-    fid = jenv->GetFieldID(acls, "creationTime", "J");
-    if (! fid) {
-        return -EFAULT;
-    }
-    jenv->SetLongField(attr, fid,
+    jenv->SetLongField(attr, fids[kAttrCreationTime],
         (jlong)kfsAttr.crtime.tv_sec * 1000 +
         (jlong)kfsAttr.crtime.tv_usec / 1000
     );
-
-    fid = jenv->GetFieldID(acls, "replication", "I");
-    if (! fid) {
-        return -EFAULT;
+    jenv->SetIntField(attr, fids[kAttrReplication], kfsAttr.numReplicas);
+    jenv->SetIntField(attr, fids[kAttrStriperType],
+        (jint)kfsAttr.striperType);
+    jenv->SetIntField(attr, fids[kAttrNumStripes], (jint)kfsAttr.numStripes);
+    jenv->SetIntField(attr, fids[kAttrNumRecoveryStripes],
+        (jint)kfsAttr.numRecoveryStripes);
+    jenv->SetIntField(attr, fids[kAttrStripeSize], (jint)kfsAttr.stripeSize);
+    jenv->SetLongField(attr, fids[kAttrOwner], (jlong)kfsAttr.user);
+    jenv->SetLongField(attr, fids[kAttrGroup], (jlong)kfsAttr.group);
+    jenv->SetIntField(attr, fids[kAttrMode], (jint)kfsAttr.mode);
+    jenv->SetLongField(attr, fids[kAttrFileId], (jlong)kfsAttr.fileId);
+    jenv->SetLongField(attr, fids[kAttrDirCount], (jlong)kfsAttr.dirCount());
+    jenv->SetLongField(attr, fids[kAttrFileCount],
+        (jlong)kfsAttr.fileCount());
+    jenv->SetLongField(attr, fids[kAttrChunkCount],
+        (jlong)kfsAttr.chunkCount());
+    jenv->SetByteField(attr, fids[kAttrMinSTier], (jbyte)kfsAttr.minSTier);
+    jenv->SetByteField(attr, fids[kAttrMaxSTier], (jbyte)kfsAttr.maxSTier);
+
+    const FileAttrField nameFields[] =
+        { kAttrFilename, kAttrOwnerName, kAttrGroupName };
+    for (int i = 0; i < 3; i++) {
+        jstring const nm = jenv->NewStringUTF(names[i].c_str());
+        if (! nm) {
+            return -EFAULT;
+        }
+        jenv->SetObjectField(attr, fids[nameFields[i]], nm);
+        jenv->DeleteLocalRef(nm);
     }
-    jenv->SetIntField(attr, fid, kfsAttr.numReplicas);
 
-    fid = jenv->GetFieldID(acls, "striperType", "I");
-    if (! fid) {
-        return -EFAULT;
-    }
-    jenv->SetIntField(attr, fid, (jint)kfsAttr.striperType);
+    return 0;
+}
 
-    fid = jenv->GetFieldID(acls, "numStripes", "I");
-    if (! fid) {
+jint Java_com_quantcast_qfs_access_KfsAccess_stat(
+    JNIEnv *jenv, jclass jcls, jlong jptr, jstring jpath, jobject attr)
+{
+    QFS_JNI_ENTRY_POINT();
+    if (! jptr) {
         return -EFAULT;
     }
-    jenv->SetIntField(attr, fid, (jint)kfsAttr.numStripes);
-
-    fid = jenv->GetFieldID(acls, "numRecoveryStripes", "I");
-    if (! fid) {
-        return -EFAULT;
+    if (! jpath || ! attr) {
+        return -EINVAL;
     }
-    jenv->SetIntField(attr, fid, (jint)kfsAttr.numRecoveryStripes);
 
-    fid = jenv->GetFieldID(acls, "stripeSize", "I");
-    if (! fid) {
-        return -EFAULT;
+    string path;
+    setStr(path, jenv, jpath);
+    KfsFileAttr kfsAttr;
+    KfsClient* const clnt = (KfsClient*)jptr;
+    const int ret = clnt->Stat(path.c_str(), kfsAttr);
+    if (ret != 0) {
+        return (jint)ret;
     }
-    jenv->SetIntField(attr, fid, (jint)kfsAttr.stripeSize);
+    return SetFileAttr(jenv, clnt, kfsAttr, attr);
+}
 
-    fid = jenv->GetFieldID(acls, "owner", "J");
-    if (! fid) {
+jint Java_com_quantcast_qfs_access_KfsAccess_statById(
+    JNIEnv *jenv, jclass jcls, jlong jptr, jlong jfileId, jobject attr)
+{
+    QFS_JNI_ENTRY_POINT();
+    if (! jptr) {
         return -EFAULT;
     }
-    jenv->SetLongField(attr, fid, (jlong)kfsAttr.user);
-
-    fid = jenv->GetFieldID(acls, "group", "J");
-    if (! fid) {
-        return -EFAULT;
+    if (! attr) {
+        return -EINVAL;
     }
-    jenv->SetLongField(attr, fid, (jlong)kfsAttr.group);
 
-    fid = jenv->GetFieldID(acls, "mode", "I");
-    if (! fid) {
-        return -EFAULT;
+    KfsFileAttr kfsAttr;
+    KfsClient* const clnt = (KfsClient*)jptr;
+    const int ret = clnt->StatById((kfsFileId_t)jfileId, kfsAttr);
+    if (ret != 0) {
+        return (jint)ret;
     }
-    jenv->SetIntField(attr, fid, (jint)kfsAttr.mode);
+    return SetFileAttr(jenv, clnt, kfsAttr, attr);
+}
 
-    fid = jenv->GetFieldID(acls, "fileId", "J");
-    if (! fid) {
+jint Java_com_quantcast_qfs_access_KfsAccess_openById(
+    JNIEnv *jenv, jclass jcls, jlong jptr, jlong jfileId)
+{
+    QFS_JNI_ENTRY_POINT();
+    if (! jptr) {
         return -EFAULT;
     }
-    jenv->SetLongField(attr, fid, (jlong)kfsAttr.fileId);
+    KfsClient* const clnt = (KfsClient*)jptr;
+    return clnt->OpenById((kfsFileId_t)jfileId);
+}
 
-    fid = jenv->GetFieldID(acls, "dirCount", "J");
-    if (! fid) {
+// Stat the path, and write the attributes into the direct buffer starting
+// from position 0, in the readdir plus record format, with the owner and
+// group names always present.
+// Returns the record length, -EOVERFLOW if the buffer is too small, or
+// -errno.
+jint Java_com_quantcast_qfs_access_KfsAccess_statPacked(
+    JNIEnv *jenv, jclass jcls, jlong jptr, jstring jpath, jobject buf)
+{
+    QFS_JNI_ENTRY_POINT();
+    if (! jptr) {
         return -EFAULT;
     }
-    jenv->SetLongField(attr, fid, (jlong)kfsAttr.dirCount());
-
-    fid = jenv->GetFieldID(acls, "fileCount", "J");
-    if (! fid) {
-        return -EFAULT;
+    if (! jpath || ! buf) {
+        return -EINVAL;
     }
-    jenv->SetLongField(attr, fid, (jlong)kfsAttr.fileCount());
-
-    fid = jenv->GetFieldID(acls, "chunkCount", "J");
-    if (! fid) {
-        return -EFAULT;
+    char* const addr = (char*)jenv->GetDirectBufferAddress(buf);
+    const jlong cap  = jenv->GetDirectBufferCapacity(buf);
+    if (! addr || cap < 0) {
+        return -EINVAL;
     }
-    jenv->SetLongField(attr, fid, (jlong)kfsAttr.chunkCount());
 
-    fid = jenv->GetFieldID(acls, "minSTier", "B");
-    if (! fid) {
-        return -EFAULT;
+    string path;
+    setStr(path, jenv, jpath);
+    KfsFileAttr      attr;
+    KfsClient* const clnt = (KfsClient*)jptr;
+    int ret = clnt->Stat(path.c_str(), attr);
+    if (ret != 0) {
+        return (jint)ret;
     }
-    jenv->SetLongField(attr, fid, (jbyte)kfsAttr.minSTier);
+    string names[2];
+    ret = clnt->GetUserAndGroupNames(attr.user, attr.group,
+        names[0], names[1]);
+    if (ret != 0) {
+        return (jint)ret;
+    }
+    const size_t size = PackedWriter::AttrSize(
+        attr, names[0].size(), names[1].size());
+    if ((size_t)cap < size) {
+        return -EOVERFLOW;
+    }
+    PackedWriter writer(addr, addr + cap);
+    writer.PutAttr(attr, &names[0], &names[1]);
+    return (jint)size;
+}
 
-    fid = jenv->GetFieldID(acls, "maxSTier", "B");
-    if (! fid) {
+// Stat paths [start, start + count) of the paths array, and pack the results
+// into the direct buffer, starting from position 0. Each entry starts with
+// 32 bit status, followed by the attributes in the readdir plus format, if
+// the status is 0. The owner or group name is omitted if it is the same as
+// in the previous entry.
+// Returns the number of the entries that fit into the buffer, or -errno.
+jint Java_com_quantcast_qfs_access_KfsAccess_statBatch(
+    JNIEnv *jenv, jclass jcls, jlong jptr, jobjectArray jpaths,
+    jint jstart, jint jcount, jobject buf)
+{
+    QFS_JNI_ENTRY_POINT();
+    if (! jptr) {
         return -EFAULT;
     }
-    jenv->SetLongField(attr, fid, (jbyte)kfsAttr.maxSTier);
-
-    const char* const fieldNames[] = {"filename", "ownerName", "groupName"};
-    for (int i = 0; i < 3; i++) {
-        jstring const nm = jenv->NewStringUTF(names[i].c_str());
-        if (! nm) {
-            return -EFAULT;
+    if (! jpaths || ! buf || jstart < 0 || jcount < 0 ||
+            jenv->GetArrayLength(jpaths) < jstart + jcount) {
+        return -EINVAL;
+    }
+    char* const addr = (char*)jenv->GetDirectBufferAddress(buf);
+    const jlong cap  = jenv->GetDirectBufferCapacity(buf);
+    if (! addr || cap < 0) {
+        return -EINVAL;
+    }
+    vector<string> paths(jcount);
+    for (jint i = 0; i < jcount; i++) {
+        jstring const jpath =
+            (jstring)jenv->GetObjectArrayElement(jpaths, jstart + i);
+        if (! jpath) {
+            return -EINVAL;
         }
-        fid = jenv->GetFieldID(acls, fieldNames[i], "Ljava/lang/String;");
-        if (! fid) {
-            return -EFAULT;
+        setStr(paths[i], jenv, jpath);
+        jenv->DeleteLocalRef(jpath);
+    }
+    KfsClient* const    clnt = (KfsClient*)jptr;
+    vector<KfsFileAttr> attrs;
+    vector<int>         status;
+    const int ret = clnt->Stat(paths, attrs, status);
+    if (ret < 0) {
+        return ret;
+    }
+    PackedWriter writer(addr, addr + cap);
+    kfsUid_t     uid = kKfsUserNone;
+    kfsGid_t     gid = kKfsGroupNone;
+    string       names[2];
+    jint         i;
+    for (i = 0; i < jcount; i++) {
+        if (status[i] != 0) {
+            if (writer.Remaining() < 4) {
+                break;
+            }
+            writer.Put32(status[i]);
+            continue;
+        }
+        const KfsFileAttr& attr = attrs[i];
+        if (attr.user != uid || attr.group != gid) {
+            const int res = clnt->GetUserAndGroupNames(
+                attr.user, attr.group, names[0], names[1]);
+            if (res != 0) {
+                return res;
+            }
         }
-        jenv->SetObjectField(attr, fid, nm);
+        const bool   unameFlag = attr.user != uid;
+        const bool   gnameFlag = attr.group != gid;
+        const size_t size      = 4 + PackedWriter::AttrSize(attr,
+            unameFlag ? names[0].size() : 0,
+            gnameFlag ? names[1].size() : 0);
+        if (writer.Remaining() < size) {
+            break;
+        }
+        uid = attr.user;
+        gid = attr.group;
+        writer.Put32(0);
+        writer.PutAttr(attr,
+            unameFlag ? &names[0] : 0,
+            gnameFlag ? &names[1] : 0);
     }
-
-    return 0;
+    return (i <= 0 && 0 < jcount) ? -EINVAL : i;
 }
 
 jstring Java_com_quantcast_qfs_access_KfsAccess_strerror(
     JNIEnv *jenv, jclass jcls, jlong jptr, jint jerr)
 {
+    QFS_JNI_ENTRY_POINT();
     const string str = KFS::ErrorCodeToStr((int)jerr);
     return jenv->NewStringUTF(str.c_str());
 }
@@ -1244,12 +1869,14 @@ jstring Java_com_quantcast_qfs_access_KfsAccess_strerror(
 jboolean Java_com_quantcast_qfs_access_KfsAccess_isnotfound(
     JNIEnv *jenv, jclass jcls, jlong jptr, jint jerr)
 {
+    QFS_JNI_ENTRY_POINT();
     return (jboolean)(jerr == -ENOENT || jerr == -ENOTDIR);
 }
 
 jint Java_com_quantcast_qfs_access_KfsAccess_close(
     JNIEnv *jenv, jclass jcls, jlong jptr, jint jfd)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -1260,6 +1887,7 @@ jint Java_com_quantcast_qfs_access_KfsAccess_close(
 jlong Java_com_quantcast_qfs_access_KfsAccess_seek(
     JNIEnv *jenv, jclass jcls, jlong jptr, jint jfd, jlong joffset)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -1270,6 +1898,7 @@ jlong Java_com_quantcast_qfs_access_KfsAccess_seek(
 jlong Java_com_quantcast_qfs_access_KfsAccess_tell(
     JNIEnv *jenv, jclass jcls, jlong jptr, jint jfd)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -1280,6 +1909,7 @@ jlong Java_com_quantcast_qfs_access_KfsAccess_tell(
 jint Java_com_quantcast_qfs_access_KfsAccess_getUMask(
     JNIEnv *jenv, jclass jcls, jlong jptr)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -1290,6 +1920,7 @@ jint Java_com_quantcast_qfs_access_KfsAccess_getUMask(
 jint Java_com_quantcast_qfs_access_KfsAccess_setUMask(
     JNIEnv *jenv, jclass jcls, jlong jptr, jint umask)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -1302,6 +1933,7 @@ jstring Java_com_quantcast_qfs_access_KfsAccess_createDelegationToken(
     JNIEnv *jenv, jclass jcls, jlong jptr,
     jboolean allowDelegationFlag, jlong validTime, jobject result)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return jenv->NewStringUTF("null kfs client pointer");
     }
@@ -1388,6 +2020,7 @@ jstring Java_com_quantcast_qfs_access_KfsAccess_renewDelegationToken(
     JNIEnv *jenv, jclass jcls, jlong jptr,
     jobject token)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return jenv->NewStringUTF("null kfs client pointer");
     }
@@ -1482,6 +2115,7 @@ jstring Java_com_quantcast_qfs_access_KfsAccess_cancelDelegationToken(
     JNIEnv *jenv, jclass jcls, jlong jptr,
     jobject token)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return jenv->NewStringUTF("null kfs client pointer");
     }
@@ -1532,27 +2166,27 @@ jstring Java_com_quantcast_qfs_access_KfsAccess_cancelDelegationToken(
 jobjectArray Java_com_quantcast_qfs_access_KfsAccess_getStats(
     JNIEnv *jenv, jclass jcls, jlong jptr)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return 0;
     }
     KfsClient::PropertiesIterator it(
         reinterpret_cast<KfsClient*>(jptr)->GetStats(), true);
-    jclass jstrClass = jenv->FindClass("java/lang/String");
-    if (! jstrClass) {
-        jclass excl = jenv->FindClass("java/lang/ClassNotFoundException");
-        if (excl) {
-            jenv->ThrowNew(excl, 0);
-        }
-        return 0;
-    }
+    vector<string> jniStats;
+    JniCallStats::GetStats(jniStats);
     const jsize  cnt      = it.Size() * 2;
-    jobjectArray jentries = jenv->NewObjectArray(cnt, jstrClass, 0);
+    const jsize  total    = cnt + (jsize)jniStats.size();
+    jobjectArray jentries = jenv->NewObjectArray(total, sStringClass, 0);
     if (! jentries) {
         return 0;
     }
-    for (jsize i = 0; i < cnt && it.Next(); ) {
+    for (jsize i = 0; i < total; ) {
+        if (i < cnt && ! it.Next()) {
+            return 0;
+        }
         for (int n = 0; n < 2; n++) {
-            const char* const str = n == 0 ? it.GetKey() : it.GetValue();
+            const char* const str = cnt <= i ? jniStats[i - cnt].c_str() :
+                (n == 0 ? it.GetKey() : it.GetValue());
             if (! str) {
                 return 0;
             }
@@ -1570,6 +2204,7 @@ jobjectArray Java_com_quantcast_qfs_access_KfsAccess_getStats(
 jint Java_com_quantcast_qfs_access_KfsInputChannel_read(
     JNIEnv *jenv, jclass jcls, jlong jptr, jint jfd, jobject buf, jint begin, jint end)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -1593,9 +2228,104 @@ jint Java_com_quantcast_qfs_access_KfsInputChannel_read(
     return (jint)sz;
 }
 
+jint Java_com_quantcast_qfs_access_KfsInputChannel_pread(
+    JNIEnv *jenv, jclass jcls, jlong jptr, jint jfd, jobject buf, jint begin, jint end,
+    jlong jpos)
+{
+    QFS_JNI_ENTRY_POINT();
+    if (! jptr) {
+        return -EFAULT;
+    }
+    KfsClient* const clnt = (KfsClient*)jptr;
+
+    if (! buf) {
+        return 0;
+    }
+    if (jpos < 0) {
+        return -EINVAL;
+    }
+    void * addr = jenv->GetDirectBufferAddress(buf);
+    jlong cap = jenv->GetDirectBufferCapacity(buf);
+
+    if (! addr || cap < 0) {
+        return 0;
+    }
+    if(begin < 0 || end > cap || begin > end) {
+        return 0;
+    }
+    addr = (void *)(uintptr_t(addr) + begin);
+
+    ssize_t sz = clnt->PRead((int) jfd, (chunkOff_t) jpos, (char *) addr,
+        (size_t) (end - begin));
+    return (jint)sz;
+}
+
+jlong Java_com_quantcast_qfs_access_KfsInputChannel_readv(
+    JNIEnv *jenv, jclass jcls, jlong jptr, jint jfd, jobjectArray bufs,
+    jintArray begins, jintArray ends, jint count)
+{
+    QFS_JNI_ENTRY_POINT();
+    if (! jptr) {
+        return -EFAULT;
+    }
+    KfsClient* const clnt = (KfsClient*)jptr;
+    const bool readFlag = true;
+    return ioVector(jenv, clnt, (int) jfd, bufs, begins, ends, count, readFlag);
+}
+
+jint Java_com_quantcast_qfs_access_KfsInputChannel_readPrefetch(
+    JNIEnv *jenv, jclass jcls, jlong jptr, jint jfd, jobject buf, jint begin, jint end,
+    jlong jpos)
+{
+    QFS_JNI_ENTRY_POINT();
+    if (! jptr) {
+        return -EFAULT;
+    }
+    KfsClient* const clnt = (KfsClient*)jptr;
+
+    if (! buf) {
+        return 0;
+    }
+    if (jpos < 0) {
+        return -EINVAL;
+    }
+    void * addr = jenv->GetDirectBufferAddress(buf);
+    jlong cap = jenv->GetDirectBufferCapacity(buf);
+
+    if (! addr || cap < 0) {
+        return 0;
+    }
+    if(begin < 0 || end > cap || begin > end) {
+        return 0;
+    }
+    addr = (void *)(uintptr_t(addr) + begin);
+
+    // Read prefetch starts at the current file position, and does not move
+    // it. The java channel serializes all file position access, therefore
+    // temporarily setting the file position is sufficient to issue prefetch
+    // at the specified position.
+    const chunkOff_t cur = clnt->Tell((int) jfd);
+    if (cur < 0) {
+        return (jint)cur;
+    }
+    if (cur != (chunkOff_t) jpos) {
+        const chunkOff_t ret = clnt->Seek((int) jfd, (chunkOff_t) jpos);
+        if (ret < 0) {
+            return (jint)ret;
+        }
+    }
+    const int ret = clnt->ReadPrefetch((int) jfd, (char *) addr,
+        (size_t) (end - begin));
+    if (cur != (chunkOff_t) jpos) {
+        clnt->Seek((int) jfd, cur);
+    }
+    return (jint)ret;
+}
+
 jint Java_com_quantcast_qfs_access_KfsOutputChannel_write(
     JNIEnv *jenv, jclass jcls, jlong jptr, jint jfd, jobject buf, jint begin, jint end)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -1619,9 +2349,53 @@ jint Java_com_quantcast_qfs_access_KfsOutputChannel_write(
     return (jint)sz;
 }
 
+jlong Java_com_quantcast_qfs_access_KfsOutputChannel_writev(
+    JNIEnv *jenv, jclass jcls, jlong jptr, jint jfd, jobjectArray bufs,
+    jintArray begins, jintArray ends, jint count)
+{
+    QFS_JNI_ENTRY_POINT();
+    if (! jptr) {
+        return -EFAULT;
+    }
+    KfsClient* const clnt = (KfsClient*)jptr;
+    const bool readFlag = false;
+    return ioVector(jenv, clnt, (int) jfd, bufs, begins, ends, count, readFlag);
+}
+
+jint Java_com_quantcast_qfs_access_KfsOutputChannel_writeAsync(
+    JNIEnv *jenv, jclass jcls, jlong jptr, jint jfd, jobject buf, jint begin, jint end)
+{
+    QFS_JNI_ENTRY_POINT();
+    if (! jptr) {
+        return -EFAULT;
+    }
+    KfsClient* const clnt = (KfsClient*)jptr;
+
+    if(! buf) {
+        return 0;
+    }
+    void* addr = jenv->GetDirectBufferAddress(buf);
+    jlong cap = jenv->GetDirectBufferCapacity(buf);
+
+    if (! addr || cap < 0) {
+        return 0;
+    }
+    if (begin < 0 || end > cap || begin > end) {
+        return 0;
+    }
+    addr = (void *)(uintptr_t(addr) + begin);
+
+    // The buffer content must not be modified until completion handler
+    // returns.
+    const int ret = clnt->WriteAsync(
+        (int) jfd, (const char *) addr, (size_t) (end - begin));
+    return (jint)ret;
+}
+
 jint Java_com_quantcast_qfs_access_KfsOutputChannel_atomicRecordAppend(
     JNIEnv *jenv, jclass jcls, jlong jptr, jint jfd, jobject buf, jint begin, jint end)
 {
+    QFS_JNI_ENTRY_POINT();
     if (! jptr) {
         return -EFAULT;
     }
@@ -253,6 +253,13 @@ KfsClient::Mkdirs(const char *pathname, kfsMode_t mode)
     return mImpl->Mkdirs(pathname, mode);
 }
 
+int
+KfsClient::Mkdirs(const vector<string>& pathnames, kfsMode_t mode,
+    vector<int>& status, int maxPending)
+{
+    return mImpl->Mkdirs(pathnames, mode, status, maxPending);
+}
+
 int
 KfsClient::Mkdir(const char *pathname, kfsMode_t mode)
 {
@@ -315,6 +322,13 @@ KfsClient::Stat(int fd, KfsFileAttr& result)
     return mImpl->Stat(fd, result);
 }
 
+int
+KfsClient::Stat(const vector<string>& pathnames, vector<KfsFileAttr>& result,
+    vector<int>& status, bool computeFilesize)
+{
+    return mImpl->Stat(pathnames, result, status, computeFilesize);
+}
+
 int
 KfsClient::GetNumChunks(const char *pathname)
 {
@@ -581,12 +595,27 @@ KfsClient::Remove(const char *pathname)
     return mImpl->Remove(pathname);
 }
 
+int
+KfsClient::Remove(const vector<string>& pathnames, vector<int>& status,
+    int maxPending)
+{
+    return mImpl->Remove(pathnames, status, maxPending);
+}
+
 int
 KfsClient::Rename(const char *oldpath, const char *newpath, bool overwrite)
 {
     return mImpl->Rename(oldpath, newpath, overwrite);
 }
 
+int
+KfsClient::Rename(const vector<string>& oldpaths,
+    const vector<string>& newpaths, bool overwrite, vector<int>& status,
+    int maxPending)
+{
+    return mImpl->Rename(oldpaths, newpaths, overwrite, status, maxPending);
+}
+
 int
 KfsClient::CoalesceBlocks(const char *srcPath, const char *dstPath, chunkOff_t *dstStartOffset)
 {
@@ -931,6 +960,19 @@ KfsClient::GetFileOrChunkInfo(kfsFileId_t fileId, kfsChunkId_t chunkId,
         fileId, chunkId, fattr, offset, chunkVersion, servers);
 }
 
+int
+KfsClient::StatById(kfsFileId_t fileId, KfsFileAttr& result,
+    bool computeFilesize, string* pathname)
+{
+    return mImpl->StatById(fileId, result, computeFilesize, pathname);
+}
+
+int
+KfsClient::OpenById(kfsFileId_t fileId)
+{
+    return mImpl->OpenById(fileId);
+}
+
 void
 KfsClient::SetDefaultFullSparseFileSupport(bool flag)
 {
@@ -1051,6 +1093,13 @@ KfsClient::GetStats()
     return mImpl->GetStats();
 }
 
+    /* static */ const char*
+KfsClient::SetCurrentOpName(
+    const char* opName)
+{
+    return KfsClientImpl::SetCurrentOpName(opName);
+}
+
 static int
 LoadConfig(const char* configEnvName, const char* cfg, Properties& props)
 {
@@ -1476,7 +1525,8 @@ KfsClientImpl::IsFileTableFull() const
 
 KfsClientImpl::KfsClientImpl(
     KfsNetClient* metaServer)
-    : mMutex(),
+    : mMutexStats(),
+      mMutex(),
       mReadCompletionMutex(),
       mIsInitialized(metaServer != 0),
       mMetaServerLoc(),
@@ -1562,6 +1612,7 @@ KfsClientImpl::KfsClientImpl(
     } else {
         ClientsList::Insert(*this);
     }
+    mMutex.SetObserver(&mMutexStats);
     QCStMutexLocker l(mMutex);
 
     FAttrLru::Init(mFAttrLru);
@@ -2055,6 +2106,79 @@ KfsClientImpl::Mkdir(const char *pathname, kfsMode_t mode)
     return 0;
 }
 
+int
+KfsClientImpl::Mkdirs(const vector<string>& pathnames, kfsMode_t mode,
+    vector<int>& status, int maxPending)
+{
+    QCStMutexLocker l(mMutex);
+
+    const size_t        cnt    = pathnames.size();
+    const size_t        window = (size_t)max(1, maxPending);
+    vector<kfsFileId_t> parentFids(cnt, kfsFileId_t(-1));
+    vector<string>      names(cnt);
+    vector<size_t>      entries;
+    vector<size_t>      retries;
+    vector<KfsOp*>      ops;
+    string              path;
+    const bool          kEnforceLastDirFlag      = false;
+    const bool          kInvalidateSubCountsFlag = true;
+    const Permissions   perms(
+        mUseOsUserAndGroupFlag ? mEUser  : kKfsUserNone,
+        mUseOsUserAndGroupFlag ? mEGroup : kKfsGroupNone,
+        mode != kKfsModeUndef  ? (mode & ~mUMask) : mode
+    );
+    status.assign(cnt, 0);
+    for (size_t start = 0; start < cnt; start += window) {
+        const size_t end = min(cnt, start + window);
+        entries.clear();
+        retries.clear();
+        ops.clear();
+        for (size_t i = start; i < end; i++) {
+            if (pathnames[i].empty()) {
+                status[i] = -EINVAL;
+                continue;
+            }
+            const int res = GetPathComponents(pathnames[i].c_str(),
+                &parentFids[i], names[i], &path,
+                kInvalidateSubCountsFlag, kEnforceLastDirFlag);
+            if (res < 0) {
+                // Parent does not exist, or is not a directory.
+                retries.push_back(i);
+                continue;
+            }
+            entries.push_back(i);
+            // Exists is handled by Mkdirs(), thus no idempotent id.
+            ops.push_back(new MkdirOp(0, parentFids[i], names[i].c_str(),
+                perms));
+        }
+        ExecuteMetaBatch(ops);
+        const time_t now = time(0);
+        for (size_t k = 0; k < ops.size(); k++) {
+            const size_t i  = entries[k];
+            MkdirOp&     op = *static_cast<MkdirOp*>(ops[k]);
+            if (0 <= op.status) {
+                if (! op.userName.empty()) {
+                    UpdateUserId(op.userName, op.permissions.user, now);
+                }
+                if (! op.groupName.empty()) {
+                    UpdateGroupId(op.groupName, op.permissions.group, now);
+                }
+            } else {
+                retries.push_back(i);
+            }
+            delete &op;
+        }
+        // Create missing parents, or check that the existing entry is a
+        // directory.
+        sort(retries.begin(), retries.end());
+        for (size_t k = 0; k < retries.size(); k++) {
+            const size_t i = retries[k];
+            status[i] = Mkdirs(pathnames[i].c_str(), mode);
+        }
+    }
+    return 0;
+}
+
 ///
 /// Remove a directory in KFS.
 /// @param[in] pathname         The full pathname such as /.../dir
@@ -3164,6 +3288,83 @@ KfsClientImpl::Stat(const char *pathname, KfsFileAttr& kfsattr, bool computeFile
         kValidSubCountsRequiredFlag);
 }
 
+int
+KfsClientImpl::Stat(const vector<string>& pathnames,
+    vector<KfsFileAttr>& result, vector<int>& status, bool computeFilesize)
+{
+    QCStMutexLocker l(mMutex);
+
+    const size_t cnt = pathnames.size();
+    result.assign(cnt, KfsFileAttr());
+    status.assign(cnt, 0);
+    vector<kfsFileId_t> parentFids(cnt, kfsFileId_t(-1));
+    vector<string>      names(cnt);
+    vector<string>      paths(cnt);
+    vector<size_t>      lookups;
+    vector<KfsOp*>      ops;
+    time_t              now = time(0);
+    for (size_t i = 0; i < cnt; i++) {
+        const string& pathname = pathnames[i];
+        if (pathname.empty()) {
+            status[i] = -EINVAL;
+            continue;
+        }
+        if (pathname[0] == '/') {
+            mTmpAbsPathStr = pathname;
+        } else {
+            mTmpAbsPathStr.assign(mCwd.data(), mCwd.length());
+            mTmpAbsPathStr.append("/", 1);
+            mTmpAbsPathStr.append(pathname);
+        }
+        FAttr* const fa = LookupFAttr(mTmpAbsPathStr, &paths[i]);
+        if (fa &&
+                (! computeFilesize || fa->isDirectory || 0 <= fa->fileSize) &&
+                ! fa->staleSubCountsFlag && IsValid(*fa, now)) {
+            result[i]          = *fa;
+            result[i].filename = fa->fidNameIt->first.second;
+            continue;
+        }
+        const int res = GetPathComponents(
+            mTmpAbsPathStr.c_str(), &parentFids[i], names[i], &paths[i]);
+        if (res < 0) {
+            status[i] = res;
+            continue;
+        }
+        lookups.push_back(i);
+        ops.push_back(new LookupOp(0, parentFids[i], names[i].c_str()));
+    }
+    if (! ops.empty()) {
+        ExecuteMetaBatch(ops);
+        now = time(0);
+    }
+    for (size_t k = 0; k < ops.size(); k++) {
+        const size_t i  = lookups[k];
+        LookupOp&    op = *static_cast<LookupOp*>(ops[k]);
+        if (op.status < 0) {
+            Delete(LookupFAttr(parentFids[i], names[i]));
+            status[i] = GetOpStatus(op);
+        } else {
+            UpdateUserAndGroup(op, now);
+            if (! op.fattr.isDirectory && computeFilesize &&
+                    op.fattr.fileSize < 0) {
+                op.fattr.fileSize = ComputeFilesize(op.fattr.fileId);
+            }
+            if (computeFilesize && ! op.fattr.isDirectory &&
+                    op.fattr.fileSize < 0) {
+                status[i] = -EIO;
+            } else {
+                FAttr* fa = LookupFAttr(parentFids[i], names[i]);
+                status[i] = UpdateFattr(
+                    parentFids[i], names[i], fa, paths[i], op.fattr, now);
+                result[i]          = op.fattr;
+                result[i].filename = names[i];
+            }
+        }
+        delete &op;
+    }
+    return 0;
+}
+
 int
 KfsClientImpl::Stat(int fd, KfsFileAttr& kfsattr)
 {
@@ -3483,6 +3684,51 @@ KfsClientImpl::Remove(const char* pathname)
     return GetOpStatus(op);
 }
 
+int
+KfsClientImpl::Remove(const vector<string>& pathnames, vector<int>& status,
+    int maxPending)
+{
+    QCStMutexLocker l(mMutex);
+
+    const size_t        cnt    = pathnames.size();
+    const size_t        window = (size_t)max(1, maxPending);
+    vector<kfsFileId_t> parentFids(cnt, kfsFileId_t(-1));
+    vector<string>      names(cnt);
+    vector<string>      paths(cnt);
+    vector<size_t>      entries;
+    vector<KfsOp*>      ops;
+    const bool          kInvalidateSubCountsFlag = true;
+    status.assign(cnt, 0);
+    for (size_t start = 0; start < cnt; start += window) {
+        const size_t end = min(cnt, start + window);
+        entries.clear();
+        ops.clear();
+        for (size_t i = start; i < end; i++) {
+            if (pathnames[i].empty()) {
+                status[i] = -EINVAL;
+                continue;
+            }
+            const int res = GetPathComponents(pathnames[i].c_str(),
+                &parentFids[i], names[i], &paths[i], kInvalidateSubCountsFlag);
+            if (res < 0) {
+                status[i] = res;
+                continue;
+            }
+            entries.push_back(i);
+            ops.push_back(new RemoveOp(0, parentFids[i], names[i].c_str(),
+                paths[i].c_str(), NextIdempotentOpId()));
+        }
+        ExecuteMetaBatch(ops);
+        for (size_t k = 0; k < ops.size(); k++) {
+            const size_t i = entries[k];
+            Delete(LookupFAttr(parentFids[i], names[i]));
+            status[i] = GetOpStatus(*ops[k]);
+            delete ops[k];
+        }
+    }
+    return 0;
+}
+
 bool
 KfsClientImpl::InvalidateCachedAttrsWithPathPrefix(
     const string&               path,
@@ -3572,6 +3818,16 @@ KfsClientImpl::Rename(const char* src, const char* dst, bool overwrite)
         srcPath << " " << dstPath << " status: " << op.status <<
     KFS_LOG_EOM;
 
+    InvalidateRenamed(srcParentFid, srcFileName, srcPath,
+        dstParentFid, dstFileName, dstPath);
+    return GetOpStatus(op);
+}
+
+void
+KfsClientImpl::InvalidateRenamed(
+    kfsFileId_t srcParentFid, const string& srcFileName, string& srcPath,
+    kfsFileId_t dstParentFid, const string& dstFileName, string& dstPath)
+{
     // Invalidate file attribute and the path cache
     bool invalidateFlag = true;
     for (string* pp = &srcPath; ; pp = &dstPath) {
@@ -3594,7 +3850,68 @@ KfsClientImpl::Rename(const char* src, const char* dst, bool overwrite)
         Delete(LookupFAttr(srcParentFid, srcFileName));
         Delete(LookupFAttr(dstParentFid, dstFileName));
     }
-    return GetOpStatus(op);
+}
+
+int
+KfsClientImpl::Rename(const vector<string>& oldpaths,
+    const vector<string>& newpaths, bool overwrite, vector<int>& status,
+    int maxPending)
+{
+    if (oldpaths.size() != newpaths.size()) {
+        return -EINVAL;
+    }
+
+    QCStMutexLocker l(mMutex);
+
+    const size_t        cnt    = oldpaths.size();
+    const size_t        window = (size_t)max(1, maxPending);
+    vector<kfsFileId_t> srcParentFids(cnt, kfsFileId_t(-1));
+    vector<string>      srcNames(cnt);
+    vector<string>      srcPaths(cnt);
+    vector<kfsFileId_t> dstParentFids(cnt, kfsFileId_t(-1));
+    vector<string>      dstNames(cnt);
+    vector<string>      dstPaths(cnt);
+    vector<size_t>      entries;
+    vector<KfsOp*>      ops;
+    const bool          kInvalidateSubCountsFlag = true;
+    status.assign(cnt, 0);
+    for (size_t start = 0; start < cnt; start += window) {
+        const size_t end = min(cnt, start + window);
+        entries.clear();
+        ops.clear();
+        for (size_t i = start; i < end; i++) {
+            if (oldpaths[i].empty() || newpaths[i].empty()) {
+                status[i] = -EINVAL;
+                continue;
+            }
+            int res = GetPathComponents(oldpaths[i].c_str(),
+                &srcParentFids[i], srcNames[i], &srcPaths[i],
+                kInvalidateSubCountsFlag);
+            if (res < 0 || (res = GetPathComponents(newpaths[i].c_str(),
+                    &dstParentFids[i], dstNames[i], &dstPaths[i],
+                    kInvalidateSubCountsFlag)) < 0) {
+                status[i] = res;
+                continue;
+            }
+            if (srcParentFids[i] == dstParentFids[i] &&
+                    srcNames[i] == dstNames[i]) {
+                continue; // src and dst are the same.
+            }
+            entries.push_back(i);
+            ops.push_back(new RenameOp(0, srcParentFids[i],
+                srcNames[i].c_str(), dstPaths[i].c_str(),
+                srcPaths[i].c_str(), overwrite, NextIdempotentOpId()));
+        }
+        ExecuteMetaBatch(ops);
+        for (size_t k = 0; k < ops.size(); k++) {
+            const size_t i = entries[k];
+            status[i] = GetOpStatus(*ops[k]);
+            delete ops[k];
+            InvalidateRenamed(srcParentFids[i], srcNames[i], srcPaths[i],
+                dstParentFids[i], dstNames[i], dstPaths[i]);
+        }
+    }
+    return 0;
 }
 
 int
@@ -4992,7 +5309,20 @@ KfsClientImpl::UpdateFilesize(int fd)
         Delete(fa);
         fa = 0;
     }
-    if (entry.fattr.isDirectory ||
+    if (entry.parentFid < 0 && (entry.fattr.isDirectory ||
+            entry.fattr.striperType != KFS_STRIPED_FILE_TYPE_NONE)) {
+        // Opened by file id.
+        FileAttr  fattr;
+        string    path;
+        const int res = LookupById(entry.fattr.fileId, fattr, path);
+        if (res < 0) {
+            return (res == -ENOENT ? 0 : res);
+        }
+        entry.fattr = fattr;
+        if (entry.fattr.fileSize >= 0 || entry.fattr.isDirectory) {
+            return 0;
+        }
+    } else if (entry.fattr.isDirectory ||
             entry.fattr.striperType != KFS_STRIPED_FILE_TYPE_NONE) {
         LookupOp op(0, entry.parentFid, entry.name.c_str());
         DoMetaOpWithRetry(&op);
@@ -5382,6 +5712,29 @@ KfsClientImpl::ExecuteMeta(KfsOp& op)
     KFS_LOG_EOM;
 }
 
+///
+/// Pipelined execution of the meta server ops, if the protocol worker is
+/// used. Without the protocol worker the ops are executed sequentially.
+///
+void
+KfsClientImpl::ExecuteMetaBatch(vector<KfsOp*>& ops)
+{
+    if (ops.empty()) {
+        return;
+    }
+    InitUserAndGroupMode();
+    if (mMetaServer) {
+        for (vector<KfsOp*>::const_iterator it = ops.begin();
+                it != ops.end();
+                ++it) {
+            ExecuteMeta(**it);
+        }
+        return;
+    }
+    StartProtocolWorker();
+    mProtocolWorker->ExecuteMeta(&ops[0], (int)ops.size());
+}
+
 void
 KfsClientImpl::DoChunkServerOp(
     const ServerLocation& loc, bool shortRpcFormatFlag, KfsOp& op)
@@ -6287,6 +6640,125 @@ KfsClientImpl::GetFileOrChunkInfo(kfsFileId_t fileId, kfsChunkId_t chunkId,
     return GetOpStatus(op);
 }
 
+int
+KfsClientImpl::LookupById(kfsFileId_t fileId, FileAttr& fattr,
+    string& pathname)
+{
+    assert(mMutex.IsOwned());
+
+    if (fileId <= 0) {
+        return -EINVAL;
+    }
+    const kfsChunkId_t kNoChunkId = -1;
+    GetPathNameOp op(0, fileId, kNoChunkId);
+    DoMetaOpWithRetry(&op);
+    if (op.status < 0) {
+        return GetOpStatus(op);
+    }
+    if (op.fattr.fileId != fileId || op.pathname.empty() ||
+            op.pathname[0] != '/') {
+        KFS_LOG_STREAM_ERROR <<
+            "invalid get path name response:"
+            " fileId: "   << fileId <<
+            " response: " << op.fattr.fileId <<
+            " path: "     << op.pathname <<
+        KFS_LOG_EOM;
+        return -EINVAL;
+    }
+    const time_t now = time(0);
+    if (! op.userName.empty()) {
+        UpdateUserId(op.userName, op.fattr.user, now);
+    }
+    if (! op.groupName.empty()) {
+        UpdateGroupId(op.groupName, op.fattr.group, now);
+    }
+    fattr = op.fattr;
+    pathname.swap(op.pathname);
+    return 0;
+}
+
+int
+KfsClientImpl::StatById(kfsFileId_t fileId, KfsFileAttr& result,
+    bool computeFilesize, string* pathname)
+{
+    QCStMutexLocker l(mMutex);
+
+    FileAttr  fattr;
+    string    path;
+    const int res = LookupById(fileId, fattr, path);
+    if (res < 0) {
+        return res;
+    }
+    if (computeFilesize && ! fattr.isDirectory && fattr.fileSize < 0 &&
+            0 < fattr.chunkCount()) {
+        fattr.fileSize = ComputeFilesize(fattr.fileId);
+        if (fattr.fileSize < 0) {
+            return -EIO;
+        }
+    }
+    result = fattr;
+    const size_t pos = path.rfind('/');
+    result.filename.assign(path, pos + 1, string::npos);
+    if (result.filename.empty()) {
+        result.filename = "/";
+    }
+    if (pathname) {
+        pathname->swap(path);
+    }
+    return 0;
+}
+
+int
+KfsClientImpl::OpenById(kfsFileId_t fileId)
+{
+    QCStMutexLocker l(mMutex);
+
+    if (IsFileTableFull()) {
+        return -EMFILE;
+    }
+    FileAttr fattr;
+    string   path;
+    int      res = LookupById(fileId, fattr, path);
+    if (res < 0) {
+        return res;
+    }
+    if (mUseOsUserAndGroupFlag &&
+            ! CheckAccess(O_RDONLY, mEUser, mEGroup, fattr)) {
+        return -EACCES;
+    }
+    // The parent directory id is not known, the file table entry parent id
+    // is set to -1, therefore the entry does not match any cached attribute.
+    const size_t pos = path.rfind('/');
+    const int    fte = AllocFileTableEntry(kfsFileId_t(-1),
+        path.substr(pos + 1), path);
+    if (fte < 0) {
+        return fte;
+    }
+    FileTableEntry& entry = *mFileTable[fte];
+    entry.openMode = O_RDONLY;
+    entry.fattr    = fattr;
+    if (entry.fattr.fileSize < 0 &&
+            ! entry.fattr.isDirectory && entry.fattr.chunkCount() > 0) {
+        entry.fattr.fileSize = ComputeFilesize(fattr.fileId);
+        if (entry.fattr.fileSize < 0) {
+            ReleaseFileTableEntry(fte);
+            return -EIO;
+        }
+    }
+    if (! entry.fattr.isDirectory) {
+        SetOptimalIoBufferSize(entry, mDefaultIoBufferSize);
+        SetOptimalReadAheadSize(entry, mDefaultReadAheadSize);
+    }
+    KFS_LOG_STREAM_DEBUG <<
+        "opened by id:"
+        " fd: "       << fte <<
+        " fileId: "   << entry.fattr.fileId <<
+        " instance: " << entry.instance <<
+        " path: "     << entry.pathname <<
+    KFS_LOG_EOM;
+    return fte;
+}
+
 int
 KfsClientImpl::Chmod(const char* pathname, kfsMode_t mode)
 {
@@ -7583,6 +8055,7 @@ KfsClientImpl::GetStats()
     QCStMutexLocker l(mMutex);
     StartProtocolWorker();
     Properties stats = mProtocolWorker->GetStats();
+    mMutexStats.GetStats(stats);
     if (stats.empty()) {
         return 0;
     }
@@ -7591,5 +8064,83 @@ KfsClientImpl::GetStats()
     return ret;
 }
 
+static __thread const char* sCurrentOpNamePtr = 0;
+
+    /* static */ const char*
+KfsClientImpl::SetCurrentOpName(
+    const char* inOpNamePtr)
+{
+    const char* const theRet = sCurrentOpNamePtr;
+    sCurrentOpNamePtr = inOpNamePtr;
+    return theRet;
+}
+
+// Returns the counters of the acquiring thread current op, the mutex passes
+// it back to Released(), thus the hold time is attributed to the op that
+// acquired the mutex, including re-acquisition by the condition wait.
+void*
+KfsClientImpl::MutexStats::Acquired(
+    QCMutex::Time inWaitNanoSec,
+    bool          inContendedFlag)
+{
+    Counters& theCtrs = mOps[sCurrentOpNamePtr ? sCurrentOpNamePtr : "Other"];
+    theCtrs.mAcquired++;
+    if (inContendedFlag) {
+        theCtrs.mContended++;
+    }
+    theCtrs.mWaitNanoSec += inWaitNanoSec;
+    return &theCtrs;
+}
+
+void
+KfsClientImpl::MutexStats::Released(
+    QCMutex::Time inHoldNanoSec,
+    void*         inAcquiredPtr)
+{
+    if (inAcquiredPtr) {
+        static_cast<Counters*>(inAcquiredPtr)->mHoldNanoSec += inHoldNanoSec;
+    }
+}
+
+void
+KfsClientImpl::MutexStats::GetStats(
+    Properties& outStats) const
+{
+    const char* const kNames[] =
+        { "Acquired", "Contended", "WaitUsec", "HoldUsec" };
+    Counters           theTotal;
+    Properties::String theName;
+    Properties::String theValue;
+    Ops::const_iterator theIt = mOps.begin();
+    for (; ;) {
+        const bool      theTotalFlag = theIt == mOps.end();
+        const Counters& theCtrs      = theTotalFlag ? theTotal : theIt->second;
+        const int64_t   theValues[]  = {
+            theCtrs.mAcquired,
+            theCtrs.mContended,
+            theCtrs.mWaitNanoSec / 1000,
+            theCtrs.mHoldNanoSec / 1000
+        };
+        theName.Copy("ClientMutex.", 12);
+        theName.Append(theTotalFlag ? "Total" : theIt->first);
+        theName.Append(".");
+        const size_t theLen = theName.length();
+        for (size_t i = 0; i < sizeof(kNames) / sizeof(kNames[0]); i++) {
+            theValue.clear();
+            AppendDecIntToString(theValue, theValues[i]);
+            outStats.setValue(theName.Truncate(theLen).Append(kNames[i]),
+                theValue);
+        }
+        if (theTotalFlag) {
+            break;
+        }
+        theTotal.mAcquired    += theCtrs.mAcquired;
+        theTotal.mContended   += theCtrs.mContended;
+        theTotal.mWaitNanoSec += theCtrs.mWaitNanoSec;
+        theTotal.mHoldNanoSec += theCtrs.mHoldNanoSec;
+        ++theIt;
+    }
+}
+
 } // client
 } // KFS
@@ -118,6 +118,24 @@ public:
     inline int Mkdirs(const char* pathname)
         { return Mkdirs(pathname, 0777); }
 
+    ///
+    /// Batched namespace mutations. The meta server ops are pipelined, with
+    /// at most maxPending ops in flight; the ops of the subsequent window are
+    /// issued after the preceding window completes, therefore the entries
+    /// can depend on the preceding windows entries. The entries with missing
+    /// parent directories are created with Mkdirs() after the window
+    /// completes.
+    /// @param[out] status  0 if the corresponding operation was successful;
+    /// -errno otherwise
+    /// @retval 0 if the entries were processed; -errno otherwise
+    ///
+    int Mkdirs(const vector<string>& pathnames, kfsMode_t mode,
+        vector<int>& status, int maxPending);
+    int Remove(const vector<string>& pathnames, vector<int>& status,
+        int maxPending);
+    int Rename(const vector<string>& oldpaths, const vector<string>& newpaths,
+        bool overwrite, vector<int>& status, int maxPending);
+
     ///
     /// Make a directory in KFS.
     /// @param[in] pathname The full pathname such as /.../dir
@@ -193,6 +211,18 @@ public:
         { return Stat(pathname, result, true); }
     int Stat(int fd, KfsFileAttr& result);
 
+    ///
+    /// Stat multiple paths. The meta server lookups of the paths with no
+    /// valid cached attributes are pipelined.
+    /// @param[in] pathnames    the paths to stat
+    /// @param[out] result      the attributes, one entry per path
+    /// @param[out] status      0 if the corresponding stat was successful;
+    /// -errno otherwise
+    /// @retval 0 if the paths were processed; -errno otherwise
+    ///
+    int Stat(const vector<string>& pathnames, vector<KfsFileAttr>& result,
+        vector<int>& status, bool computeFilesize = true);
+
     ///
     /// Given a file, return the # of chunks in the file
     /// @param[in] pathname The full pathname such as /.../foo
@@ -769,6 +799,28 @@ public:
     int GetFileOrChunkInfo(kfsFileId_t fileId, kfsChunkId_t chunkId,
         KfsFileAttr& fattr, chunkOff_t& offset, int64_t& chunkVersion,
         vector<ServerLocation>& servers);
+
+    ///
+    /// Stat by file id. The meta server resolves the file id with a single
+    /// request, regardless of the path depth, thus when the file id is
+    /// already known, for example from directory listing, this is cheaper
+    /// than path based stat with cold attribute cache.
+    /// @param[in] fileId  the file id
+    /// @param[out] result  the attributes, the file name is set to the last
+    /// path component
+    /// @param[in] computeFilesize  compute file size if not available
+    /// @param[out] pathname  if not null, the file path name
+    /// @retval 0 on success; -errno otherwise
+    ///
+    int StatById(kfsFileId_t fileId, KfsFileAttr& result,
+        bool computeFilesize = true, string* pathname = 0);
+
+    ///
+    /// Open file or directory for reading by file id, see StatById().
+    /// @param[in] fileId  the file id
+    /// @retval the file descriptor on success; -errno otherwise
+    ///
+    int OpenById(kfsFileId_t fileId);
     void SetDefaultFullSparseFileSupport(bool flag);
     // Must be invoked before issuing the first read.
     int SetFullSparseFileSupport(int fd, bool flag);
@@ -839,6 +891,12 @@ public:
         uint64_t&   outIssuedTime,
         uint32_t&   outValidForSec);
     Properties* GetStats(); // DisposeProperties() must be invoked to cleanup.
+    // Set the name of the operation the calling thread performs, used to
+    // account the client mutex wait and hold times reported by GetStats().
+    // The name must remain valid for the life time of the process, string
+    // literal is the expected argument. Returns the previous name.
+    static const char* SetCurrentOpName(
+        const char* opName);
     static Properties* CreateProperties();
     static void DisposeProperties(
         Properties* props);
@@ -32,6 +32,7 @@
 #include "common/kfstypes.h"
 #include "common/PoolAllocator.h"
 #include "common/BufferInputStream.h"
+#include "common/kfsatomic.h"
 #include "kfsio/NetManager.h"
 #include "kfsio/checksum.h"
 #include "kfsio/ClientAuthContext.h"
@@ -86,6 +87,14 @@ class ReadRequestCondVar;
 
 ///
 /// \brief Read buffer class used with read ahead.
+/// The buffer memory is reference counted, in order to allow to copy the
+/// read ahead data into the caller's buffer without holding the client mutex.
+/// The buffer that is referenced by a copy in flight is never re-used: the
+/// read ahead allocates a new buffer instead. All methods must be invoked
+/// with the client mutex held, except Unref(). The reference count is
+/// atomic, as the last reference can be dropped by the canceled read request
+/// completion, which runs in the protocol worker thread, and does not hold
+/// the client mutex.
 ///
 class ReadBuffer
 {
@@ -102,7 +111,7 @@ public:
     ~ReadBuffer()
     {
         assert(! mReadReq);
-        delete [] mAllocBuf;
+        Unref(mAllocBuf);
     }
     void Invalidate()
         { mSize = 0; }
@@ -113,10 +122,13 @@ public:
         }
         if (mBufSize > 0) {
             assert(mBuf);
-            return mBuf;
+            if (SyncAddAndFetch(RefCount(mAllocBuf), 0) <= 1) {
+                return mBuf;
+            }
+        } else {
+            mBufSize = -mBufSize;
         }
-        mBufSize  = -mBufSize;
-        delete [] mAllocBuf;
+        Unref(mAllocBuf);
         mAllocBuf = 0;
         mBuf      = 0;
         mSize     = 0;
@@ -124,12 +136,30 @@ public:
         if (mBufSize <= 0) {
             return 0;
         }
+        // The first kAlign bytes hold the reference count.
         const unsigned int kAlign = 16;
-        mAllocBuf = new char[mBufSize + kAlign];
-        mBuf      = mAllocBuf +
-            kAlign - (unsigned int)(mAllocBuf - (char*)0) % kAlign;
+        mAllocBuf = new char[mBufSize + 2 * kAlign];
+        RefCount(mAllocBuf) = 1;
+        char* const theBase = mAllocBuf + kAlign;
+        mBuf      = theBase +
+            kAlign - (unsigned int)(theBase - (char*)0) % kAlign;
         return mBuf;
     }
+    /// Add buffer memory reference, returns the memory block to be passed to
+    /// Unref(), or 0 if no buffer is allocated.
+    char* Ref()
+    {
+        if (mAllocBuf) {
+            SyncAddAndFetch(RefCount(mAllocBuf), 1);
+        }
+        return mAllocBuf;
+    }
+    static void Unref(char* allocBuf)
+    {
+        if (allocBuf && SyncAddAndFetch(RefCount(allocBuf), -1) <= 0) {
+            delete [] allocBuf;
+        }
+    }
     void SetBufSize(int size)
     {
         if (GetBufSize() != size) {
@@ -149,6 +179,8 @@ private:
 
     friend class ReadRequest;
 
+    static volatile int& RefCount(char* allocBuf)
+        { return *reinterpret_cast<volatile int*>(allocBuf); }
     char* DetachBuffer()
     {
         char* const ret = mAllocBuf;
@@ -284,6 +316,12 @@ public:
     /// @param[in] pathname The full pathname such as /.../dir
     /// @retval 0 if mkdir is successful; -errno otherwise
     int Mkdirs(const char *pathname, kfsMode_t mode);
+    int Mkdirs(const vector<string>& pathnames, kfsMode_t mode,
+        vector<int>& status, int maxPending);
+    int Remove(const vector<string>& pathnames, vector<int>& status,
+        int maxPending);
+    int Rename(const vector<string>& oldpaths, const vector<string>& newpaths,
+        bool overwrite, vector<int>& status, int maxPending);
 
     ///
     /// Make a directory in KFS.
@@ -346,6 +384,8 @@ public:
     ///
     int Stat(const char* pathname, KfsFileAttr& result, bool computeFilesize = true);
     int Stat(int fd, KfsFileAttr& result);
+    int Stat(const vector<string>& pathnames, vector<KfsFileAttr>& result,
+        vector<int>& status, bool computeFilesize);
 
     ///
     /// Return the # of chunks in the file specified by the fully qualified pathname.
@@ -584,6 +624,9 @@ public:
     int GetFileOrChunkInfo(kfsFileId_t fileId, kfsChunkId_t chunkId,
         KfsFileAttr& fattr, chunkOff_t& offset, int64_t& chunkVersion,
         vector<ServerLocation>& servers);
+    int StatById(kfsFileId_t fileId, KfsFileAttr& result,
+        bool computeFilesize, string* pathname);
+    int OpenById(kfsFileId_t fileId);
     void SetDefaultFullSparseFileSupport(bool flag);
     // Must be invoked before issuing the first read.
     int SetFullSparseFileSupport(int fd, bool flag);
@@ -643,13 +686,58 @@ public:
         uint64_t&   outIssuedTime,
         uint32_t&   outValidForSec);
     Properties* GetStats();
+    static const char* SetCurrentOpName(
+        const char* inOpNamePtr);
 
 private:
      /// Maximum # of files a client can have open minus 1.
      /// Slot 0 is not used to make Hypertable work.
     enum { MAX_FILES = 128 << 10 };
 
-    QCMutex mMutex;
+    // Client mutex wait and hold time accounting, per operation name set by
+    // SetCurrentOpName(). The counters are updated with the mutex held.
+    class MutexStats : public QCMutex::Observer
+    {
+    public:
+        MutexStats()
+            : QCMutex::Observer(),
+              mOps()
+            {}
+        virtual void* Acquired(
+            QCMutex::Time inWaitNanoSec,
+            bool          inContendedFlag);
+        virtual void Released(
+            QCMutex::Time inHoldNanoSec,
+            void*         inAcquiredPtr);
+        void GetStats(
+            Properties& outStats) const;
+    private:
+        struct Counters
+        {
+            Counters()
+                : mAcquired(0),
+                  mContended(0),
+                  mWaitNanoSec(0),
+                  mHoldNanoSec(0)
+                {}
+            int64_t mAcquired;
+            int64_t mContended;
+            int64_t mWaitNanoSec;
+            int64_t mHoldNanoSec;
+        };
+        // Keyed by the op name pointer, the names are expected to be string
+        // literals, thus the number of entries is bounded.
+        typedef map<const char*, Counters> Ops;
+        Ops mOps;
+    private:
+        MutexStats(
+            const MutexStats& inStats);
+        MutexStats& operator=(
+            const MutexStats& inStats);
+    };
+
+    MutexStats mMutexStats;
+    QCMutex    mMutex;
     QCMutex mReadCompletionMutex;
 
     /// Seed to the random number generator
@@ -908,6 +996,9 @@ private:
     /// the file and then adding with the size of the remaining (full) chunks.
     chunkOff_t ComputeFilesize(kfsFileId_t kfsfid);
 
+    /// Get file attributes and path name by file id from the meta server.
+    int LookupById(kfsFileId_t fileId, FileAttr& fattr, string& pathname);
+
     /// Given the attributes for a set of files and the location info
     /// of the last chunk of each file, compute the filesizes for each file
     void ComputeFilesizes(vector<KfsFileAttr> &fattrs,
@@ -929,6 +1020,10 @@ private:
     /// dies in the middle, retry the op a few times before giving up.
     void DoMetaOpWithRetry(KfsOp *op);
     void ExecuteMeta(KfsOp& op);
+    void ExecuteMetaBatch(vector<KfsOp*>& ops);
+    void InvalidateRenamed(
+        kfsFileId_t srcParentFid, const string& srcFileName, string& srcPath,
+        kfsFileId_t dstParentFid, const string& dstFileName, string& dstPath);
     void DoChunkServerOp(
         const ServerLocation& loc, bool shortRpcFormatFlag, KfsOp& op);
     void DoServerOp(KfsNetClient& server, const ServerLocation& loc, KfsOp& op);
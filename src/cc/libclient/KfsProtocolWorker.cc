@@ -80,6 +80,7 @@ class KfsProtocolWorker::Impl :
 public:
     typedef KfsNetClient         MetaServer;
     typedef QCDLList<Request, 0> WorkQueue;
+    enum { kMaxPipelinedMetaOps = 128 };
 
     Impl(
         string            inMetaHost,
@@ -325,6 +326,40 @@ public:
             inOffset
         ));
     }
+    // Enqueue all ops before waiting for the completion, in order to have
+    // the ops pipelined over the meta server connection.
+    void ExecuteMeta(
+        KfsOp* const* inOpsPtr,
+        int           inCount)
+    {
+        SyncRequest* theReqs[kMaxPipelinedMetaOps];
+        for (int theStart = 0; theStart < inCount; ) {
+            const int theCnt = min(inCount - theStart,
+                (int)kMaxPipelinedMetaOps);
+            for (int i = 0; i < theCnt; i++) {
+                theReqs[i] = &GetSyncRequest(
+                    kRequestTypeMetaOp,
+                    1,
+                    1,
+                    0,
+                    inOpsPtr[theStart + i],
+                    0,
+                    0,
+                    0
+                );
+                theReqs[i]->Start(*this);
+            }
+            for (int i = 0; i < theCnt; i++) {
+                const int64_t theRet = theReqs[i]->Wait();
+                KfsOp&        theOp  = *inOpsPtr[theStart + i];
+                if (theRet < 0 && 0 <= theOp.status) {
+                    theOp.status = (int)theRet;
+                }
+                PutSyncRequest(*theReqs[i]);
+            }
+            theStart += theCnt;
+        }
+    }
     int64_t Enqueue(
         Request& inRequest)
     {
@@ -704,9 +739,18 @@ private:
         }
         int64_t Execute(
             Impl& inWorker)
+        {
+            Start(inWorker);
+            return Wait();
+        }
+        void Start(
+            Impl& inWorker)
         {
             mWaitingFlag = true;
             inWorker.Enqueue(*this);
+        }
+        int64_t Wait()
+        {
             QCStMutexLocker theLock(mMutex);
             while (mWaitingFlag && mCond.Wait(mMutex))
                 {}
@@ -2057,6 +2101,14 @@ KfsProtocolWorker::Execute(
     );
 }
 
+void
+KfsProtocolWorker::ExecuteMeta(
+    KfsOp* const* inOpsPtr,
+    int           inCount)
+{
+    mImpl.ExecuteMeta(inOpsPtr, inCount);
+}
+
 void
 KfsProtocolWorker::ExecuteMeta(
     KfsOp& inOp)
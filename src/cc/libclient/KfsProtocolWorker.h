@@ -280,6 +280,11 @@ public:
         int64_t                inOffset     = -1);
     void ExecuteMeta(
         KfsOp& inOp);
+    // Pipelined execution of the meta server ops. Returns when all ops
+    // complete.
+    void ExecuteMeta(
+        KfsOp* const* inOpsPtr,
+        int           inCount);
     Properties GetStats();
     void Enqueue(
         Request& inRequest);
@@ -299,7 +299,7 @@ public:
                 return (int)theRet;
             }
         }
-        return CopyReadAhead(
+        return CopyReadAhead(inClientMutex,
             inEntry, inBufPtr, inSize, inOffset, outShortReadFlag);
     }
     static int GetReadAheadSize(
@@ -364,6 +364,7 @@ public:
     }
 private:
     typedef QCDLList<ReadRequest, 0> Queue;
+    enum { kMinUnlockedCopySize = 64 << 10 };
 
     Params              mOpenParams;
     QCMutex&            mMutex;
@@ -393,7 +394,7 @@ private:
     virtual ~ReadRequest()
     {
         QCASSERT(mWaitingCount == 0 && mCondVarPtr == 0);
-        delete [] mBufToDeletePtr;
+        ReadBuffer::Unref(mBufToDeletePtr);
     }
     int Init(
         FileTableEntry& inEntry,
@@ -445,7 +446,12 @@ private:
         return (inEntry.buffer.mReadReq &&
             ! inEntry.buffer.mReadReq->mDoneFlag);
     }
+    // Copy the read ahead data. Large copies are done without holding the
+    // client mutex, in order to allow the operations on the other files to
+    // proceed. In this case the entry might become invalid by the time this
+    // method returns, as the file might be closed by other thread.
     static int CopyReadAhead(
+        QCMutex&        inClientMutex,
         FileTableEntry& inEntry,
         void*           inBufPtr,
         int             inSize,
@@ -464,7 +470,19 @@ private:
         if (theLen <= 0) {
             return 0;
         }
-        memcpy(inBufPtr, inEntry.buffer.mBuf + (size_t)thePos, (size_t)theLen);
+        const char* const theSrcPtr = inEntry.buffer.mBuf + (size_t)thePos;
+        if (theLen < kMinUnlockedCopySize) {
+            memcpy(inBufPtr, theSrcPtr, (size_t)theLen);
+            return theLen;
+        }
+        // The reference keeps the buffer memory valid, and prevents the read
+        // ahead from re-using it while the copy is in flight.
+        char* const theAllocPtr = inEntry.buffer.Ref();
+        {
+            QCStMutexUnlocker theUnlocker(inClientMutex);
+            memcpy(inBufPtr, theSrcPtr, (size_t)theLen);
+        }
+        ReadBuffer::Unref(theAllocPtr);
         return theLen;
     }
 private:
@@ -721,6 +739,12 @@ KfsClientImpl::ReadSelf(
         // Move to the next chunk if read was short.
         thePos = SkipChunkTail(thePos, theEof);
     }
+    // Read ahead copy might release the mutex, ensure that the fd wasn't
+    // closed by other thread.
+    if (! valid_fd(inFd) || mFileTable[inFd] != &theEntry ||
+            theEntry.instance + 1 != theInstance) {
+        return theRet;
+    }
     // Wait in GetReadAhead() releases the mutex, ensure that
     // the file position remains the same before updating it, or using it.
     // Wait returns an error if theEntry (theRet < 0) becomes invalid as result
@@ -761,6 +785,10 @@ KfsClientImpl::ReadSelf(
             // Move to the next chunk if read was short.
             thePos = SkipChunkTail(thePos, theEof);
         }
+        if (! valid_fd(inFd) || mFileTable[inFd] != &theEntry ||
+                theEntry.instance + 1 != theInstance) {
+            return theRet;
+        }
         if (theFdPos == theFilePos) {
             theFilePos = thePos;
             theFdPos   = thePos;
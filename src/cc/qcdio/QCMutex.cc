@@ -62,7 +62,10 @@ GetAbsTimeout(
 QCMutex::QCMutex()
     : mLockCnt(0),
       mOwner(),
-      mMutex()
+      mMutex(),
+      mObserverPtr(0),
+      mLockTime(0),
+      mAcquiredPtr(0)
 {
     int theErr;
     pthread_mutexattr_t theAttr;
@@ -93,19 +96,54 @@ bool
 QCMutex::Lock(
     QCMutex::Time inTimeoutNanoSec)
 {
+    const Time theStart = mObserverPtr ? Now() : Time(-1);
     struct timespec theAbsTimeout;
     int theErr = GetAbsTimeout(inTimeoutNanoSec, theAbsTimeout);
     if (theErr != 0) {
         RaiseError("QCMutex::Lock: clock_gettime", theErr);
     }
-    theErr = pthread_mutex_timedlock(&mMutex, &theAbsTimeout);
+    bool theContendedFlag = false;
+    if (mObserverPtr) {
+        theErr = pthread_mutex_trylock(&mMutex);
+        theContendedFlag = theErr == EBUSY;
+    }
+    if (! mObserverPtr || theContendedFlag) {
+        theErr = pthread_mutex_timedlock(&mMutex, &theAbsTimeout);
+    }
     if (theErr == ETIMEDOUT) {
         return false;
     }
     if (theErr != 0) {
         RaiseError("QCMutex::Lock: pthread_mutex_timedlock", theErr);
     }
-    return true;
+    return Locked(theErr, theStart, theContendedFlag);
+}
+
+    /* static */ QCMutex::Time
+QCMutex::Now()
+{
+#if defined(_POSIX_TIMERS) && ! defined(QC_OS_NAME_DARWIN)
+    struct timespec theTime;
+    if (clock_gettime(CLOCK_MONOTONIC, &theTime) == 0) {
+        return (Time(theTime.tv_sec) * 1000 * 1000 * 1000 + theTime.tv_nsec);
+    }
+#endif
+    struct timeval theTimeVal;
+    gettimeofday(&theTimeVal, 0);
+    return (Time(theTimeVal.tv_sec) * 1000 * 1000 * 1000 +
+        Time(theTimeVal.tv_usec) * 1000);
+}
+
+bool
+QCMutex::LockObserved()
+{
+    const Time theStart         = Now();
+    int        theErr           = pthread_mutex_trylock(&mMutex);
+    const bool theContendedFlag = theErr == EBUSY;
+    if (theContendedFlag) {
+        theErr = pthread_mutex_lock(&mMutex);
+    }
+    return Locked(theErr, theStart, theContendedFlag);
 }
 
 void
@@ -149,6 +187,7 @@ QCCondVar::Wait(
         RaiseError("QCCondVar::Wait(timeout) deadlock: mLockCnt > 0");
     }
     theErr = pthread_cond_timedwait(&mCond, &inMutex.mMutex, &theAbsTimeout);
+    // Re-acquisition is reported to the observer by Locked().
     if (theErr == ETIMEDOUT) {
         inMutex.Locked(0);
         return false;
@@ -38,10 +38,38 @@ class QCMutex
 public:
     typedef int64_t Time;
 
+    // Optional lock wait and hold time accounting. The methods are invoked
+    // with the mutex held, and only for the outermost recursive lock.
+    // Acquired() is invoked on every acquisition: by Lock(), TryLock(), and
+    // when the conditional variable wait re-acquires the mutex. Released() is
+    // invoked when the mutex is released by Unlock() or by the conditional
+    // variable wait. The value returned by Acquired() is passed to the
+    // matching Released(), in order to let the observer keep per acquisition
+    // state. The conditional variable wait re-acquisition reports the wait
+    // for the mutex only, if any, not the wait for the condition.
+    class Observer
+    {
+    public:
+        virtual void* Acquired(
+            Time inWaitNanoSec,
+            bool inContendedFlag) = 0;
+        virtual void Released(
+            Time  inHoldNanoSec,
+            void* inAcquiredPtr) = 0;
+    protected:
+        Observer()
+            {}
+        virtual ~Observer()
+            {}
+    };
+
     QCMutex();
     ~QCMutex();
     bool Lock()
-        { return Locked(pthread_mutex_lock(&mMutex)); }
+    {
+        return (mObserverPtr ? LockObserved() :
+            Locked(pthread_mutex_lock(&mMutex)));
+    }
 
     bool Lock(
         Time inTimeoutNanoSec);
@@ -65,17 +93,33 @@ public:
     bool IsOwned() const
         { return (::pthread_equal(mOwner, ::pthread_self()) != 0); }
 
+    // Must be set before the mutex is used by more than one thread.
+    void SetObserver(
+        Observer* inObserverPtr)
+        { mObserverPtr = inObserverPtr; }
+
+    static Time Now();
+
 private:
     int             mLockCnt;
     pthread_t       mOwner;
     pthread_mutex_t mMutex;
+    Observer*       mObserverPtr;
+    Time            mLockTime;
+    void*           mAcquiredPtr;
+
+    bool LockObserved();
 
     void RaiseError(
         const char* inMsgPtr,
         int         inSysError = 0);
 
+    // The start time is the time when the lock attempt started, or negative
+    // if the wait time is unknown.
     bool Locked(
-        int inErr)
+        int  inErr,
+        Time inStartTime     = -1,
+        bool inContendedFlag = false)
     {
         if (inErr) {
             RaiseError("QCMutex::Locked", inErr);
@@ -85,6 +129,12 @@ private:
         }
         if (mLockCnt++ == 0) {
             mOwner = ::pthread_self();
+            if (mObserverPtr) {
+                mLockTime    = Now();
+                mAcquiredPtr = mObserverPtr->Acquired(
+                    inStartTime < 0 ? Time(0) : mLockTime - inStartTime,
+                    inContendedFlag);
+            }
         }
         return true;
     }
@@ -97,6 +147,11 @@ private:
         const bool theUnlockedFlag = --mLockCnt == 0;
         if (theUnlockedFlag) {
             mOwner = pthread_t();
+            if (mObserverPtr) {
+                void* const theAcquiredPtr = mAcquiredPtr;
+                mAcquiredPtr = 0;
+                mObserverPtr->Released(Now() - mLockTime, theAcquiredPtr);
+            }
         }
         return theUnlockedFlag;
     }
@@ -125,6 +180,7 @@ public:
         if (theErr) {
             RaiseError("QCCondVar::Wait", theErr);
         }
+        // Re-acquisition is reported to the observer by Locked().
         return inMutex.Locked(theErr);
     }
 
@@ -0,0 +1,33 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * Extends QFSInputStream with Hadoop 2.x ByteBufferReadable interface.
+ */
+
+package com.quantcast.qfs.hadoop;
+
+import java.io.IOException;
+
+import org.apache.hadoop.fs.ByteBufferReadable;
+import org.apache.hadoop.fs.FileSystem;
+
+import com.quantcast.qfs.access.KfsAccess;
+
+class QFSInputStream2 extends QFSInputStream implements ByteBufferReadable {
+
+  public QFSInputStream2(KfsAccess kfsAccess, String path,
+                         FileSystem.Statistics stats) throws IOException {
+    super(kfsAccess, path, stats);
+  }
+}
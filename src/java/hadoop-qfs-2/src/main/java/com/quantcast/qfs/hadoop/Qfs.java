@@ -73,14 +73,14 @@ public class Qfs extends AbstractFileSystem {
         "requested URI scheme: " + scheme + " is not for QFS");
     }
     if (uri.getHost() == null) {
-      this.qfsImpl = new QFSImpl(
+      this.qfsImpl = new QFSImpl2(
         conf.get("fs.qfs.metaServerHost", ""),
         conf.getInt("fs.qfs.metaServerPort", -1),
         getStatistics(),
         conf
       );
     } else {
-      this.qfsImpl = new QFSImpl(
+      this.qfsImpl = new QFSImpl2(
         uri.getHost(), uri.getPort(), getStatistics(), conf);
     }
     this.qfs = new QuantcastFileSystem2(this.qfsImpl, uri);
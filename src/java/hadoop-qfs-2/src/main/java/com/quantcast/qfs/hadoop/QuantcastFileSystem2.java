@@ -19,9 +19,15 @@ package com.quantcast.qfs.hadoop;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.NoSuchElementException;
 
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.fs.RemoteIterator;
 
 public class QuantcastFileSystem2 extends QuantcastFileSystem {
   
@@ -33,8 +39,180 @@ public class QuantcastFileSystem2 extends QuantcastFileSystem {
     super(fsimpl, uri);
   }
 
+  protected IFSImpl createIFSImpl(String metaServerHost, int metaServerPort,
+                               FileSystem.Statistics stats,
+                               Configuration conf) throws IOException {
+    return new QFSImpl2(metaServerHost, metaServerPort, stats, conf);
+  }
+
   public FileStatus[] listStatus(Path path) throws IOException {
     return listStatusInternal(path);
   }
 
+  // Streams the directory entries from the directory iterator, instead of
+  // loading the entire directory into memory. The directory is closed when
+  // the last entry is returned, or iteration fails with an exception or an
+  // error.
+  public RemoteIterator<FileStatus> listStatusIterator(Path path)
+    throws IOException {
+    return new StatusIterator<FileStatus>(path, null) {
+      protected FileStatus convert(FileStatus status) {
+        return status;
+      }
+    };
+  }
+
+  // The non recursive listFiles() uses listLocatedStatus(), and with this
+  // override keeps at most one open directory.
+  protected RemoteIterator<LocatedFileStatus> listLocatedStatus(
+      Path path, PathFilter filter) throws IOException {
+    return new StatusIterator<LocatedFileStatus>(path, filter) {
+      protected LocatedFileStatus convert(FileStatus status)
+          throws IOException {
+        return new LocatedFileStatus(status, status.isDir() ? null :
+          getFileBlockLocations(status, 0, status.getLen()));
+      }
+    };
+  }
+
+  // Recursive listing lists the directories in parallel with the tree walker,
+  // the files are returned in no particular order. RemoteIterator has no
+  // close, the walk is closed after the last entry or on failure, and the walk
+  // of the iterator that is not consumed to the end stops once the iterator
+  // is garbage collected.
+  public RemoteIterator<LocatedFileStatus> listFiles(Path path,
+      boolean recursive) throws IOException {
+    final Path absolute = makeAbsolute(path).makeQualified(uri, null);
+    if (! recursive || ! qfsImpl.stat(absolute).isDir()) {
+      return super.listFiles(path, recursive);
+    }
+    final CloseableIterator<FileStatus> itr =
+      qfsImpl.getFileStatusTreeIterator(this, absolute);
+    return new RemoteIterator<LocatedFileStatus>() {
+      private FileStatus next;
+
+      public boolean hasNext() throws IOException {
+        boolean ok = false;
+        try {
+          while (next == null) {
+            if (! itr.hasNext()) {
+              itr.close();
+              break;
+            }
+            final FileStatus status = itr.next();
+            if (! status.isDir()) {
+              next = status;
+            }
+          }
+          ok = true;
+        } catch (RuntimeException ex) {
+          if (ex.getCause() instanceof IOException) {
+            throw (IOException)ex.getCause();
+          }
+          throw ex;
+        } finally {
+          if (! ok) {
+            itr.close();
+          }
+        }
+        return next != null;
+      }
+
+      public LocatedFileStatus next() throws IOException {
+        if (! hasNext()) {
+          throw new NoSuchElementException();
+        }
+        final FileStatus status = next;
+        next = null;
+        boolean ok = false;
+        try {
+          final LocatedFileStatus ret = new LocatedFileStatus(status,
+            getFileBlockLocations(status, 0, status.getLen()));
+          ok = true;
+          return ret;
+        } finally {
+          if (! ok) {
+            itr.close();
+          }
+        }
+      }
+    };
+  }
+
+  private abstract class StatusIterator<T> implements RemoteIterator<T> {
+    private final PathFilter              filter;
+    private CloseableIterator<FileStatus> itr;
+    private FileStatus                    next;
+
+    StatusIterator(Path path, PathFilter filter) throws IOException {
+      this.filter = filter;
+      final Path absolute = makeAbsolute(path).makeQualified(uri, null);
+      final FileStatus status = qfsImpl.stat(absolute);
+      if (status.isDir()) {
+        itr = qfsImpl.getFileStatusIterator(QuantcastFileSystem2.this,
+          absolute);
+      } else if (filter == null || filter.accept(status.getPath())) {
+        next = status;
+      }
+    }
+
+    protected abstract T convert(FileStatus status) throws IOException;
+
+    public boolean hasNext() throws IOException {
+      boolean ok = false;
+      try {
+        while (next == null && itr != null) {
+          if (! itr.hasNext()) {
+            close();
+            break;
+          }
+          final FileStatus status = itr.next();
+          if (filter == null || filter.accept(status.getPath())) {
+            next = status;
+          }
+        }
+        ok = true;
+      } catch (RuntimeException ex) {
+        if (ex.getCause() instanceof IOException) {
+          throw (IOException)ex.getCause();
+        }
+        throw ex;
+      } finally {
+        if (! ok) {
+          close();
+        }
+      }
+      return next != null;
+    }
+
+    public T next() throws IOException {
+      if (! hasNext()) {
+        throw new NoSuchElementException();
+      }
+      final FileStatus status = next;
+      next = null;
+      boolean ok = false;
+      try {
+        final T ret = convert(status);
+        ok = true;
+        return ret;
+      } finally {
+        if (! ok) {
+          close();
+        }
+      }
+    }
+
+    // Closes the directory, the iteration ends. Called on the last entry, and
+    // on any failure, including the filter and the conversion failures.
+    private void close() throws IOException {
+      if (itr != null) {
+        final CloseableIterator<FileStatus> it = itr;
+        itr  = null;
+        next = null;
+        it.close();
+      }
+    }
+  }
+
 }
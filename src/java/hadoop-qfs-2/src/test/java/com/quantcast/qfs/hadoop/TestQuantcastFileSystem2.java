@@ -0,0 +1,182 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * Unit tests for the QuantcastFileSystem2 directory listing iterators.
+ */
+
+package com.quantcast.qfs.hadoop;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URI;
+import java.util.NoSuchElementException;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.fs.RemoteIterator;
+
+public class TestQuantcastFileSystem2 extends TestCase {
+
+  QuantcastFileSystem2 quantcastFileSystem;
+  QFSEmulationImpl qfsEmul;
+  Path baseDir;
+
+  @Override
+  protected void setUp() throws IOException {
+    Configuration conf = new Configuration();
+
+    qfsEmul = new QFSEmulationImpl(conf);
+    quantcastFileSystem = new QuantcastFileSystem2(qfsEmul, null);
+    // a dummy URI; we are not connecting to any setup here
+    quantcastFileSystem.initialize(URI.create("qfs:///"), conf);
+    baseDir = new Path(System.getProperty("test.build.data", "/tmp" ) +
+                                          "/qfs-test-2");
+    quantcastFileSystem.delete(baseDir, true);
+    for (String file : new String[] { "foo.1", "foo.2", "foo.3",
+        "dir.1/foo.4", "dir.1/dir.2/foo.5" }) {
+      FSDataOutputStream s = quantcastFileSystem.create(
+        new Path(baseDir, file), true, 4096, (short) 1, (long) 4096, null);
+      s.writeUTF(file);
+      s.close();
+    }
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    quantcastFileSystem.delete(baseDir, true);
+  }
+
+  // @Test
+  // The directory is closed once the last entry is returned.
+  public void testListStatusIterator() throws Exception {
+    RemoteIterator<FileStatus> it =
+      quantcastFileSystem.listStatusIterator(baseDir);
+    int count = 0;
+    while (it.hasNext()) {
+      assertEquals(1, qfsEmul.openIterators);
+      it.next();
+      count++;
+    }
+    assertEquals(4, count);
+    assertEquals(0, qfsEmul.openIterators);
+    assertFalse(it.hasNext());
+    try {
+      it.next();
+      fail("NoSuchElementException expected");
+    } catch (NoSuchElementException ex) {
+    }
+
+    // A file is returned as is, without opening a directory.
+    it = quantcastFileSystem.listStatusIterator(new Path(baseDir, "foo.1"));
+    assertEquals(0, qfsEmul.openIterators);
+    assertTrue(it.hasNext());
+    assertEquals("foo.1", it.next().getPath().getName());
+    assertFalse(it.hasNext());
+
+    try {
+      quantcastFileSystem.listStatusIterator(new Path(baseDir, "none"));
+      fail("FileNotFoundException expected");
+    } catch (FileNotFoundException ex) {
+    }
+    assertEquals(0, qfsEmul.openIterators);
+  }
+
+  // @Test
+  // Each abandoned iterator keeps only its own directory open, and does not
+  // affect the other listings.
+  public void testAbandon() throws Exception {
+    RemoteIterator<FileStatus> abandoned =
+      quantcastFileSystem.listStatusIterator(baseDir);
+    assertTrue(abandoned.hasNext());
+    abandoned.next();
+    assertEquals(1, qfsEmul.openIterators);
+
+    RemoteIterator<LocatedFileStatus> files =
+      quantcastFileSystem.listFiles(baseDir, false);
+    assertEquals(2, qfsEmul.openIterators);
+    int count = 0;
+    while (files.hasNext()) {
+      assertFalse(files.next().isDir());
+      count++;
+    }
+    assertEquals(3, count);
+    assertEquals(1, qfsEmul.openIterators);
+
+    files = quantcastFileSystem.listFiles(baseDir, true);
+    assertTrue(files.hasNext());
+    files.next();
+    assertEquals(2, qfsEmul.openIterators);
+    count = 1;
+    while (files.hasNext()) {
+      files.next();
+      count++;
+    }
+    assertEquals(5, count);
+    assertEquals(1, qfsEmul.openIterators);
+    assertTrue(abandoned.hasNext());
+  }
+
+  // @Test
+  // The directory is closed when the filter or the conversion fails.
+  public void testClose() throws Exception {
+    RemoteIterator<LocatedFileStatus> it =
+      quantcastFileSystem.listLocatedStatus(baseDir, new PathFilter() {
+        public boolean accept(Path path) {
+          throw new IllegalStateException("filter");
+        }
+      });
+    try {
+      it.hasNext();
+      fail("IllegalStateException expected");
+    } catch (IllegalStateException ex) {
+    }
+    assertEquals(0, qfsEmul.openIterators);
+    assertFalse(it.hasNext());
+
+    it = quantcastFileSystem.listLocatedStatus(baseDir, new PathFilter() {
+      public boolean accept(Path path) {
+        throw new Error("filter");
+      }
+    });
+    try {
+      it.hasNext();
+      fail("Error expected");
+    } catch (Error ex) {
+      assertEquals("filter", ex.getMessage());
+    }
+    assertEquals(0, qfsEmul.openIterators);
+
+    // Block locations lookup fails for the file removed after it was listed.
+    it = quantcastFileSystem.listLocatedStatus(baseDir, new PathFilter() {
+      public boolean accept(Path path) {
+        return path.getName().equals("foo.2");
+      }
+    });
+    assertTrue(it.hasNext());
+    quantcastFileSystem.delete(new Path(baseDir, "foo.2"), false);
+    try {
+      it.next();
+      fail("IOException expected");
+    } catch (IOException ex) {
+    }
+    assertEquals(0, qfsEmul.openIterators);
+    assertFalse(it.hasNext());
+  }
+}
@@ -26,6 +26,7 @@
 package com.quantcast.qfs.hadoop;
 
 import java.io.*;
+import java.util.Map;
 
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FSDataOutputStream;
@@ -40,6 +41,11 @@ interface IFSImpl {
   public boolean isFile(String path) throws IOException;
   public String[] readdir(String path) throws IOException;
   public FileStatus[] readdirplus(Path path) throws IOException;
+  // Lists the entries with the names matching the glob path component, and
+  // optionally only the directories. The entries that do not match are
+  // skipped while iterating the directory.
+  public FileStatus[] readdirplus(Path path, QFSGlobMatcher matcher,
+           boolean dirsOnly) throws IOException;
   public FileStatus stat(Path path) throws IOException;
   public KfsFileAttr fullStat(Path path) throws IOException;
 
@@ -51,6 +57,12 @@ interface IFSImpl {
   public int rmdir(String path) throws IOException;
   public int rmdirs(String path) throws IOException;
   public int remove(String path) throws IOException;
+  // Batch variants: the requests are pipelined, the returned array contains
+  // per path status, 0 or negative error code.
+  public int[] mkdirs(String[] paths, int mode) throws IOException;
+  public int[] rename(String[] sources, String[] dests, boolean overwrite)
+           throws IOException;
+  public int[] remove(String[] paths) throws IOException;
   public long filesize(String path) throws IOException;
   public short getReplication(String path) throws IOException;
   public short setReplication(String path, short replication)
@@ -81,4 +93,12 @@ interface IFSImpl {
   public void setUMask(int mask) throws IOException;
   public CloseableIterator<FileStatus> getFileStatusIterator(FileSystem fs, Path path)
            throws IOException;
+  // Recursively lists the directory tree, the root is not included. The
+  // entries are returned in no particular order, except that a directory is
+  // returned before its entries.
+  public CloseableIterator<FileStatus> getFileStatusTreeIterator(
+      FileSystem fs, Path path) throws IOException;
+  // Attribute and negative lookup cache counters, empty if the caches are
+  // disabled.
+  public Map<String, Long> getAttrCacheStats();
 };
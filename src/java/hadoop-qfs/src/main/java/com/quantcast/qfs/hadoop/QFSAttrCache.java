@@ -0,0 +1,80 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * Bounded size file attribute cache with time to live and LRU eviction.
+ *
+ * The cache is keyed by the absolute path name. The entries modified by the
+ * same file system instance are invalidated by the mutation calls, the
+ * modifications made by other clients become visible once the entry
+ * expires. The cached attributes are shared, and must not be modified.
+ */
+
+package com.quantcast.qfs.hadoop;
+
+import com.quantcast.qfs.access.KfsFileAttr;
+
+class QFSAttrCache extends QFSTtlCache<KfsFileAttr> {
+  QFSAttrCache(int maxSize, long ttlMs) {
+    super("AttrCache", maxSize, ttlMs);
+  }
+
+  static KfsFileAttr copy(KfsFileAttr src) {
+    final KfsFileAttr dst = new KfsFileAttr();
+    dst.filename           = src.filename;
+    dst.isDirectory        = src.isDirectory;
+    dst.filesize           = src.filesize;
+    dst.modificationTime   = src.modificationTime;
+    dst.attrChangeTime     = src.attrChangeTime;
+    dst.creationTime       = src.creationTime;
+    dst.replication        = src.replication;
+    dst.striperType        = src.striperType;
+    dst.numStripes         = src.numStripes;
+    dst.numRecoveryStripes = src.numRecoveryStripes;
+    dst.stripeSize         = src.stripeSize;
+    dst.minSTier           = src.minSTier;
+    dst.maxSTier           = src.maxSTier;
+    dst.owner              = src.owner;
+    dst.group              = src.group;
+    dst.mode               = src.mode;
+    dst.ownerName          = src.ownerName;
+    dst.groupName          = src.groupName;
+    dst.dirCount           = src.dirCount;
+    dst.fileCount          = src.fileCount;
+    dst.chunkCount         = src.chunkCount;
+    dst.fileId             = src.fileId;
+    return dst;
+  }
+
+  // Invalidate the path, and its parent directory, as the directory
+  // modification time and the sub counts change with the directory entries.
+  void invalidate(String path) {
+    remove(path);
+    final String parent = parent(path);
+    if (parent != null) {
+      remove(parent);
+    }
+  }
+
+  // Invalidate the path, and all its ancestors, as mkdirs might create the
+  // ancestors.
+  void invalidateAncestors(String path) {
+    removeAncestors(path);
+  }
+
+  // Invalidate the path, its parent, and everything under the path.
+  void invalidateTree(String path) {
+    invalidate(path);
+    removeDescendants(path);
+  }
+}
@@ -0,0 +1,81 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * Directory entry status with the path created on first use.
+ *
+ * Creating qualified Path is the most expensive part of listing a directory
+ * entry, and the callers that only look at the size, type, or name do not
+ * need it. The permissions are shared immutable instances.
+ */
+
+package com.quantcast.qfs.hadoop;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+
+class QFSFileStatus extends FileStatus {
+  private static final FsPermission[] PERMISSIONS = new FsPermission[010000];
+
+  private final String     prefix;
+  private final String     name;
+  private final FileSystem fs;
+  private Path             path;
+
+  // Returns shared immutable permission instance. The races are benign, as
+  // the instances with the same mode are interchangeable.
+  static FsPermission getPermission(int mode) {
+    if (mode < 0 || PERMISSIONS.length <= mode) {
+      return FsPermission.createImmutable((short)mode);
+    }
+    FsPermission perm = PERMISSIONS[mode];
+    if (perm == null) {
+      perm = FsPermission.createImmutable((short)mode);
+      PERMISSIONS[mode] = perm;
+    }
+    return perm;
+  }
+
+  QFSFileStatus(long length, boolean isdir, int replication, long blocksize,
+      long modificationTime, long accessTime, int mode, String owner,
+      String group, String prefix, String name, FileSystem fs) {
+    super(length, isdir, replication, blocksize, modificationTime, accessTime,
+      getPermission(mode), owner, group, null);
+    this.prefix = prefix;
+    this.name   = name;
+    this.fs     = fs;
+  }
+
+  // Returns the entry name without creating the path.
+  String getName() {
+    return name;
+  }
+
+  // The path is the prefix followed by the name, and is qualified with the
+  // file system if one is specified.
+  public Path getPath() {
+    if (path == null) {
+      final Path p = new Path(prefix + name);
+      path = fs == null ? p : p.makeQualified(fs);
+    }
+    return path;
+  }
+
+  // Overrides Hadoop 2 FileStatus.setPath(), used by the glob and trash code
+  // to rewrite the returned paths, the base class path field is not used.
+  public void setPath(Path p) {
+    path = p;
+  }
+}
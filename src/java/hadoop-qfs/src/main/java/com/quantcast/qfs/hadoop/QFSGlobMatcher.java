@@ -0,0 +1,106 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * Matches directory entry names against a single path component glob.
+ *
+ * The literal prefix and suffix of the glob are compared with the UTF-8
+ * encoded name bytes first, in place, in the directory listing buffer. The
+ * name is decoded and matched against the glob regular expression only if
+ * both are present, therefore the entries rejected by the prefix or suffix
+ * do not allocate memory.
+ */
+
+package com.quantcast.qfs.hadoop;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+
+import org.apache.hadoop.fs.GlobPattern;
+
+import com.quantcast.qfs.access.KfsAccess;
+
+class QFSGlobMatcher {
+  private final GlobPattern pattern;
+  private final byte[]      prefix;
+  private final byte[]      suffix;
+
+  QFSGlobMatcher(String glob) {
+    pattern = new GlobPattern(glob);
+    int first = 0;
+    while (first < glob.length() && ! isSpecial(glob.charAt(first))) {
+      first++;
+    }
+    int last = glob.length();
+    while (first < last && ! isSpecial(glob.charAt(last - 1))) {
+      last--;
+    }
+    // The suffix must not start right after the escape character, that is
+    // after an odd number of backslashes, an even number is a sequence of
+    // escaped backslashes.
+    int escapes = 0;
+    while (escapes < last && glob.charAt(last - 1 - escapes) == '\\') {
+      escapes++;
+    }
+    if ((escapes & 1) != 0 && last < glob.length()) {
+      last++;
+    }
+    prefix = utf8(glob.substring(0, first));
+    suffix = utf8(glob.substring(last));
+  }
+
+  private static boolean isSpecial(char c) {
+    return c == '*' || c == '?' || c == '[' || c == ']' || c == '{' ||
+      c == '}' || c == '\\';
+  }
+
+  private static byte[] utf8(String str) {
+    try {
+      return str.getBytes("UTF-8");
+    } catch (UnsupportedEncodingException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  // The literal prefix and suffix, used by the unit tests.
+  byte[] getPrefix() {
+    return prefix;
+  }
+
+  byte[] getSuffix() {
+    return suffix;
+  }
+
+  boolean hasWildcard() {
+    return pattern.hasWildcard();
+  }
+
+  boolean matches(String name) {
+    return pattern.matches(name);
+  }
+
+  // Matches the directory iterator current entry name.
+  boolean matches(KfsAccess.PackedFileAttr entry) throws IOException {
+    final int len = entry.getNameLength();
+    if (len < prefix.length + suffix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (entry.getNameByte(i) != prefix[i]) {
+        return false;
+      }
+    }
+    return entry.nameEndsWith(suffix) &&
+      pattern.matches(entry.getFilename());
+  }
+}
@@ -18,7 +18,9 @@
 package com.quantcast.qfs.hadoop;
 
 import java.io.*;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.TreeMap;
 
 import org.apache.hadoop.conf.Configuration;
 
@@ -27,19 +29,30 @@ import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.fs.permission.FsPermission;
 
 import com.quantcast.qfs.access.KfsAccess;
+import com.quantcast.qfs.access.KfsAccessPool;
 import com.quantcast.qfs.access.KfsFileAttr;
+import com.quantcast.qfs.access.KfsTreeWalker;
 
 import java.util.ArrayList;
 
 class QFSImpl implements IFSImpl {
   protected KfsAccess kfsAccess = null;
+  // With more than one client configured, the calls are spread across the
+  // pool client instances, and kfsAccess is the first pool instance.
+  private KfsAccessPool accessPool = null;
   private FileSystem.Statistics statistics;
   private final long BLOCK_SIZE  = 1 << 26;
   private final long ACCESS_TIME = 0;
   private final String CREATE_PARAMS;
+  private final int    PREFETCH_DEPTH;
+  private final int    WRITE_BEHIND_DEPTH;
+  // Optional attribute cache, null if disabled.
+  private final QFSAttrCache attrCache;
+  // Optional cache of the paths that do not exist, null if disabled.
+  private final QFSNegativeCache negativeCache;
+  private final KfsTreeWalker    treeWalker;
   public QFSImpl(String metaServerHost, int metaServerPort,
                  FileSystem.Statistics stats,
                  Configuration cfg) throws IOException {
@@ -54,6 +67,8 @@ class QFSImpl implements IFSImpl {
     final String groupsCfg       = cfg.get(groupsCfgName, "");
     long[]       groups          = null;
     CREATE_PARAMS                = cfg.get("fs.qfs.createParams", "S");
+    PREFETCH_DEPTH               = cfg.getInt("fs.qfs.readPrefetchDepth", 0);
+    WRITE_BEHIND_DEPTH           = cfg.getInt("fs.qfs.writeBehindDepth", 0);
     if (kDefaultUser != euser && (euser < 0 || kMaxUserGroupId <= euser)) {
             throw new IOException("invalid effective user id: " + euser);
     }
@@ -86,51 +101,219 @@ class QFSImpl implements IFSImpl {
         // Effective user and group ids have no effect with QFS authentication.
         kfsAccess.kfs_setEUserAndEGroup(euser, egroup, groups);
     }
+    final int clients = cfg.getInt("fs.qfs.clientPoolSize", 1);
+    if (1 < clients) {
+      accessPool = new KfsAccessPool(
+        kfsAccess, metaServerHost, metaServerPort, clients);
+    }
+    // The attribute cache time to live is also used as the native client
+    // attribute revalidate time, in order to bound the staleness of both
+    // caches by the same value.
+    final int attrCacheSize = cfg.getInt("fs.qfs.attrCache.size", 0);
+    if (0 < attrCacheSize) {
+      final int ttlSec = Math.max(0, cfg.getInt("fs.qfs.attrCache.ttlSec", 5));
+      attrCache = new QFSAttrCache(attrCacheSize, ttlSec * 1000L);
+      if (accessPool == null) {
+        kfsAccess.kfs_setFileAttributeRevalidateTime(ttlSec);
+      } else {
+        for (int i = 0; i < accessPool.getShardCount(); i++) {
+          accessPool.getShard(i).kfs_setFileAttributeRevalidateTime(ttlSec);
+        }
+      }
+    } else {
+      attrCache = null;
+    }
+    final int negativeCacheSize = cfg.getInt("fs.qfs.negativeCache.size", 0);
+    if (0 < negativeCacheSize) {
+      negativeCache = new QFSNegativeCache(negativeCacheSize,
+        Math.max(0L, cfg.getLong("fs.qfs.negativeCache.ttlMs", 1000)));
+    } else {
+      negativeCache = null;
+    }
+    final int walkThreads = Math.max(1, cfg.getInt("fs.qfs.treeWalkThreads", 8));
+    treeWalker = accessPool == null ?
+      new KfsTreeWalker(kfsAccess, walkThreads) :
+      new KfsTreeWalker(accessPool, walkThreads);
     statistics = stats;
   }
 
+  private KfsAccess access() {
+    return accessPool == null ? kfsAccess : accessPool.getShard();
+  }
+
+  private boolean isKnownMissing(String path) {
+    return negativeCache != null && negativeCache.contains(path);
+  }
+
+  // The cache generations are obtained before the meta server lookup, in
+  // order to discard the lookup result if a mutation invalidated the caches
+  // while the lookup was in flight.
+  private long negativeGeneration() {
+    return negativeCache == null ? 0 : negativeCache.getGeneration();
+  }
+
+  private void setMissing(KfsAccess access, int status, String path,
+      long generation) {
+    if (negativeCache != null && access.kfs_isNotFound(status)) {
+      negativeCache.put(path, generation);
+    }
+  }
+
+  // Returns the attribute from the cache, or from the meta server, or null if
+  // stat fails. Must be called only with attribute cache enabled.
+  private KfsFileAttr lookupAttr(String path) {
+    if (isKnownMissing(path)) {
+      return null;
+    }
+    KfsFileAttr fa = attrCache.get(path);
+    if (fa == null) {
+      final long attrGen = attrCache.getGeneration();
+      final long negGen  = negativeGeneration();
+      fa = new KfsFileAttr();
+      final KfsAccess access = access();
+      final int status = access.kfs_stat(path, fa);
+      if (status != 0) {
+        setMissing(access, status, path, negGen);
+        return null;
+      }
+      attrCache.put(path, fa, attrGen);
+    }
+    return fa;
+  }
+
+  private KfsFileAttr statAttr(String path) throws IOException {
+    if (isKnownMissing(path)) {
+      throw new FileNotFoundException(path + ": No such file or directory");
+    }
+    KfsFileAttr fa = attrCache == null ? null : attrCache.get(path);
+    if (fa == null) {
+      final long attrGen = attrCache == null ? 0 : attrCache.getGeneration();
+      final long negGen  = negativeGeneration();
+      fa = new KfsFileAttr();
+      final KfsAccess access = access();
+      final int status = access.kfs_stat(path, fa);
+      if (status != 0) {
+        setMissing(access, status, path, negGen);
+        kfsAccess.kfs_retToIOException(status, path);
+      }
+      if (attrCache != null) {
+        attrCache.put(path, fa, attrGen);
+      }
+    }
+    return fa;
+  }
+
+  private void invalidate(String path) {
+    if (attrCache != null) {
+      attrCache.invalidate(path);
+    }
+    if (negativeCache != null) {
+      negativeCache.invalidate(path);
+    }
+  }
+
+  private void invalidateTree(String path) {
+    if (attrCache != null) {
+      attrCache.invalidateTree(path);
+    }
+    if (negativeCache != null) {
+      negativeCache.invalidate(path);
+    }
+  }
+
+  private void invalidateTree(String[] paths) {
+    for (String path : paths) {
+      invalidateTree(path);
+    }
+  }
+
+  private void invalidateAncestors(String path) {
+    if (attrCache != null) {
+      attrCache.invalidateAncestors(path);
+    }
+    if (negativeCache != null) {
+      negativeCache.invalidate(path);
+    }
+  }
+
   public boolean exists(String path) throws IOException {
-    return kfsAccess.kfs_exists(path);
+    if (attrCache != null) {
+      return lookupAttr(path) != null;
+    }
+    if (negativeCache == null) {
+      return access().kfs_exists(path);
+    }
+    if (negativeCache.contains(path)) {
+      return false;
+    }
+    final long negGen = negativeCache.getGeneration();
+    final KfsAccess access = access();
+    final int status = access.kfs_existsStatus(path);
+    if (status < 0) {
+      setMissing(access, status, path, negGen);
+    }
+    return status == 1;
   }
 
   public boolean isDirectory(String path) throws IOException {
-    return kfsAccess.kfs_isDirectory(path);
+    if (attrCache == null) {
+      return ! isKnownMissing(path) && access().kfs_isDirectory(path);
+    }
+    final KfsFileAttr fa = lookupAttr(path);
+    return fa != null && fa.isDirectory;
   }
 
   public boolean isFile(String path) throws IOException {
-    return kfsAccess.kfs_isFile(path);
+    if (attrCache == null) {
+      return ! isKnownMissing(path) && access().kfs_isFile(path);
+    }
+    final KfsFileAttr fa = lookupAttr(path);
+    return fa != null && ! fa.isDirectory;
   }
 
   public String[] readdir(String path) throws IOException {
-    return kfsAccess.kfs_readdir(path);
+    return access().kfs_readdir(path);
   }
 
   public FileStatus[] readdirplus(Path path) throws IOException {
     KfsAccess.DirectoryIterator itr = null;
     try {
-      itr = kfsAccess.new DirectoryIterator(path.toUri().getPath());
+      itr = access().new DirectoryIterator(path.toUri().getPath(), true);
       final ArrayList<FileStatus> ret = new ArrayList<FileStatus>();
       String prefix = path.toString();
       if (! prefix.endsWith("/")) {
         prefix += "/";
       }
       while (itr.next()) {
-        if (itr.filename.compareTo(".") == 0 ||
-            itr.filename.compareTo("..") == 0) {
+        if (itr.isDotOrDotDot()) {
           continue;
         }
-        ret.add(new FileStatus(
-          itr.isDirectory ? 0L : itr.filesize,
-          itr.isDirectory,
-          itr.isDirectory ? 1 : itr.replication,
-          itr.isDirectory ? 0 : BLOCK_SIZE,
-          itr.modificationTime,
-          ACCESS_TIME,
-          FsPermission.createImmutable((short)itr.mode),
-          itr.ownerName,
-          itr.groupName,
-          new Path(prefix + itr.filename)
-        ));
+        ret.add(toFileStatus(itr, prefix, null));
+      }
+      return ret.toArray(new FileStatus[0]);
+    } finally {
+      if (itr != null) {
+        itr.close();
+      }
+    }
+  }
+
+  public FileStatus[] readdirplus(Path path, QFSGlobMatcher matcher,
+      boolean dirsOnly) throws IOException {
+    KfsAccess.DirectoryIterator itr = null;
+    try {
+      itr = access().new DirectoryIterator(path.toUri().getPath(), true);
+      final ArrayList<FileStatus> ret = new ArrayList<FileStatus>();
+      String prefix = path.toString();
+      if (! prefix.endsWith("/")) {
+        prefix += "/";
+      }
+      while (itr.next()) {
+        if ((dirsOnly && ! itr.isDirectory) || itr.isDotOrDotDot() ||
+            ! matcher.matches(itr)) {
+          continue;
+        }
+        ret.add(toFileStatus(itr, prefix, null));
       }
       return ret.toArray(new FileStatus[0]);
     } finally {
@@ -141,9 +324,29 @@ class QFSImpl implements IFSImpl {
   }
 
   public FileStatus stat(Path path) throws IOException {
-    final KfsFileAttr fa  = new KfsFileAttr();
-    final String      pn  = path.toUri().getPath();
-    kfsAccess.kfs_retToIOException(kfsAccess.kfs_stat(pn, fa), pn);
+    return toFileStatus(statAttr(path.toUri().getPath()), path);
+  }
+
+  // Returns directory entry status, with the path created on first use.
+  private FileStatus toFileStatus(KfsAccess.DirectoryIterator itr,
+      String prefix, FileSystem fs) throws IOException {
+    return new QFSFileStatus(
+      itr.isDirectory ? 0L : itr.filesize,
+      itr.isDirectory,
+      itr.isDirectory ? 1 : itr.replication,
+      itr.isDirectory ? 0 : BLOCK_SIZE,
+      itr.modificationTime,
+      ACCESS_TIME,
+      itr.mode,
+      itr.ownerName,
+      itr.groupName,
+      prefix,
+      itr.getFilename(),
+      fs
+    );
+  }
+
+  private FileStatus toFileStatus(KfsFileAttr fa, Path path) {
     return new FileStatus(
       fa.isDirectory ? 0L : fa.filesize,
       fa.isDirectory,
@@ -151,7 +354,7 @@ class QFSImpl implements IFSImpl {
       fa.isDirectory ? 0 : BLOCK_SIZE,
       fa.modificationTime,
       ACCESS_TIME,
-      FsPermission.createImmutable((short)fa.mode),
+      QFSFileStatus.getPermission(fa.mode),
       fa.ownerName,
       fa.groupName,
       path
@@ -159,30 +362,44 @@ class QFSImpl implements IFSImpl {
   }
 
   public KfsFileAttr fullStat(Path path) throws IOException {
-    final KfsFileAttr fa  = new KfsFileAttr();
-    final String      pn  = path.toUri().getPath();
-    kfsAccess.kfs_retToIOException(kfsAccess.kfs_stat(pn, fa), pn);
-    return fa;
+    final KfsFileAttr fa = statAttr(path.toUri().getPath());
+    return attrCache == null ? fa : QFSAttrCache.copy(fa);
   }
 
+  // The caches are invalidated after the mutation, in order to discard the
+  // entries that concurrent lookups might add while the mutation is in
+  // flight.
   public int mkdirs(String path, int mode) throws IOException {
-    return kfsAccess.kfs_mkdirs(path, mode);
+    try {
+      return access().kfs_mkdirs(path, mode);
+    } finally {
+      invalidateAncestors(path);
+    }
   }
 
   public int mkdir(String path, int mode) throws IOException {
-    return kfsAccess.kfs_mkdir(path, mode);
+    try {
+      return access().kfs_mkdir(path, mode);
+    } finally {
+      invalidate(path);
+    }
   }
 
   public int rename2(String source, String dest, boolean overwrite)
       throws IOException {
-    return kfsAccess.kfs_rename(source, dest, overwrite);
+    try {
+      return access().kfs_rename(source, dest, overwrite);
+    } finally {
+      invalidateTree(source);
+      invalidateTree(dest);
+    }
   }
 
   public int rename(String source, String dest) throws IOException {
     // QFS rename does not have mv semantics.
     // To move /a/b under /c/, you must ask for "rename /a/b /c/b"
     String renameTarget;
-    if (kfsAccess.kfs_isDirectory(dest)) {
+    if (access().kfs_isDirectory(dest)) {
       String sourceBasename = (new File(source)).getName();
       if (dest.endsWith("/")) {
           renameTarget = dest + sourceBasename;
@@ -192,46 +409,95 @@ class QFSImpl implements IFSImpl {
     } else {
       renameTarget = dest;
     }
-    return kfsAccess.kfs_rename(source, renameTarget);
+    try {
+      return access().kfs_rename(source, renameTarget);
+    } finally {
+      invalidateTree(source);
+      invalidateTree(renameTarget);
+    }
   }
 
   public int rmdir(String path) throws IOException {
-    return kfsAccess.kfs_rmdir(path);
+    try {
+      return access().kfs_rmdir(path);
+    } finally {
+      invalidateTree(path);
+    }
   }
 
   public int rmdirs(String path) throws IOException {
-    return kfsAccess.kfs_rmdirs(path);
+    try {
+      return access().kfs_rmdirs(path);
+    } finally {
+      invalidateTree(path);
+    }
   }
 
   public int remove(String path) throws IOException {
-    return kfsAccess.kfs_remove(path);
+    try {
+      return access().kfs_remove(path);
+    } finally {
+      invalidate(path);
+    }
+  }
+
+  public int[] mkdirs(String[] paths, int mode) throws IOException {
+    try {
+      return access().kfs_mkdirsBatch(paths, mode);
+    } finally {
+      for (String path : paths) {
+        invalidateAncestors(path);
+      }
+    }
+  }
+
+  public int[] rename(String[] sources, String[] dests, boolean overwrite)
+      throws IOException {
+    try {
+      return access().kfs_renameBatch(sources, dests, overwrite);
+    } finally {
+      invalidateTree(sources);
+      invalidateTree(dests);
+    }
+  }
+
+  public int[] remove(String[] paths) throws IOException {
+    try {
+      return access().kfs_removeBatch(paths);
+    } finally {
+      invalidateTree(paths);
+    }
   }
 
   public long filesize(String path) throws IOException {
-    return kfsAccess.kfs_filesize(path);
+    return access().kfs_filesize(path);
   }
 
   public short getReplication(String path) throws IOException {
-    return kfsAccess.kfs_getReplication(path);
+    return access().kfs_getReplication(path);
   }
 
   public short setReplication(String path, short replication)
     throws IOException {
-    return kfsAccess.kfs_setReplication(path, replication);
+    try {
+      return access().kfs_setReplication(path, replication);
+    } finally {
+      invalidate(path);
+    }
   }
 
   public String[][] getDataLocation(String path, long start, long len)
     throws IOException {
-    return kfsAccess.kfs_getDataLocation(path, start, len);
+    return access().kfs_getDataLocation(path, start, len);
   }
 
   public String[][] getBlocksLocation(String path, long start, long len)
     throws IOException {
-    return kfsAccess.kfs_getBlocksLocation(path, start, len);
+    return access().kfs_getBlocksLocation(path, start, len);
   }
 
   public long getModificationTime(String path) throws IOException {
-    return kfsAccess.kfs_getModificationTime(path);
+    return access().kfs_getModificationTime(path);
   }
 
   public FSDataOutputStream create(String path, short replication,
@@ -244,8 +510,43 @@ class QFSImpl implements IFSImpl {
   public FSDataOutputStream create(String path, short replication,
         int bufferSize, boolean overwrite, int mode,
         boolean append) throws IOException {
-    return new FSDataOutputStream(createQFSOutputStream(
-      kfsAccess, path, replication, overwrite, append, mode), statistics);
+    try {
+      return newFSDataOutputStream(path, createQFSOutputStream(
+        access(), path, replication, overwrite, append, mode));
+    } finally {
+      invalidate(path);
+    }
+  }
+
+  private FSDataOutputStream newFSDataOutputStream(final String path,
+    QFSOutputStream out) throws IOException {
+    if (WRITE_BEHIND_DEPTH > 0) {
+      try {
+        out.setWriteBehindDepth(WRITE_BEHIND_DEPTH);
+      } catch (IOException ex) {
+        out.close();
+        throw ex;
+      }
+    }
+    return toFSDataOutputStream(path, out);
+  }
+
+  private FSDataOutputStream toFSDataOutputStream(final String path,
+    QFSOutputStream out) throws IOException {
+    if (attrCache == null) {
+      return new FSDataOutputStream(out, statistics);
+    }
+    // File size and modification time change with the writes, invalidate
+    // the cached attributes once more on close.
+    return new FSDataOutputStream(out, statistics) {
+      public void close() throws IOException {
+        try {
+          super.close();
+        } finally {
+          invalidate(path);
+        }
+      }
+    };
   }
 
   public FSDataOutputStream create(String path, boolean overwrite,
@@ -253,14 +554,27 @@ class QFSImpl implements IFSImpl {
     if(createParams == null || createParams.length() == 0) {
         createParams = CREATE_PARAMS;
     }
-    return new FSDataOutputStream(createQFSOutputStream(kfsAccess, path,
-            overwrite, createParams), statistics);
+    try {
+      return newFSDataOutputStream(path, createQFSOutputStream(access(), path,
+              overwrite, createParams));
+    } finally {
+      invalidate(path);
+    }
   }
 
   public FSDataInputStream open(String path, int bufferSize)
     throws IOException {
-      return new FSDataInputStream(createQFSInputStream(kfsAccess, path,
-                                                      statistics));
+      final QFSInputStream in = createQFSInputStream(access(), path,
+                                                     statistics);
+      if (PREFETCH_DEPTH > 0) {
+        try {
+          in.setPrefetchDepth(PREFETCH_DEPTH);
+        } catch (IOException ex) {
+          in.close();
+          throw ex;
+        }
+      }
+      return new FSDataInputStream(in);
   }
 
   public FSDataOutputStream append(String path, short replication,
@@ -268,28 +582,53 @@ class QFSImpl implements IFSImpl {
     final boolean append    = true;
     final boolean overwrite = false;
     final int     mode      = 0666;
-    return new FSDataOutputStream(createQFSOutputStream(
-      kfsAccess, path, replication, overwrite, append, mode), statistics);
+    try {
+      return toFSDataOutputStream(path, createQFSOutputStream(
+        access(), path, replication, overwrite, append, mode));
+    } finally {
+      invalidate(path);
+    }
   }
 
   public void setPermission(String path, int mode) throws IOException {
-    kfsAccess.kfs_retToIOException(kfsAccess.kfs_chmod(path, mode), path);
+    try {
+      kfsAccess.kfs_retToIOException(access().kfs_chmod(path, mode), path);
+    } finally {
+      invalidate(path);
+    }
   }
 
   public void setOwner(String path, String username, String groupname)
     throws IOException {
-    kfsAccess.kfs_retToIOException(kfsAccess.kfs_chown(
-      path, username, groupname), path);
+    try {
+      kfsAccess.kfs_retToIOException(access().kfs_chown(
+        path, username, groupname), path);
+    } finally {
+      invalidate(path);
+    }
+  }
+
+  public Map<String, Long> getAttrCacheStats() {
+    final Map<String, Long> ret = attrCache == null ?
+      new TreeMap<String, Long>() : attrCache.getStats();
+    if (negativeCache != null) {
+      ret.putAll(negativeCache.getStats());
+    }
+    return ret;
   }
 
   public int getUMask()
     throws IOException {
-    return kfsAccess.kfs_getUMask();
+    return access().kfs_getUMask();
   }
 
   public void setUMask(int mask)
     throws IOException {
-    kfsAccess.kfs_setUMask(mask);
+    if (accessPool == null) {
+      kfsAccess.kfs_setUMask(mask);
+    } else {
+      accessPool.kfs_setUMask(mask);
+    }
   }
 
   public void retToIoException(int ret)
@@ -318,6 +657,77 @@ class QFSImpl implements IFSImpl {
     return new KfsFileStatusIterator(fs, path);
   }
 
+  public CloseableIterator<FileStatus> getFileStatusTreeIterator(
+      FileSystem fs, Path path) throws IOException {
+    return new KfsFileStatusTreeIterator(fs, path);
+  }
+
+  // Iterator returning each entry of the directory tree as a FileStatus.
+  // The directories are listed in parallel by the tree walker threads.
+  public class KfsFileStatusTreeIterator
+      implements CloseableIterator<FileStatus> {
+    final Path path;
+    final FileSystem fileSystem;
+    KfsTreeWalker.Walk walk;
+    FileStatus current;
+
+    public KfsFileStatusTreeIterator(FileSystem fs, Path p) throws IOException {
+      fileSystem = fs;
+      path = p;
+      walk = treeWalker.walk(path.toUri().getPath());
+      getNext();
+    }
+
+    public boolean hasNext() {
+      return current != null;
+    }
+
+    public FileStatus next() {
+      if (current == null) {
+        throw new NoSuchElementException();
+      }
+      final FileStatus oldCurrent = current;
+      getNext();
+      return oldCurrent;
+    }
+
+    public void remove() {
+      close();
+      throw new UnsupportedOperationException("Not implemented");
+    }
+
+    // Stops the walk, and closes the open directories. May be called
+    // multiple times.
+    public void close() {
+      if (walk != null) {
+        walk.close();
+        walk = null;
+      }
+      current = null;
+    }
+
+    private void getNext() {
+      current = null;
+      if (walk == null) {
+        return;
+      }
+      try {
+        final KfsFileAttr fa = walk.next();
+        if (fa != null) {
+          current = toFileStatus(fa,
+            new Path(fa.filename).makeQualified(fileSystem));
+        }
+      }
+      catch(IOException e) {
+        close();
+        throw new RuntimeException("Error while iterating " + path, e);
+      }
+      if (current == null) {
+        close();
+      }
+    }
+  }
+
   // Iterator returning each directory entry as a FileStatus
   public class KfsFileStatusIterator implements CloseableIterator<FileStatus> {
     final Path path;
@@ -338,7 +748,7 @@ class QFSImpl implements IFSImpl {
       if (!status.isDir()) {
         throw new IOException(path + " is not a directory");
       }
-      itr = kfsAccess.new DirectoryIterator(path.toUri().getPath());
+      itr = access().new DirectoryIterator(path.toUri().getPath(), true);
       getNext();
     }
 
@@ -357,7 +767,9 @@ class QFSImpl implements IFSImpl {
       throw new UnsupportedOperationException("Not implemented");
     }
 
-    // Called to release resources. May be called multiple times.
+    // Called to release resources. May be called multiple times. If the
+    // iterator is abandoned, the directory file is closed once the iterator
+    // channel is reclaimed by the qfs-access cleaner.
     public void close() {
       if (itr != null) {
         try {
@@ -378,21 +790,10 @@ class QFSImpl implements IFSImpl {
       }
       try {
         while (itr.next()) {
-          if (itr.filename.compareTo(".") == 0 ||
-              itr.filename.compareTo("..") == 0) {
+          if (itr.isDotOrDotDot()) {
             continue;
           }
-          current = new FileStatus(
-              itr.isDirectory ? 0L : itr.filesize,
-              itr.isDirectory,
-              itr.isDirectory ? 1 : itr.replication,
-              itr.isDirectory ? 0 : BLOCK_SIZE,
-              itr.modificationTime,
-              ACCESS_TIME,
-              FsPermission.createImmutable((short)itr.mode),
-              itr.ownerName,
-              itr.groupName,
-              new Path(prefix + itr.filename).makeQualified(fileSystem));
+          current = toFileStatus(itr, prefix, fileSystem);
           break;
         }
       }
@@ -404,10 +805,5 @@ class QFSImpl implements IFSImpl {
         close();
       }
     }
-
-    // Make sure close is eventually called.
-    protected void finalize() throws Throwable {
-      close();
-    }
   }
 }
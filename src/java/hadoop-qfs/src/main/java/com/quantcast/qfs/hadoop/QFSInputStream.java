@@ -20,6 +20,7 @@ package com.quantcast.qfs.hadoop;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.util.List;
 
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.FSInputStream;
@@ -66,23 +67,37 @@ class QFSInputStream extends FSInputStream {
     return false;
   }
 
+  // Single byte and array reads are served from the channel buffer, without
+  // per call allocation.
   public synchronized int read() throws IOException {
-    byte b[] = new byte[1];
-    int res = read(b, 0, 1);
-    if (res == 1) {
-      if (statistics != null) {
-        statistics.incrementBytesRead(1);
-      }
-      return ((int) (b[0] & 0xff));
+    final int res = kfsChannel.read();
+    if (res >= 0 && statistics != null) {
+      statistics.incrementBytesRead(1);
     }
-    return -1;
+    return res;
   }
 
   public synchronized int read(byte b[], int off, int len) throws IOException {
-    final int res = kfsChannel.read(ByteBuffer.wrap(b, off, len));
-    // Use -1 to signify EOF
-    if (res == 0) {
-        return -1;
+    final int res = kfsChannel.read(b, off, len);
+    if (res <= 0) {
+      return res;
+    }
+    if (statistics != null) {
+      statistics.incrementBytesRead(res);
+    }
+    return res;
+  }
+
+  // Reads into direct buffer go directly into the buffer's memory, without
+  // intermediate copy. Hadoop 2 ByteBufferReadable implementation in
+  // QFSInputStream2 uses this method.
+  public synchronized int read(ByteBuffer buf) throws IOException {
+    if (! buf.hasRemaining()) {
+      return 0;
+    }
+    final int res = kfsChannel.read(buf);
+    if (res <= 0) {
+      return -1;
     }
     if (statistics != null) {
       statistics.incrementBytesRead(res);
@@ -90,6 +105,28 @@ class QFSInputStream extends FSInputStream {
     return res;
   }
 
+  // Positional read does not move the stream position, and is intentionally
+  // not synchronized in order to allow concurrent positional readers.
+  public int read(long position, byte[] buffer, int offset, int length)
+    throws IOException {
+    if (length == 0) {
+      return 0;
+    }
+    final int res = kfsChannel.read(position,
+        ByteBuffer.wrap(buffer, offset, length));
+    if (res > 0 && statistics != null) {
+      statistics.incrementBytesRead(res);
+    }
+    return res;
+  }
+
+  // Vectored read: ranges are coalesced, split, and read in parallel, see
+  // KfsInputChannel.readVectored(). The stream position is not affected.
+  public void readVectored(List<? extends KfsInputChannel.ReadRange> ranges,
+      KfsInputChannel.BufferAllocator allocator) throws IOException {
+    kfsChannel.readVectored(ranges, allocator);
+  }
+
   public synchronized void close() throws IOException {
     kfsChannel.close();
   }
@@ -109,4 +146,8 @@ class QFSInputStream extends FSInputStream {
   public void setReadAheadSize(long readAheadSize) {
     kfsChannel.setReadAheadSize(readAheadSize);
   }
+
+  public void setPrefetchDepth(int depth) throws IOException {
+    kfsChannel.setPrefetchDepth(depth);
+  }
 }
@@ -0,0 +1,51 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * Bounded size, short lived cache of the paths that were found not to exist.
+ *
+ * The entries are invalidated when the same file system instance creates the
+ * path, any of its ancestors, or any path under it. Paths created by other
+ * clients become visible once the entry expires.
+ */
+
+package com.quantcast.qfs.hadoop;
+
+class QFSNegativeCache extends QFSTtlCache<Boolean> {
+  QFSNegativeCache(int maxSize, long ttlMs) {
+    super("NegativeCache", maxSize, ttlMs);
+  }
+
+  // Returns true if the path was recently found not to exist.
+  boolean contains(String path) {
+    return get(path) != null;
+  }
+
+  void put(String path) {
+    put(path, Boolean.TRUE);
+  }
+
+  // Adds the path, unless the cache was invalidated since the lookup
+  // generation, see QFSTtlCache.
+  void put(String path, long lookupGeneration) {
+    put(path, Boolean.TRUE, lookupGeneration);
+  }
+
+  // Invalidate the path, its ancestors, as creating the path might create
+  // the parent directories, and everything under the path, as rename
+  // can create the whole sub tree.
+  void invalidate(String path) {
+    removeAncestors(path);
+    removeDescendants(path);
+  }
+}
@@ -21,7 +21,6 @@ package com.quantcast.qfs.hadoop;
 import java.io.*;
 import java.net.*;
 import java.util.*;
-import java.nio.ByteBuffer;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
@@ -64,14 +63,14 @@ class QFSOutputStream extends OutputStream {
     return kfsChannel.tell();
   }
 
+  // Single byte and array writes are copied into the channel buffer, without
+  // per call allocation.
   public void write(int v) throws IOException {
-    byte[] b = new byte[1];
-    b[0] = (byte) v;
-    write(b, 0, 1);
+    kfsChannel.write(v);
   }
 
   public void write(byte b[], int off, int len) throws IOException {
-    kfsChannel.write(ByteBuffer.wrap(b, off, len));
+    kfsChannel.write(b, off, len);
   }
 
   public void flush() throws IOException {
@@ -86,4 +85,8 @@ class QFSOutputStream extends OutputStream {
   public void setIoBufferSize(long bufferSize) {
     kfsChannel.setIoBufferSize(bufferSize);
   }
+
+  public void setWriteBehindDepth(int depth) throws IOException {
+    kfsChannel.setWriteBehindDepth(depth);
+  }
 }
@@ -0,0 +1,179 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * Bounded size path keyed cache with time to live and LRU eviction, shared
+ * by the attribute and the negative lookup caches.
+ *
+ * The keys are also kept sorted, in order to find the entries under a
+ * directory without scanning the whole cache.
+ *
+ * The generation is incremented by every invalidation, including the
+ * invalidation of the paths that are not in the cache. The lookups obtain
+ * the generation before querying the meta server, and pass it to put(),
+ * which discards the result if an invalidation happened in between, as the
+ * result might predate the mutation.
+ */
+
+package com.quantcast.qfs.hadoop;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+class QFSTtlCache<V> {
+  private static final class Entry<V> {
+    final V    value;
+    final long expires;
+
+    Entry(V value, long expires) {
+      this.value   = value;
+      this.expires = expires;
+    }
+  }
+
+  private final String                          name;
+  private final int                             maxSize;
+  private final long                            ttlMs;
+  private final LinkedHashMap<String, Entry<V>> entries;
+  private final TreeSet<String>                 keys = new TreeSet<String>();
+  private long generation    = 0;
+  private long hits          = 0;
+  private long misses        = 0;
+  private long expired       = 0;
+  private long evictions     = 0;
+  private long invalidations = 0;
+  private long discarded     = 0;
+
+  QFSTtlCache(String name, int maxSize, long ttlMs) {
+    this.name    = name;
+    this.maxSize = maxSize;
+    this.ttlMs   = ttlMs;
+    this.entries = new LinkedHashMap<String, Entry<V>>(
+        Math.min(maxSize, 1 << 10), 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+      protected boolean removeEldestEntry(Map.Entry<String, Entry<V>> eldest) {
+        if (size() <= QFSTtlCache.this.maxSize) {
+          return false;
+        }
+        keys.remove(eldest.getKey());
+        evictions++;
+        return true;
+      }
+    };
+  }
+
+  static String parent(String path) {
+    final int pos = path.lastIndexOf('/');
+    return pos <= 0 ? (path.length() > 1 ? "/" : null) :
+      path.substring(0, pos);
+  }
+
+  synchronized long getGeneration() {
+    return generation;
+  }
+
+  // Returns the cached value, or null.
+  synchronized V get(String path) {
+    final Entry<V> entry = entries.get(path);
+    if (entry == null) {
+      misses++;
+      return null;
+    }
+    if (entry.expires <= System.currentTimeMillis()) {
+      entries.remove(path);
+      keys.remove(path);
+      expired++;
+      misses++;
+      return null;
+    }
+    hits++;
+    return entry.value;
+  }
+
+  synchronized void put(String path, V value) {
+    put(path, value, generation);
+  }
+
+  // Adds the value obtained by the lookup that started at the generation,
+  // unless the cache was invalidated since then.
+  synchronized void put(String path, V value, long lookupGeneration) {
+    if (lookupGeneration != generation) {
+      discarded++;
+      return;
+    }
+    if (entries.put(path,
+        new Entry<V>(value, System.currentTimeMillis() + ttlMs)) == null) {
+      keys.add(path);
+    }
+  }
+
+  synchronized void remove(String path) {
+    generation++;
+    if (entries.remove(path) != null) {
+      keys.remove(path);
+      invalidations++;
+    }
+  }
+
+  // Remove the path and all its ancestors.
+  synchronized void removeAncestors(String path) {
+    generation++;
+    for (String cur = path; cur != null && ! entries.isEmpty();
+        cur = parent(cur)) {
+      remove(cur);
+    }
+  }
+
+  // Remove everything under the path, but not the path itself.
+  synchronized void removeDescendants(String path) {
+    generation++;
+    if (entries.isEmpty()) {
+      return;
+    }
+    final String prefix = path.endsWith("/") ? path : path + "/";
+    final Iterator<String> it = keys.tailSet(prefix).iterator();
+    while (it.hasNext()) {
+      final String key = it.next();
+      if (! key.startsWith(prefix)) {
+        break;
+      }
+      it.remove();
+      entries.remove(key);
+      invalidations++;
+    }
+  }
+
+  synchronized void clear() {
+    generation++;
+    invalidations += entries.size();
+    entries.clear();
+    keys.clear();
+  }
+
+  synchronized Map<String, Long> getStats() {
+    final Map<String, Long> ret = new TreeMap<String, Long>();
+    ret.put(name + ".Size",          Long.valueOf(entries.size()));
+    ret.put(name + ".MaxSize",       Long.valueOf(maxSize));
+    ret.put(name + ".TtlMs",         Long.valueOf(ttlMs));
+    ret.put(name + ".Hits",          Long.valueOf(hits));
+    ret.put(name + ".Misses",        Long.valueOf(misses));
+    ret.put(name + ".Expired",       Long.valueOf(expired));
+    ret.put(name + ".Evictions",     Long.valueOf(evictions));
+    ret.put(name + ".Invalidations", Long.valueOf(invalidations));
+    ret.put(name + ".Discarded",     Long.valueOf(discarded));
+    return ret;
+  }
+}
@@ -26,6 +26,11 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
 import java.lang.Math;
 
 import org.apache.hadoop.conf.Configuration;
@@ -37,6 +42,7 @@ import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.FileUtil;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.security.token.Token;
 import org.apache.hadoop.util.Progressable;
@@ -137,6 +143,12 @@ public class QuantcastFileSystem extends FileSystem {
     return qfsImpl.isFile(srep);
   }
 
+  // Avoid the default implementation that turns "no such file" into
+  // FileNotFoundException and catches it.
+  public boolean exists(Path path) throws IOException {
+    return qfsImpl.exists(makeAbsolute(path).toUri().getPath());
+  }
+
   // Internal implementation of listStatus. Will throw FileNotFounException
   // if path does not exist
   public FileStatus[] listStatusInternal(Path path) throws IOException {
@@ -156,6 +168,136 @@ public class QuantcastFileSystem extends FileSystem {
     }
   }
 
+  public FileStatus[] globStatus(Path pathPattern) throws IOException {
+    return globStatus(pathPattern, ACCEPT_ALL);
+  }
+
+  // Expands the glob one path component at a time. The literal components
+  // are appended without listing, and the directories are listed only at
+  // the components with wildcards, matching the entry names while iterating
+  // the directory. Only the matching directories are kept for the next
+  // component, therefore each level costs a single pass over the directories
+  // matched by the previous level. The patterns with alternatives that span
+  // path components are handled by the generic implementation.
+  public FileStatus[] globStatus(Path pathPattern, PathFilter filter)
+      throws IOException {
+    final Path   absolute = makeAbsolute(pathPattern).makeQualified(uri, null);
+    final String pattern  = absolute.toUri().getPath();
+    if (hasSeparatorInAlternatives(pattern)) {
+      return super.globStatus(pathPattern, filter);
+    }
+    final String[] components = pattern.split("/+");
+    List<Path>     dirs       = new ArrayList<Path>();
+    dirs.add(new Path("/").makeQualified(uri, null));
+    final List<FileStatus> results = new ArrayList<FileStatus>();
+    boolean sawWildcard = false;
+    int     last        = components.length - 1;
+    while (0 <= last && components[last].length() <= 0) {
+      last--;
+    }
+    if (last < 0) {
+      try {
+        results.add(getFileStatus(dirs.get(0)));
+      } catch (FileNotFoundException e) {
+        // Fall through.
+      }
+    }
+    for (int i = 0; i <= last && ! dirs.isEmpty(); i++) {
+      if (components[i].length() <= 0) {
+        continue;
+      }
+      final boolean        isLast  = i == last;
+      final QFSGlobMatcher matcher = new QFSGlobMatcher(components[i]);
+      final List<Path>     next    = new ArrayList<Path>();
+      if (! matcher.hasWildcard()) {
+        final String name = unescapeGlob(components[i]);
+        for (Path dir : dirs) {
+          final Path child = new Path(dir, name);
+          if (! isLast) {
+            next.add(child);
+            continue;
+          }
+          try {
+            results.add(qfsImpl.stat(child));
+          } catch (FileNotFoundException e) {
+            // Fall through.
+          }
+        }
+      } else {
+        sawWildcard = true;
+        for (Path dir : dirs) {
+          final FileStatus[] entries;
+          try {
+            entries = qfsImpl.readdirplus(dir, matcher, ! isLast);
+          } catch (FileNotFoundException e) {
+            continue;
+          }
+          for (FileStatus entry : entries) {
+            if (isLast) {
+              results.add(entry);
+            } else {
+              // Avoid creating the entry path, if possible.
+              next.add(new Path(dir, entry instanceof QFSFileStatus ?
+                ((QFSFileStatus)entry).getName() : entry.getPath().getName()));
+            }
+          }
+        }
+      }
+      dirs = next;
+    }
+    final List<FileStatus> accepted = new ArrayList<FileStatus>();
+    for (FileStatus status : results) {
+      if (filter.accept(status.getPath())) {
+        accepted.add(status);
+      }
+    }
+    if (accepted.isEmpty() && ! sawWildcard) {
+      return null;
+    }
+    final FileStatus[] ret = accepted.toArray(new FileStatus[0]);
+    Arrays.sort(ret);
+    return ret;
+  }
+
+  private static final PathFilter ACCEPT_ALL = new PathFilter() {
+    public boolean accept(Path path) {
+      return true;
+    }
+  };
+
+  private static boolean hasSeparatorInAlternatives(String pattern) {
+    int depth = 0;
+    for (int i = 0; i < pattern.length(); i++) {
+      final char c = pattern.charAt(i);
+      if (c == '\\') {
+        i++;
+      } else if (c == '{') {
+        depth++;
+      } else if (c == '}' && 0 < depth) {
+        depth--;
+      } else if (c == '/' && 0 < depth) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String unescapeGlob(String component) {
+    if (component.indexOf('\\') < 0) {
+      return component;
+    }
+    final StringBuilder ret = new StringBuilder(component.length());
+    for (int i = 0; i < component.length(); i++) {
+      final char c = component.charAt(i);
+      if (c == '\\' && i + 1 < component.length()) {
+        ret.append(component.charAt(++i));
+      } else {
+        ret.append(c);
+      }
+    }
+    return ret.toString();
+  }
+
   public FileStatus getFileStatus(Path path) throws IOException {
     return qfsImpl.stat(makeAbsolute(path).makeQualified(uri, null));
   }
@@ -212,6 +354,90 @@ public class QuantcastFileSystem extends FileSystem {
     return qfsImpl.rename(srepS, srepD) == 0;
   }
 
+  // Move all files of the src directory tree into the dst directory tree,
+  // creating the missing directories, and replacing the existing files, then
+  // remove the src directories. Intended for output committers: the tree is
+  // listed in parallel with the tree walker, and the directory creation and
+  // the file renames are issued as batches, with many requests in flight,
+  // instead of one meta server round trip per file. Returns false if dst is
+  // src or is inside src.
+  // The move is not atomic. If a directory cannot be created no file is
+  // moved. If some renames fail, the other files are already moved, the
+  // files that failed stay in src, and src is not removed; the false return
+  // means that the tree might be partially moved, and the call can be
+  // repeated to move the remaining files. The src directories are removed
+  // deepest first, and only if empty, therefore the files created in src
+  // after it was listed are kept, and false is returned.
+  public boolean renameTree(Path src, Path dst) throws IOException {
+    final Path   absoluteS = makeAbsolute(src).makeQualified(uri, null);
+    final String srepS     = absoluteS.toUri().getPath();
+    final String srepD     = makeAbsolute(dst).toUri().getPath();
+    if (srepD.equals(srepS) ||
+        srepD.startsWith(srepS.endsWith("/") ? srepS : srepS + "/")) {
+      return false;
+    }
+    if (! qfsImpl.stat(absoluteS).isDir()) {
+      return qfsImpl.rename2(srepS, srepD, true) == 0;
+    }
+    final ArrayList<String> dirs       = new ArrayList<String>();
+    final ArrayList<String> sourceDirs = new ArrayList<String>();
+    final ArrayList<String> sources    = new ArrayList<String>();
+    final ArrayList<String> dests      = new ArrayList<String>();
+    final int               prefixLen  = srepS.length();
+    dirs.add(srepD);
+    final CloseableIterator<FileStatus> it =
+      qfsImpl.getFileStatusTreeIterator(this, absoluteS);
+    try {
+      while (it.hasNext()) {
+        final FileStatus entry  = it.next();
+        final String     name   = entry.getPath().toUri().getPath();
+        final String     target = srepD + name.substring(prefixLen);
+        if (entry.isDir()) {
+          dirs.add(target);
+          sourceDirs.add(name);
+        } else {
+          sources.add(name);
+          dests.add(target);
+        }
+      }
+    } catch (RuntimeException ex) {
+      if (ex.getCause() instanceof IOException) {
+        throw (IOException)ex.getCause();
+      }
+      throw ex;
+    } finally {
+      it.close();
+    }
+    final int[] dirStatus = qfsImpl.mkdirs(
+      dirs.toArray(new String[dirs.size()]), 0777);
+    for (int status : dirStatus) {
+      if (status != 0) {
+        return false;
+      }
+    }
+    final int[] fileStatus = qfsImpl.rename(
+      sources.toArray(new String[sources.size()]),
+      dests.toArray(new String[dests.size()]), true);
+    for (int status : fileStatus) {
+      if (status != 0) {
+        return false;
+      }
+    }
+    // A sub directory path is longer than its parent's path.
+    Collections.sort(sourceDirs, new Comparator<String>() {
+      public int compare(String a, String b) {
+        return b.length() - a.length();
+      }
+    });
+    sourceDirs.add(srepS);
+    for (String dir : sourceDirs) {
+      if (qfsImpl.rmdir(dir) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   // recursively delete the directory and its contents
   public boolean delete(Path path, boolean recursive) throws IOException {
     final Path absolute = makeAbsolute(path);
@@ -379,6 +605,13 @@ public class QuantcastFileSystem extends FileSystem {
     return qfsImpl.getFileStatusIterator(this, path);
   }
 
+  // Returns the attribute and negative lookup cache counters: hits, misses,
+  // evictions, etc. The caches are enabled by setting fs.qfs.attrCache.size
+  // and fs.qfs.negativeCache.size to a positive value.
+  public Map<String, Long> getAttrCacheStats() {
+    return qfsImpl.getAttrCacheStats();
+  }
+
   // The following is to get du and dus working without implementing file
   // and directory counts on in the meta server.
   private class ContentSummaryProxy extends ContentSummary
@@ -394,7 +627,7 @@ public class QuantcastFileSystem extends FileSystem {
     private ContentSummary get() {
       if (cs == null) {
         try {
-          cs = getContentSummarySuper(path);
+          cs = computeContentSummary(path);
         } catch (IOException ex) {
           cs = this;
         }
@@ -419,8 +652,33 @@ public class QuantcastFileSystem extends FileSystem {
     }
   }
 
-  private ContentSummary getContentSummarySuper(Path path) throws IOException {
-    return super.getContentSummary(path);
+  // Sums up the directory tree, listing the directories in parallel, instead
+  // of the default serial recursive listStatus() walk.
+  private ContentSummary computeContentSummary(Path path) throws IOException {
+    final CloseableIterator<FileStatus> it = qfsImpl.getFileStatusTreeIterator(
+      this, makeAbsolute(path).makeQualified(uri, null));
+    long length    = 0;
+    long fileCount = 0;
+    long dirCount  = 1;
+    try {
+      while (it.hasNext()) {
+        final FileStatus status = it.next();
+        if (status.isDir()) {
+          dirCount++;
+        } else {
+          fileCount++;
+          length += status.getLen();
+        }
+      }
+    } catch (RuntimeException ex) {
+      if (ex.getCause() instanceof IOException) {
+        throw (IOException)ex.getCause();
+      }
+      throw ex;
+    } finally {
+      it.close();
+    }
+    return new ContentSummary(length, fileCount, dirCount);
   }
 
   public ContentSummary getContentSummary(Path path) throws IOException {
@@ -431,7 +689,7 @@ public class QuantcastFileSystem extends FileSystem {
     if (stat.isDirectory) {
       final long len = stat.filesize;
       if (len < 0) {
-        return getContentSummarySuper(absolute);
+        return computeContentSummary(absolute);
       }
       if (stat.dirCount < 0) {
         return new ContentSummaryProxy(absolute, len);
@@ -20,6 +20,12 @@
 package com.quantcast.qfs.hadoop;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataInputStream;
@@ -36,6 +42,8 @@ import com.quantcast.qfs.access.KfsFileAttr;
 public class QFSEmulationImpl implements IFSImpl {
   FileSystem localFS;
   int umask;
+  // Number of directory iterators not closed yet.
+  int openIterators;
 
   public QFSEmulationImpl(Configuration conf) throws IOException {
     localFS = FileSystem.getLocal(conf);
@@ -73,6 +81,22 @@ public class QFSEmulationImpl implements IFSImpl {
     return localFS.listStatus(new Path(path.toUri().getPath()));
   }
 
+  public FileStatus[] readdirplus(Path path, QFSGlobMatcher matcher,
+      boolean dirsOnly) throws IOException {
+    // Listing a file fails with ENOTDIR, same as not found.
+    if (! stat(path).isDir()) {
+      throw new FileNotFoundException(path + ": not a directory");
+    }
+    final ArrayList<FileStatus> ret = new ArrayList<FileStatus>();
+    for (FileStatus status : readdirplus(path)) {
+      if ((! dirsOnly || status.isDir()) &&
+          matcher.matches(status.getPath().getName())) {
+        ret.add(status);
+      }
+    }
+    return ret.toArray(new FileStatus[0]);
+  }
+
   public FileStatus stat(Path path) throws IOException {
     return localFS.getFileStatus(new Path(path.toUri().getPath()));
   }
@@ -135,6 +159,32 @@ public class QFSEmulationImpl implements IFSImpl {
     return -1;
   }
 
+  public int[] mkdirs(String[] paths, int mode) throws IOException {
+    final int[] status = new int[paths.length];
+    for (int i = 0; i < paths.length; i++) {
+      status[i] = mkdirs(paths[i], mode);
+    }
+    return status;
+  }
+
+  public int[] rename(String[] sources, String[] dests, boolean overwrite)
+      throws IOException {
+    final int[] status = new int[sources.length];
+    for (int i = 0; i < sources.length; i++) {
+      status[i] = (overwrite || ! exists(dests[i])) ?
+        rename2(sources[i], dests[i], overwrite) : -1;
+    }
+    return status;
+  }
+
+  public int[] remove(String[] paths) throws IOException {
+    final int[] status = new int[paths.length];
+    for (int i = 0; i < paths.length; i++) {
+      status[i] = remove(paths[i]);
+    }
+    return status;
+  }
+
   public int rmdirs(String path) throws IOException {
     if (isFile(path)) {
       return -1;
@@ -174,16 +224,16 @@ public class QFSEmulationImpl implements IFSImpl {
     throws IOException {
     final BlockLocation[] blkLocations = localFS.getFileBlockLocations(
       localFS.getFileStatus(new Path(path)), start, len);
+    // The first entry is the block size, followed by the block hosts.
     if ((blkLocations == null) || (blkLocations.length == 0)) {
-      return new String[0][];
+      return new String[][] { new String[] { Long.toHexString(1L) } };
     }
     final int blkCount = blkLocations.length + 1;
     final String[][]hints = new String[blkCount][];
     hints[0]    = new String[1];
-    hints[0][0] =  Long.toHexString(
-      blkCount <= 0 ? 1L : blkLocations[0].getLength());
+    hints[0][0] =  Long.toHexString(Math.max(1L, blkLocations[0].getLength()));
     for (int i=1; i < blkCount ; i++) {
-      hints[i] = blkLocations[i].getHosts();;
+      hints[i] = blkLocations[i - 1].getHosts();
     }
     return hints;
   }
@@ -248,7 +298,59 @@ public class QFSEmulationImpl implements IFSImpl {
 
   public CloseableIterator<FileStatus> getFileStatusIterator(FileSystem fs, Path path)
     throws IOException {
-    return null;
+    return iterator(fs, readdirplus(path));
+  }
+
+  // The returned paths are qualified with the file system, as with QFSImpl.
+  private CloseableIterator<FileStatus> iterator(FileSystem fs,
+      FileStatus[] entries) {
+    for (int i = 0; i < entries.length; i++) {
+      final FileStatus s = entries[i];
+      entries[i] = new FileStatus(s.getLen(), s.isDir(), s.getReplication(),
+        s.getBlockSize(), s.getModificationTime(), s.getAccessTime(),
+        s.getPermission(), s.getOwner(), s.getGroup(),
+        new Path(s.getPath().toUri().getPath()).makeQualified(fs));
+    }
+    final Iterator<FileStatus> it = Arrays.asList(entries).iterator();
+    openIterators++;
+    return new CloseableIterator<FileStatus>() {
+      private boolean closed;
+      public boolean hasNext() {
+        return it.hasNext();
+      }
+      public FileStatus next() {
+        return it.next();
+      }
+      public void remove() {
+        throw new UnsupportedOperationException("Not implemented");
+      }
+      public void close() {
+        if (! closed) {
+          closed = true;
+          openIterators--;
+        }
+      }
+    };
+  }
+
+  private void listTree(Path path, List<FileStatus> ret) throws IOException {
+    for (FileStatus status : localFS.listStatus(path)) {
+      ret.add(status);
+      if (status.isDir()) {
+        listTree(status.getPath(), ret);
+      }
+    }
+  }
+
+  public CloseableIterator<FileStatus> getFileStatusTreeIterator(
+      FileSystem fs, Path path) throws IOException {
+    final List<FileStatus> ret = new ArrayList<FileStatus>();
+    listTree(new Path(path.toUri().getPath()), ret);
+    return iterator(fs, ret.toArray(new FileStatus[ret.size()]));
+  }
+
+  public Map<String, Long> getAttrCacheStats() {
+    return new TreeMap<String, Long>();
   }
 
   public void retToIoException(int status)
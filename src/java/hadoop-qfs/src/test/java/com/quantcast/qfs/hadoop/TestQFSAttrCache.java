@@ -0,0 +1,60 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * Unit tests for the attribute cache.
+ */
+
+package com.quantcast.qfs.hadoop;
+
+import junit.framework.TestCase;
+
+import com.quantcast.qfs.access.KfsFileAttr;
+
+public class TestQFSAttrCache extends TestCase {
+
+  private static KfsFileAttr attr(long fileId) {
+    final KfsFileAttr fa = new KfsFileAttr();
+    fa.fileId = fileId;
+    return fa;
+  }
+
+  // @Test
+  public void testInvalidation() throws Exception {
+    final QFSAttrCache cache = new QFSAttrCache(10, 60000);
+    cache.put("/d",       attr(1));
+    cache.put("/d/f",     attr(2));
+    cache.put("/d/s",     attr(3));
+    cache.put("/d/s/f",   attr(4));
+    cache.put("/d/sf",    attr(5));
+    cache.put("/e",       attr(6));
+    cache.invalidate("/d/f");
+    assertNull(cache.get("/d/f"));
+    assertNull(cache.get("/d")); // Parent.
+    assertNotNull(cache.get("/d/s"));
+    cache.invalidateTree("/d/s");
+    assertNull(cache.get("/d/s"));
+    assertNull(cache.get("/d/s/f"));
+    assertNotNull(cache.get("/d/sf"));
+    assertNotNull(cache.get("/e"));
+    // Mkdirs invalidates all ancestors.
+    cache.put("/d",       attr(1));
+    cache.put("/d/s",     attr(3));
+    cache.invalidateAncestors("/d/s/n/m");
+    assertNull(cache.get("/d/s"));
+    assertNull(cache.get("/d"));
+    assertNotNull(cache.get("/d/sf"));
+    cache.clear();
+    assertNull(cache.get("/e"));
+  }
+}
@@ -0,0 +1,67 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * Unit tests for the directory entry status.
+ */
+
+package com.quantcast.qfs.hadoop;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+
+public class TestQFSFileStatus extends TestCase {
+
+  // @Test
+  public void testLazyPath() throws Exception {
+    final QFSFileStatus status = new QFSFileStatus(10, false, 3, 1 << 26,
+      1000, 0, 0644, "user", "group", "qfs://host:20000/dir/", "a:b", null);
+    assertEquals("a:b", status.getName());
+    final Path path = status.getPath();
+    assertEquals(new Path("qfs://host:20000/dir/a:b"), path);
+    assertSame(path, status.getPath());
+    assertEquals(new FileStatus(10, false, 3, 1 << 26, 1000, 0,
+      FsPermission.createImmutable((short)0644), "user", "group", path),
+      status);
+    assertEquals(10, status.getLen());
+    assertEquals("user", status.getOwner());
+    // Serialization must not depend on the lazily created path.
+    status.write(new DataOutputStream(new ByteArrayOutputStream()));
+  }
+
+  // @Test
+  public void testSetPath() throws Exception {
+    final QFSFileStatus status = new QFSFileStatus(0, true, 1, 0, 0, 0,
+      0755, "user", "group", "qfs://host:20000/dir/", "sub", null);
+    status.setPath(new Path("dir/sub"));
+    assertEquals(new Path("dir/sub"), status.getPath());
+    status.setPath(new Path("/other"));
+    assertEquals(new Path("/other"), status.getPath());
+    assertEquals("sub", status.getName());
+  }
+
+  // @Test
+  public void testSharedPermission() throws Exception {
+    assertSame(QFSFileStatus.getPermission(0755),
+      QFSFileStatus.getPermission(0755));
+    assertEquals((short)0640,
+      new QFSFileStatus(0, true, 1, 0, 0, 0, 0640, "u", "g", "/", "d", null)
+        .getPermission().toShort());
+  }
+}
@@ -0,0 +1,88 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * Unit tests for the glob literal prefix and suffix extraction.
+ */
+
+package com.quantcast.qfs.hadoop;
+
+import junit.framework.TestCase;
+
+public class TestQFSGlobMatcher extends TestCase {
+
+  private static final String[] NAMES = new String[] {
+    "", "a", "ab", "abc", "a.txt", "ab.txt", "a*.txt", "atxt", "a\\", "ab\\",
+    "a\\b", "a*b", "a*bc", "ac", "bc", "[ab]c", "part-0", "part-", "xay",
+    "xby", "xy", "éaü", "éü"
+  };
+
+  private static String utf8(byte[] bytes) throws Exception {
+    return new String(bytes, "UTF-8");
+  }
+
+  // Checks the prefix and suffix, and that every name matching the glob
+  // has both, as names without either are rejected without matching.
+  private static void check(String glob, String prefix, String suffix)
+      throws Exception {
+    final QFSGlobMatcher matcher = new QFSGlobMatcher(glob);
+    assertEquals(glob, prefix, utf8(matcher.getPrefix()));
+    assertEquals(glob, suffix, utf8(matcher.getSuffix()));
+    for (String name : NAMES) {
+      if (matcher.matches(name)) {
+        assertTrue(glob + " " + name, name.startsWith(prefix));
+        assertTrue(glob + " " + name, name.endsWith(suffix));
+      }
+    }
+  }
+
+  // @Test
+  public void testLiteral() throws Exception {
+    assertFalse(new QFSGlobMatcher("abc").hasWildcard());
+    check("abc", "abc", "");
+    check("part-*", "part-", "");
+    check("*.txt", "", ".txt");
+    check("a*c", "a", "c");
+    check("x{a,b}y", "x", "y");
+    check("é*ü", "é", "ü");
+    assertEquals(2, new QFSGlobMatcher("é*").getPrefix().length);
+  }
+
+  // @Test
+  // The escaped special characters, and the characters following the
+  // escape are not part of the prefix or suffix, the characters following
+  // the escaped backslash are.
+  public void testEscape() throws Exception {
+    check("a*\\.txt", "a", "txt");
+    assertTrue(new QFSGlobMatcher("a*\\.txt").matches("ab.txt"));
+    assertFalse(new QFSGlobMatcher("a*\\.txt").matches("atxt"));
+    check("a\\*b*", "a", "");
+    assertTrue(new QFSGlobMatcher("a\\*b*").matches("a*bc"));
+    check("a*\\\\", "a", "");
+    assertTrue(new QFSGlobMatcher("a*\\\\").matches("ab\\"));
+    check("a*\\\\b", "a", "b");
+    assertTrue(new QFSGlobMatcher("a*\\\\b").matches("a\\b"));
+    check("a*\\\\\\b", "a", "");
+    check("\\[ab]*", "", "");
+  }
+
+  // @Test
+  public void testLeadingBracket() throws Exception {
+    check("[ab]c", "", "c");
+    assertTrue(new QFSGlobMatcher("[ab]c").matches("ac"));
+    assertTrue(new QFSGlobMatcher("[ab]c").matches("bc"));
+    check("[ab]*", "", "");
+    check("?b*", "", "");
+    check("{ab,x}*c", "", "c");
+  }
+}
@@ -0,0 +1,52 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * Unit tests for the negative lookup cache.
+ */
+
+package com.quantcast.qfs.hadoop;
+
+import junit.framework.TestCase;
+
+public class TestQFSNegativeCache extends TestCase {
+
+  // @Test
+  public void testInvalidation() throws Exception {
+    final QFSNegativeCache cache = new QFSNegativeCache(10, 60000);
+    cache.put("/d");
+    cache.put("/d/s");
+    cache.put("/d/s/f");
+    cache.put("/d/sf");
+    cache.put("/e");
+    // Creating /d/s creates /d, and rename into /d/s can create /d/s/f.
+    cache.invalidate("/d/s");
+    assertFalse(cache.contains("/d"));
+    assertFalse(cache.contains("/d/s"));
+    assertFalse(cache.contains("/d/s/f"));
+    assertTrue(cache.contains("/d/sf"));
+    assertTrue(cache.contains("/e"));
+  }
+
+  // @Test
+  public void testLookupRace() throws Exception {
+    final QFSNegativeCache cache = new QFSNegativeCache(10, 60000);
+    // The lookup started before the path was created must not add it.
+    final long gen = cache.getGeneration();
+    cache.invalidate("/d/f");
+    cache.put("/d/f", gen);
+    assertFalse(cache.contains("/d/f"));
+    cache.put("/d/f", cache.getGeneration());
+    assertTrue(cache.contains("/d/f"));
+  }
+}
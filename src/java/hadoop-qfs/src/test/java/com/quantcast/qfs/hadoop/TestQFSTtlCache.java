@@ -0,0 +1,80 @@
+/**
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * Unit tests for the time to live and LRU cache shared by the attribute and
+ * negative lookup caches.
+ */
+
+package com.quantcast.qfs.hadoop;
+
+import junit.framework.TestCase;
+
+public class TestQFSTtlCache extends TestCase {
+
+  // @Test
+  public void testLruEviction() throws Exception {
+    final QFSTtlCache<Integer> cache = new QFSTtlCache<Integer>("C", 2, 60000);
+    cache.put("/a", Integer.valueOf(1));
+    cache.put("/b", Integer.valueOf(2));
+    assertEquals(Integer.valueOf(1), cache.get("/a"));
+    cache.put("/c", Integer.valueOf(3));
+    assertNull(cache.get("/b"));
+    assertEquals(Integer.valueOf(1), cache.get("/a"));
+    assertEquals(Integer.valueOf(3), cache.get("/c"));
+    assertEquals(Long.valueOf(1), cache.getStats().get("C.Evictions"));
+    assertEquals(Long.valueOf(3), cache.getStats().get("C.Hits"));
+    assertEquals(Long.valueOf(1), cache.getStats().get("C.Misses"));
+  }
+
+  // @Test
+  public void testExpiration() throws Exception {
+    final QFSTtlCache<Integer> cache = new QFSTtlCache<Integer>("C", 10, 0);
+    cache.put("/a", Integer.valueOf(1));
+    assertNull(cache.get("/a"));
+    assertEquals(Long.valueOf(1), cache.getStats().get("C.Expired"));
+    assertEquals(Long.valueOf(0), cache.getStats().get("C.Size"));
+  }
+
+  // @Test
+  public void testGeneration() throws Exception {
+    final QFSTtlCache<Integer> cache = new QFSTtlCache<Integer>("C", 10, 60000);
+    final long gen = cache.getGeneration();
+    // Invalidation of the path that is not in the cache still discards the
+    // lookup results obtained before it.
+    cache.remove("/x");
+    cache.put("/a", Integer.valueOf(1), gen);
+    assertNull(cache.get("/a"));
+    assertEquals(Long.valueOf(1), cache.getStats().get("C.Discarded"));
+    cache.put("/a", Integer.valueOf(2), cache.getGeneration());
+    assertEquals(Integer.valueOf(2), cache.get("/a"));
+  }
+
+  // @Test
+  public void testRemoveTree() throws Exception {
+    final QFSTtlCache<Integer> cache = new QFSTtlCache<Integer>("C", 2, 60000);
+    cache.put("/d/a", Integer.valueOf(1));
+    cache.put("/d/b", Integer.valueOf(2));
+    cache.put("/d/c", Integer.valueOf(3)); // Evicts /d/a.
+    cache.put("/dd",  Integer.valueOf(4)); // Evicts /d/b.
+    cache.removeDescendants("/d");
+    assertEquals(Long.valueOf(1), cache.getStats().get("C.Size"));
+    assertEquals(Long.valueOf(1), cache.getStats().get("C.Invalidations"));
+    assertEquals(Integer.valueOf(4), cache.get("/dd"));
+    cache.put("/d/a", Integer.valueOf(5));
+    assertEquals(Integer.valueOf(5), cache.get("/d/a"));
+    cache.removeAncestors("/d/a/b");
+    assertNull(cache.get("/d/a"));
+    assertEquals(Integer.valueOf(4), cache.get("/dd"));
+  }
+}
@@ -31,6 +31,7 @@ import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileUtil;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
 
 import com.quantcast.qfs.hadoop.QuantcastFileSystem;
 
@@ -121,6 +122,92 @@ public class TestQuantcastFileSystem extends TestCase {
     assertFalse(quantcastFileSystem.exists(baseDir));
   }
 
+  // @Test
+  // Check moving task output directory tree
+  public void testRenameTree() throws Exception {
+    Path src = new Path(baseDir, "src");
+    Path dst = new Path(baseDir, "dst");
+    Path[] files = new Path[] {
+      new Path("foo.1"), new Path("dir.1/foo.2"), new Path("dir.1/dir.2/foo.3")
+    };
+
+    quantcastFileSystem.mkdirs(new Path(dst, "dir.1"));
+    quantcastFileSystem.create(new Path(dst, files[1]), true, 4096,
+      (short) 1, (long) 4096, null).close();
+    quantcastFileSystem.create(new Path(dst, "foo.4"), true, 4096,
+      (short) 1, (long) 4096, null).close();
+    for (Path file : files) {
+      FSDataOutputStream s = quantcastFileSystem.create(new Path(src, file),
+        true, 4096, (short) 1, (long) 4096, null);
+      s.writeUTF(file.toString());
+      s.close();
+    }
+
+    // Moving the tree into itself must be rejected, and leave it in place.
+    assertFalse(quantcastFileSystem.renameTree(src, new Path(src, "dir.1")));
+    assertFalse(quantcastFileSystem.renameTree(src, src));
+    for (Path file : files) {
+      assertTrue(quantcastFileSystem.exists(new Path(src, file)));
+    }
+
+    assertTrue(quantcastFileSystem.renameTree(src, dst));
+    assertFalse(quantcastFileSystem.exists(src));
+    for (Path file : files) {
+      FSDataInputStream s = quantcastFileSystem.open(new Path(dst, file));
+      assertEquals(file.toString(), s.readUTF());
+      s.close();
+    }
+    assertTrue(quantcastFileSystem.exists(new Path(dst, "foo.4")));
+
+    quantcastFileSystem.delete(baseDir, true);
+    assertFalse(quantcastFileSystem.exists(baseDir));
+  }
+
+  // @Test
+  // Check glob expansion, one directory level per path component
+  public void testGlobStatus() throws Exception {
+    Path logs = new Path(baseDir, "logs");
+    String[] files = new String[] {
+      "2026/01/01/part-0", "2026/01/01/part-1", "2026/01/02/part-0",
+      "2026/01/02/_SUCCESS", "2026/02/01/part-0", "2025/12/31/part-0"
+    };
+    for (String file : files) {
+      quantcastFileSystem.create(new Path(logs, file), true, 4096,
+        (short) 1, (long) 4096, null).close();
+    }
+
+    FileStatus[] p = quantcastFileSystem.globStatus(
+      new Path(logs, "2026/*/*/part-*"));
+    assertEquals(4, p.length);
+    for (FileStatus s : p) {
+      assertTrue(s.getPath().getName().startsWith("part-"));
+    }
+    p = quantcastFileSystem.globStatus(new Path(logs, "*/01/0[2-9]/*"));
+    assertEquals(2, p.length);
+    p = quantcastFileSystem.globStatus(new Path(logs, "202{5,6}/*"));
+    assertEquals(3, p.length);
+    p = quantcastFileSystem.globStatus(new Path(logs, "2026/01/01/part-?"),
+      new PathFilter() {
+        public boolean accept(Path path) {
+          return path.getName().endsWith("1");
+        }
+      });
+    assertEquals(1, p.length);
+    assertEquals("part-1", p[0].getPath().getName());
+    p = quantcastFileSystem.globStatus(new Path(logs, "2026/01"));
+    assertEquals(1, p.length);
+    assertTrue(p[0].isDir());
+    // No match: empty array for a glob, null for a plain path.
+    assertEquals(0, quantcastFileSystem.globStatus(
+      new Path(logs, "2027/*")).length);
+    assertEquals(0, quantcastFileSystem.globStatus(
+      new Path(logs, "2026/01/01/part-0/*")).length);
+    assertNull(quantcastFileSystem.globStatus(new Path(logs, "2027/01")));
+
+    quantcastFileSystem.delete(baseDir, true);
+    assertFalse(quantcastFileSystem.exists(baseDir));
+  }
+
   // @Test
   // Check file/read write
   public void testFileIO() throws Exception {
@@ -21,38 +21,365 @@
  * permissions and limitations under the License.
  *
  * \brief Java buffer pool for KFS client.
+ *
+ * Direct buffers are pooled in power of two size classes. Each thread keeps
+ * a small per size class cache ("magazine") of the released buffers, backed
+ * by the shared per size class free lists. The number of bytes allocated by
+ * the pool can be bounded: once the limit is reached, the free buffers of
+ * the other size classes are discarded, then allocation waits for a release
+ * up to the configured time, and then allocates a buffer that exceeds the
+ * limit. The excess buffers are discarded on release. The magazines that
+ * were not used for the entire trim interval are moved to the shared free
+ * lists, and the buffers that remain unused in the shared free lists for the
+ * entire trim interval are discarded, in order to return memory after the
+ * load spikes.
+ *
+ * Only the buffers obtained from the pool can be released into the pool.
  */
 
 package com.quantcast.qfs.access;
 
 import java.nio.ByteBuffer;
-import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public final class BufferPool {
 	public static final int BUFFER_SIZE = Integer.getInteger("qfs.access.buffer.size", 1 << 20);
 
-	private final AbstractQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+	private static final int MIN_SHIFT = 12;
 
-	private static final BufferPool INSTANCE = new BufferPool();
+	private static final BufferPool INSTANCE = new BufferPool(
+		Integer.getInteger("qfs.access.buffer.pool.max.buffer.size", 64 << 20),
+		Long.getLong("qfs.access.buffer.pool.capacity", 0),
+		Long.getLong("qfs.access.buffer.pool.wait.ms", 0),
+		Integer.getInteger("qfs.access.buffer.pool.magazine.size", 4),
+		Long.getLong("qfs.access.buffer.pool.trim.interval.ms", 60 * 1000)
+	);
 
-	private BufferPool() {
+	private final int maxShift;
+	private final long capacity;
+	private final long waitMs;
+	private final int magazineSize;
+	private final FreeList[] freeLists;
+	private final ConcurrentLinkedQueue<Magazine> magazines =
+		new ConcurrentLinkedQueue<Magazine>();
+	private final ThreadLocal<Magazine> magazine = new ThreadLocal<Magazine>() {
+		protected Magazine initialValue() {
+			final Magazine ret = new Magazine();
+			magazines.add(ret);
+			return ret;
+		}
 	};
+	private final Object waitLock = new Object();
+	private volatile int waitersCount = 0;
+
+	private final AtomicLong allocatedBytes = new AtomicLong();
+	private final AtomicLong pooledBytes = new AtomicLong();
+	private final AtomicLong allocationCount = new AtomicLong();
+	private final AtomicLong overLimitCount = new AtomicLong();
+	private final AtomicLong waitCount = new AtomicLong();
+	private final AtomicLong discardedBytes = new AtomicLong();
+
+	private static final class FreeList {
+		private final ConcurrentLinkedQueue<ByteBuffer> buffers =
+			new ConcurrentLinkedQueue<ByteBuffer>();
+		private final AtomicInteger count = new AtomicInteger();
+		// Min. free list length since the last trim -- the number of buffers
+		// that were not used during the trim interval.
+		private final AtomicInteger minCount = new AtomicInteger();
+	}
+
+	// The magazine is accessed by its owner thread, and by trim, therefore
+	// the access is synchronized on the magazine. The lock is uncontended,
+	// except while trim runs.
+	private final class Magazine {
+		private final Thread owner = Thread.currentThread();
+		private final ByteBuffer[][] buffers =
+			new ByteBuffer[maxShift - MIN_SHIFT + 1][magazineSize];
+		private final int[] counts = new int[maxShift - MIN_SHIFT + 1];
+		// Set on every access, cleared by trim.
+		private boolean used;
+	}
+
+	BufferPool(int maxBufferSize, long capacity, long waitMs, int magazineSize,
+			long trimIntervalMs) {
+		int shift = MIN_SHIFT;
+		while (shift < 30 && (1 << shift) < maxBufferSize) {
+			shift++;
+		}
+		this.maxShift = shift;
+		this.capacity = capacity;
+		this.waitMs = waitMs;
+		this.magazineSize = Math.max(0, magazineSize);
+		final int cnt = maxShift - MIN_SHIFT + 1;
+		freeLists = new FreeList[cnt];
+		for (int i = 0; i < cnt; i++) {
+			freeLists[i] = new FreeList();
+		}
+		if (trimIntervalMs > 0) {
+			final Timer timer = new Timer("QFS buffer pool trim", true);
+			timer.schedule(new TimerTask() {
+				public void run() {
+					trim();
+				}
+			}, trimIntervalMs, trimIntervalMs);
+		}
+	}
 
 	public static BufferPool getInstance() {
 		return INSTANCE;
 	}
 
 	public ByteBuffer getBuffer() {
-		ByteBuffer ret = buffers.poll();
-		if (ret == null) {
-			ret = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		return getBuffer(BUFFER_SIZE);
+	}
+
+	// Returns cleared direct buffer with capacity equal to the size rounded
+	// up to the power of two, if the size is within the max pooled buffer
+	// size, or to the size otherwise.
+	public ByteBuffer getBuffer(int size) {
+		final int cls = sizeClass(size);
+		if (cls < 0) {
+			allocationCount.incrementAndGet();
+			allocatedBytes.addAndGet(size);
+			return ByteBuffer.allocateDirect(size);
 		}
-		return ret;
+		ByteBuffer ret = get(cls);
+		if (ret != null) {
+			ret.clear();
+			return ret;
+		}
+		final int bufSize = 1 << (cls + MIN_SHIFT);
+		if (capacity > 0 && capacity < allocatedBytes.get() + bufSize) {
+			ret = getOverLimit(cls, bufSize);
+			if (ret != null) {
+				ret.clear();
+				return ret;
+			}
+		}
+		allocationCount.incrementAndGet();
+		allocatedBytes.addAndGet(bufSize);
+		return ByteBuffer.allocateDirect(bufSize);
 	}
 
 	public void releaseBuffer(ByteBuffer b) {
+		final int size = b.capacity();
+		final int cls = sizeClass(size);
+		if (cls < 0 || size != (1 << (cls + MIN_SHIFT)) ||
+				(capacity > 0 && capacity < allocatedBytes.get())) {
+			discard(size);
+			notifyWaiters();
+			return;
+		}
 		b.clear();
-		buffers.add(b);
+		pooledBytes.addAndGet(size);
+		if (waitersCount > 0 || magazineSize <= 0) {
+			// Make the buffer available to the waiting threads.
+			put(cls, b);
+			notifyWaiters();
+			return;
+		}
+		final Magazine mag = magazine.get();
+		synchronized (mag) {
+			mag.used = true;
+			final ByteBuffer[] bufs = mag.buffers[cls];
+			if (mag.counts[cls] < bufs.length) {
+				bufs[mag.counts[cls]++] = b;
+			} else {
+				// Move half of the magazine to the shared free list.
+				final int half = (bufs.length + 1) / 2;
+				for (int i = bufs.length - half; i < bufs.length; i++) {
+					put(cls, bufs[i]);
+					bufs[i] = null;
+				}
+				mag.counts[cls] = bufs.length - half;
+				bufs[mag.counts[cls]++] = b;
+			}
+		}
+		notifyWaiters();
+	}
+
+	private void notifyWaiters() {
+		if (waitersCount > 0) {
+			synchronized (waitLock) {
+				if (waitersCount > 0) {
+					waitLock.notifyAll();
+				}
+			}
+		}
+	}
+
+	// Number of bytes in direct buffers allocated by the pool, that are
+	// either in use or pooled.
+	public long getAllocatedBytes() {
+		return allocatedBytes.get();
+	}
+
+	public long getPooledBytes() {
+		return pooledBytes.get();
+	}
+
+	public long getInUseBytes() {
+		return allocatedBytes.get() - pooledBytes.get();
+	}
+
+	public Map<String, String> getStats() {
+		final Map<String, String> ret = new TreeMap<String, String>();
+		ret.put("BufferPool.AllocatedBytes", Long.toString(getAllocatedBytes()));
+		ret.put("BufferPool.PooledBytes", Long.toString(getPooledBytes()));
+		ret.put("BufferPool.InUseBytes", Long.toString(getInUseBytes()));
+		ret.put("BufferPool.Allocations", Long.toString(allocationCount.get()));
+		ret.put("BufferPool.OverLimitAllocations",
+			Long.toString(overLimitCount.get()));
+		ret.put("BufferPool.Waits", Long.toString(waitCount.get()));
+		ret.put("BufferPool.DiscardedBytes", Long.toString(discardedBytes.get()));
+		ret.put("BufferPool.Capacity", Long.toString(capacity));
+		return ret;
+	}
+
+	// Discard the shared free list buffers that were not used since the last
+	// trim, move the magazines that were not used since the last trim to the
+	// shared free lists, and reclaim the magazines of the threads that have
+	// exited.
+	void trim() {
+		for (int cls = 0; cls < freeLists.length; cls++) {
+			final FreeList list = freeLists[cls];
+			int excess = list.minCount.getAndSet(list.count.get());
+			while (excess-- > 0 && discardFree(cls)) {
+			}
+		}
+		final Iterator<Magazine> it = magazines.iterator();
+		while (it.hasNext()) {
+			final Magazine mag = it.next();
+			final boolean exited = ! mag.owner.isAlive();
+			if (exited) {
+				it.remove();
+			}
+			synchronized (mag) {
+				if (mag.used && ! exited) {
+					mag.used = false;
+					continue;
+				}
+				for (int cls = 0; cls < mag.counts.length; cls++) {
+					for (int i = 0; i < mag.counts[cls]; i++) {
+						put(cls, mag.buffers[cls][i]);
+						mag.buffers[cls][i] = null;
+					}
+					mag.counts[cls] = 0;
+				}
+			}
+		}
+		for (int cls = 0; cls < freeLists.length; cls++) {
+			freeLists[cls].minCount.set(freeLists[cls].count.get());
+		}
+	}
+
+	// Make room by discarding free buffers of the other size classes.
+	private boolean makeRoom(int cls, int bufSize) {
+		for (int i = freeLists.length - 1; i >= 0 &&
+				capacity < allocatedBytes.get() + bufSize; i--) {
+			while (i != cls && capacity < allocatedBytes.get() + bufSize &&
+					discardFree(i)) {
+			}
+		}
+		return allocatedBytes.get() + bufSize <= capacity;
+	}
+
+	private ByteBuffer getOverLimit(int cls, int bufSize) {
+		if (makeRoom(cls, bufSize)) {
+			return null;
+		}
+		if (waitMs > 0) {
+			waitCount.incrementAndGet();
+			final long end = System.currentTimeMillis() + waitMs;
+			synchronized (waitLock) {
+				waitersCount++;
+				try {
+					long rem;
+					while ((rem = end - System.currentTimeMillis()) > 0) {
+						final ByteBuffer ret = get(cls);
+						if (ret != null) {
+							return ret;
+						}
+						if (makeRoom(cls, bufSize)) {
+							return null;
+						}
+						waitLock.wait(rem);
+					}
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				} finally {
+					waitersCount--;
+				}
+			}
+			final ByteBuffer ret = get(cls);
+			if (ret != null) {
+				return ret;
+			}
+		}
+		overLimitCount.incrementAndGet();
+		return null;
+	}
+
+	private ByteBuffer get(int cls) {
+		ByteBuffer ret = null;
+		if (magazineSize > 0) {
+			final Magazine mag = magazine.get();
+			synchronized (mag) {
+				mag.used = true;
+				if (mag.counts[cls] > 0) {
+					final int idx = --mag.counts[cls];
+					ret = mag.buffers[cls][idx];
+					mag.buffers[cls][idx] = null;
+				}
+			}
+		}
+		if (ret == null) {
+			final FreeList list = freeLists[cls];
+			ret = list.buffers.poll();
+			if (ret == null) {
+				return null;
+			}
+			final int cnt = list.count.decrementAndGet();
+			int min;
+			while (cnt < (min = list.minCount.get()) &&
+					! list.minCount.compareAndSet(min, cnt)) {
+			}
+		}
+		pooledBytes.addAndGet(-ret.capacity());
+		return ret;
+	}
+
+	private void put(int cls, ByteBuffer b) {
+		freeLists[cls].buffers.add(b);
+		freeLists[cls].count.incrementAndGet();
+	}
+
+	private boolean discardFree(int cls) {
+		final ByteBuffer b = freeLists[cls].buffers.poll();
+		if (b == null) {
+			return false;
+		}
+		freeLists[cls].count.decrementAndGet();
+		pooledBytes.addAndGet(-b.capacity());
+		discard(b.capacity());
+		return true;
+	}
+
+	private void discard(int size) {
+		allocatedBytes.addAndGet(-size);
+		discardedBytes.addAndGet(size);
+	}
+
+	private int sizeClass(int size) {
+		final int shift = size <= 1 ? 0 :
+			32 - Integer.numberOfLeadingZeros(size - 1);
+		return shift <= maxShift ? Math.max(0, shift - MIN_SHIFT) : -1;
 	}
 }
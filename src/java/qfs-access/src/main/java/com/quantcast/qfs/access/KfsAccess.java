@@ -29,6 +29,7 @@ package com.quantcast.qfs.access;
 import java.io.IOException;
 import java.io.FileNotFoundException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
@@ -38,6 +39,13 @@ import java.util.Properties;
 import java.util.ArrayList;
 import java.util.TreeMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 final public class KfsAccess
 {
@@ -49,6 +57,37 @@ final public class KfsAccess
     public final int DEFAULT_STRIPER_TYPE         =
         KfsFileAttr.STRIPED_FILE_TYPE_RS;
 
+    // Max number of paths stat-ed with one JNI call.
+    private final static int STAT_BATCH_SIZE = Math.max(1, Integer.getInteger(
+        "qfs.access.stat.batch.size", 1024));
+    // Max number of the batch mutations in flight on the meta server
+    // connection.
+    private final static int META_BATCH_DEPTH = Math.max(1, Integer.getInteger(
+        "qfs.access.meta.batch.depth", 128));
+    // Number of threads that read the next directory listing buffer while
+    // the current one is decoded by the DirectoryIterator caller. Zero turns
+    // the directory read ahead off.
+    private final static int DIR_PREFETCH_THREADS = Math.max(0,
+        Integer.getInteger("qfs.access.dir.prefetch.threads", 2));
+    private static ThreadPoolExecutor dirPrefetchExecutor = null;
+    // The directory listing buffer is considered full, and the next one is
+    // read ahead, if less than this is left unused, otherwise the listing
+    // has likely reached the end of the directory.
+    private final static int DIR_PREFETCH_MIN_UNUSED = 1 << 10;
+    // Process wide user and group id to name caches, used only to share the
+    // decoded name strings. The cached name is used only if its encoded bytes
+    // match the name returned by the meta server, therefore the clients of
+    // different meta servers never see each other's names. The name to id
+    // conversion is always done by the client library.
+    private final static int  NAME_CACHE_SIZE   = Math.max(1,
+        Integer.getInteger("qfs.access.name.cache.size", 1 << 10));
+    private final static long NAME_CACHE_TTL_MS = 1000L * Math.max(0,
+        Integer.getInteger("qfs.access.name.cache.ttl.sec", 300));
+    private final static NameCache userNames  =
+        new NameCache(NAME_CACHE_SIZE, NAME_CACHE_TTL_MS);
+    private final static NameCache groupNames =
+        new NameCache(NAME_CACHE_SIZE, NAME_CACHE_TTL_MS);
+
     // the pointer in C++
     private long cPtr;
 
@@ -108,6 +147,17 @@ final public class KfsAccess
     private final static native
     int rename(long ptr, String oldpath, String newpath, boolean overwrite);
 
+    private final static native
+    int mkdirsBatch(long ptr, String[] paths, int mode, int maxPending,
+        int[] status);
+
+    private final static native
+    int removeBatch(long ptr, String[] paths, int maxPending, int[] status);
+
+    private final static native
+    int renameBatch(long ptr, String[] oldpaths, String[] newpaths,
+        boolean overwrite, int maxPending, int[] status);
+
     private final static native
     int open(long ptr, String path, String mode, int numReplicas,
         int numStripes, int numRecoveryStripes, int stripeSize, int stripedType,
@@ -194,6 +244,19 @@ final public class KfsAccess
     private final static native
     int stat(long ptr, String path, KfsFileAttr attr);
 
+    private final static native
+    int statBatch(long ptr, String[] paths, int start, int count,
+        ByteBuffer buf);
+
+    private final static native
+    int statPacked(long ptr, String path, ByteBuffer buf);
+
+    private final static native
+    int statById(long ptr, long fileId, KfsFileAttr attr);
+
+    private final static native
+    int openById(long ptr, long fileId);
+
     private final static native
     String strerror(long ptr, int err);
 
@@ -242,6 +305,7 @@ final public class KfsAccess
         if (cPtr == 0) {
             throw new IOException("Unable to initialize KFS Client");
         }
+        ResourceCleaner.register(this, new Destroy(cPtr), false);
     }
 
     public KfsAccess(String metaServerHost, int metaServerPort) throws IOException
@@ -250,6 +314,7 @@ final public class KfsAccess
         if (cPtr == 0) {
             throw new IOException("Unable to initialize KFS Client");
         }
+        ResourceCleaner.register(this, new Destroy(cPtr), false);
     }
 
     // most calls wrap to a call on the KfsClient.  For return values,
@@ -272,6 +337,19 @@ final public class KfsAccess
         return mkdirs(cPtr, path, mode);
     }
 
+    // The batch methods below issue the requests for all paths, keeping up
+    // to qfs.access.meta.batch.depth requests in flight, and return the
+    // per path status: 0 or -errno, in the order of the paths.
+
+    // make the directory hierarchy for each path
+    public int[] kfs_mkdirsBatch(String[] paths, int mode) throws IOException
+    {
+        final int[] status = new int[paths.length];
+        kfs_retToIOException(mkdirsBatch(
+            cPtr, paths, mode, META_BATCH_DEPTH, status));
+        return status;
+    }
+
     // make the directory hierarchy for path
     public int kfs_mkdir(String path, int mode)
     {
@@ -300,7 +378,10 @@ final public class KfsAccess
         return readdir(cPtr, path, prefetchAttr);
     }
 
-    final public class DirectoryIterator
+    // Decoder of the packed file attributes produced by readdir plus and by
+    // the batched stat. The owner and group names are omitted by the encoder
+    // if these are the same as in the preceding record.
+    public static abstract class PackedFileAttr
     {
         public long    modificationTime;
         public long    attrChangeTime;
@@ -325,49 +406,308 @@ final public class KfsAccess
         public long    chunkCount;
         public long    fileId;
 
-        private KfsInputChannel      input;
-        private ByteBuffer           buf;
-        private int                  limit;
         private final CharsetDecoder decoder = Charset.forName("UTF-8")
             .newDecoder()
             .onMalformedInput(CodingErrorAction.REPLACE)
             .onUnmappableCharacter(CodingErrorAction.REPLACE);
         private long prevOwner;
         private long prevGroup;
+        // With lazy names the file name is not decoded by decode(). The name
+        // bytes of the current record are accessed in place, in the buffer
+        // being decoded.
+        private boolean    lazyNames = false;
+        private ByteBuffer nameBuf;
+        private int        namePos;
+        private int        nameLength;
+
+        PackedFileAttr()
+        {
+        }
 
-        public DirectoryIterator(String path) throws IOException
+        PackedFileAttr(boolean lazyNames)
         {
-            final int fd = open(cPtr, path, "opendir", 0, 0, 0, 0, 0, 0);
-            kfs_retToIOException(fd, path);
-            input = null;
-            try {
-                input = new KfsInputChannel(KfsAccess.this, fd);
-            } finally {
-                if (input == null) {
-                    KfsAccess.this.close(cPtr, fd);
+            this.lazyNames = lazyNames;
+        }
+
+        // Returns the file name. With lazy names, the name is decoded on the
+        // first call, and must be requested before moving to the next entry.
+        public String getFilename() throws IOException
+        {
+            if (filename == null && 0 < nameLength) {
+                final int pos   = nameBuf.position();
+                final int limit = nameBuf.limit();
+                nameBuf.position(namePos);
+                filename = readString(nameBuf, nameLength);
+                nameBuf.limit(limit).position(pos);
+            }
+            return filename;
+        }
+
+        // Returns the file name length in bytes, UTF-8 encoded.
+        public int getNameLength()
+        {
+            return nameLength;
+        }
+
+        // Returns the UTF-8 encoded name byte of the current record.
+        public byte getNameByte(int idx)
+        {
+            if (idx < 0 || nameLength <= idx) {
+                throw new IndexOutOfBoundsException("name byte: " + idx);
+            }
+            return nameBuf.get(namePos + idx);
+        }
+
+        // Returns true if the UTF-8 encoded name ends with the suffix.
+        public boolean nameEndsWith(byte[] suffix)
+        {
+            if (nameLength < suffix.length) {
+                return false;
+            }
+            final int start = nameLength - suffix.length;
+            for (int i = 0; i < suffix.length; i++) {
+                if (getNameByte(start + i) != suffix[i]) {
+                    return false;
                 }
             }
+            return true;
         }
 
-        private String readString(int len) throws IOException
+        // Returns true if the name is "." or "..".
+        public boolean isDotOrDotDot()
+        {
+            return 0 < nameLength && nameLength <= 2 &&
+                getNameByte(0) == '.' &&
+                (nameLength == 1 || getNameByte(1) == '.');
+        }
+
+        public KfsFileAttr toFileAttr() throws IOException
+        {
+            final KfsFileAttr entry = new KfsFileAttr();
+            entry.modificationTime   = modificationTime;
+            entry.attrChangeTime     = attrChangeTime;
+            entry.creationTime       = creationTime;
+            entry.filesize           = filesize;
+            entry.replication        = replication;
+            entry.isDirectory        = isDirectory;
+            entry.filename           = getFilename();
+            entry.numStripes         = numStripes;
+            entry.numRecoveryStripes = numRecoveryStripes;
+            entry.striperType        = striperType;
+            entry.stripeSize         = stripeSize;
+            entry.owner              = owner;
+            entry.group              = group;
+            entry.mode               = mode;
+            entry.ownerName          = ownerName;
+            entry.groupName          = groupName;
+            entry.fileId             = fileId;
+            entry.dirCount           = dirCount;
+            entry.fileCount          = fileCount;
+            entry.chunkCount         = chunkCount;
+            entry.minSTier           = minSTier;
+            entry.maxSTier           = maxSTier;
+            return entry;
+        }
+
+        private String readString(ByteBuffer buf, int len) throws IOException
         {
             if (len <= 0) {
                 return "";
             }
-            final int end = buf.position() + len;
+            final int limit = buf.limit();
+            final int end   = buf.position() + len;
             buf.limit(end);
             final String str = decoder.reset().decode(buf).toString();
             buf.position(end).limit(limit);
             return str;
         }
 
-        private void skip(int len) throws IOException
+        // Returns the shared name string instance from the cache, if the
+        // name bytes match, otherwise decodes the name and adds it to the
+        // cache.
+        private String readName(NameCache cache, long id, ByteBuffer buf,
+                int len) throws IOException
+        {
+            if (len <= 0) {
+                return readString(buf, len);
+            }
+            final String cached = cache.get(id, buf, len);
+            if (cached != null) {
+                skip(buf, len);
+                return cached;
+            }
+            final byte[] utf8 = new byte[len];
+            buf.duplicate().get(utf8);
+            final String name = readString(buf, len);
+            cache.put(id, name, utf8);
+            return name;
+        }
+
+        private static void skip(ByteBuffer buf, int len)
         {
             if (len > 0) {
                 buf.position(buf.position() + len);
             }
         }
 
+        // Decodes the record at the buffer position. Returns false if the
+        // record has empty file name.
+        boolean decode(ByteBuffer buf) throws IOException
+        {
+            modificationTime   = buf.getLong();
+            attrChangeTime     = buf.getLong();
+            creationTime       = buf.getLong();
+            filesize           = buf.getLong();
+            replication        = buf.getInt();
+            final int nameLen  = buf.getInt();
+            isDirectory        = buf.get() != 0;
+            numStripes         = buf.getInt();
+            numRecoveryStripes = buf.getInt();
+            striperType        = buf.getInt();
+            stripeSize         = buf.getInt();
+            owner              = buf.getInt();
+            group              = buf.getInt();
+            mode               = buf.getShort();
+            fileId             = buf.getLong();
+            fileCount          = isDirectory ? buf.getLong() : 0;
+            dirCount           = isDirectory ? buf.getLong() : 0;
+            chunkCount         = isDirectory ? 0 : buf.getLong();
+            minSTier           = buf.get();
+            maxSTier           = buf.get();
+            final int onameLen = buf.getInt();
+            final int gnameLen = buf.getInt();
+            owner &= 0xFFFFFFFFL;
+            group &= 0xFFFFFFFFL;
+            mode  &= 0xFFFF;
+            nameLength = Math.max(0, nameLen);
+            nameBuf    = buf;
+            namePos    = buf.position();
+            if (lazyNames) {
+                filename = null;
+                skip(buf, nameLen);
+            } else {
+                filename = readString(buf, nameLen);
+            }
+            if (owner == prevOwner && ownerName != null) {
+                skip(buf, onameLen);
+            } else {
+                prevOwner = owner;
+                ownerName = readName(userNames, owner, buf, onameLen);
+            }
+            if (group == prevGroup && groupName != null) {
+                skip(buf, gnameLen);
+            } else {
+                prevGroup = group;
+                groupName = readName(groupNames, group, buf, gnameLen);
+            }
+            return nameLen > 0;
+        }
+    }
+
+    private static synchronized ThreadPoolExecutor getDirPrefetchExecutor()
+    {
+        if (dirPrefetchExecutor == null) {
+            dirPrefetchExecutor = new ThreadPoolExecutor(
+                DIR_PREFETCH_THREADS, DIR_PREFETCH_THREADS,
+                60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        final Thread t = new Thread(r, "QFS readdir prefetch");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+            dirPrefetchExecutor.allowCoreThreadTimeOut(true);
+        }
+        return dirPrefetchExecutor;
+    }
+
+    // The directory read ahead task, must not reference the iterator.
+    private static final class DirPrefetch implements Callable<ByteBuffer>
+    {
+        private final KfsInputChannel channel;
+        private final ByteBuffer      dst;
+
+        DirPrefetch(KfsInputChannel channel, ByteBuffer dst)
+        {
+            this.channel = channel;
+            this.dst     = dst;
+        }
+
+        public ByteBuffer call() throws IOException
+        {
+            return channel.readNext(dst);
+        }
+    }
+
+    // Returns the directory iterator read ahead buffer to the pool, once the
+    // read in flight, if any, completes. Run by close(), or by the resource
+    // cleaner if the iterator is abandoned, must not reference the iterator.
+    private static final class DirBufferRelease implements Runnable
+    {
+        private final    ByteBuffer         owned;
+        private volatile Future<ByteBuffer> pending = null;
+
+        DirBufferRelease(ByteBuffer owned)
+        {
+            this.owned = owned;
+        }
+
+        public void run()
+        {
+            final Future<ByteBuffer> prefetch = pending;
+            pending = null;
+            if (prefetch != null && ! prefetch.cancel(false)) {
+                try {
+                    prefetch.get();
+                } catch (Exception ignored) {
+                }
+            }
+            BufferPool.getInstance().releaseBuffer(owned);
+        }
+    }
+
+    // With directory read ahead on, the iterator owns one extra pooled buffer,
+    // and the next buffer is read in the background, while the current one is
+    // decoded. The two buffers are swapped after each read. The read ahead
+    // starts only after a read that filled the buffer, therefore the small
+    // directories are listed without the extra buffer and the task.
+    final public class DirectoryIterator extends PackedFileAttr
+    {
+        private KfsInputChannel           input;
+        private ByteBuffer                buf;
+        private ByteBuffer                spare;
+        private ByteBuffer                owned;
+        private ByteBuffer                prefetchBuf;
+        private Future<ByteBuffer>        pending;
+        private DirBufferRelease          release;
+        private ResourceCleaner.Cleanable releaseCleanable;
+
+        public DirectoryIterator(String path) throws IOException
+        {
+            this(path, false);
+        }
+
+        // With lazy names the filename field is not set by next(), the name
+        // can be inspected with getNameByte(), nameEndsWith(), etc. without
+        // decoding, and decoded with getFilename() if needed.
+        public DirectoryIterator(String path, boolean lazyNames)
+            throws IOException
+        {
+            super(lazyNames);
+            final int fd = open(cPtr, path, "opendir", 0, 0, 0, 0, 0, 0);
+            kfs_retToIOException(fd, path);
+            input = null;
+            try {
+                input = new KfsInputChannel(KfsAccess.this, fd);
+            } finally {
+                if (input == null) {
+                    KfsAccess.this.close(cPtr, fd);
+                }
+            }
+        }
+
         public boolean next() throws IOException
         {
             for (; ;) {
@@ -375,72 +715,198 @@ final public class KfsAccess
                     if (input == null) {
                         return false;
                     }
-                    buf = input.readNext();
-                    limit = buf == null ? 0 : buf.limit();
-                    if (limit <= 0) {
+                    buf = readNext();
+                    if (buf == null || buf.limit() <= 0) {
                         close();
                         return false;
                     }
+                    if (buf.capacity() - buf.limit() <
+                            DIR_PREFETCH_MIN_UNUSED) {
+                        startPrefetch();
+                    }
                 }
-                modificationTime   = buf.getLong();
-                attrChangeTime     = buf.getLong();
-                creationTime       = buf.getLong();
-                filesize           = buf.getLong();
-                replication        = buf.getInt();
-                final int nameLen  = buf.getInt();
-                isDirectory        = buf.get() != 0;
-                numStripes         = buf.getInt();
-                numRecoveryStripes = buf.getInt();
-                striperType        = buf.getInt();
-                stripeSize         = buf.getInt();
-                owner              = buf.getInt();
-                group              = buf.getInt();
-                mode               = buf.getShort();
-                fileId             = buf.getLong();
-                fileCount          = isDirectory ? buf.getLong() : 0;
-                dirCount           = isDirectory ? buf.getLong() : 0;
-                chunkCount         = isDirectory ? 0 : buf.getLong();
-                minSTier           = buf.get();
-                maxSTier           = buf.get();
-                final int onameLen = buf.getInt();
-                final int gnameLen = buf.getInt();
-                owner &= 0xFFFFFFFFL;
-                group &= 0xFFFFFFFFL;
-                mode  &= 0xFFFF;
-                filename  = readString(nameLen);
-                if (owner == prevOwner && ownerName != null) {
-                    skip(onameLen);
-                } else {
-                    prevOwner = owner;
-                    ownerName = readString(onameLen);
-                }
-                if (group == prevGroup && groupName != null) {
-                    skip(gnameLen);
-                } else {
-                    prevGroup = group;
-                    groupName = readString(gnameLen);
-                }
-                if (nameLen > 0) {
+                if (decode(buf)) {
                     break;
                 }
             }
             return true;
         }
 
+        private ByteBuffer readNext() throws IOException
+        {
+            if (pending == null) {
+                return buf == null ? input.readNext() : input.readNext(buf);
+            }
+            final Future<ByteBuffer> prefetch = pending;
+            pending = null;
+            final ByteBuffer         prev     = buf;
+            // Read synchronously if the prefetch has not started yet, as with
+            // all prefetch threads busy waiting might take longer.
+            if (prefetch.cancel(false)) {
+                spare = prefetchBuf;
+                return input.readNext(prev);
+            }
+            spare = prev;
+            try {
+                return prefetch.get();
+            } catch (InterruptedException ex) {
+                throw new IOException("readdir prefetch interrupted");
+            } catch (ExecutionException ex) {
+                final Throwable cause = ex.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException)cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException)cause;
+                }
+                throw (Error)cause;
+            }
+        }
+
+        private void startPrefetch()
+        {
+            if (DIR_PREFETCH_THREADS <= 0) {
+                return;
+            }
+            if (spare == null) {
+                if (owned != null) {
+                    return;
+                }
+                owned            = BufferPool.getInstance().getBuffer();
+                release          = new DirBufferRelease(owned);
+                releaseCleanable =
+                    ResourceCleaner.register(this, release, false);
+                spare = owned;
+            }
+            prefetchBuf = spare;
+            spare       = null;
+            pending     = getDirPrefetchExecutor().submit(
+                new DirPrefetch(input, prefetchBuf));
+            release.pending = pending;
+        }
+
         public void close()
         {
             if (input == null) {
                 return;
             }
             buf = null;
+            if (pending != null) {
+                // Wait for the read in flight, if any, as the buffer and the
+                // channel must not be released while the read is in flight.
+                if (! pending.cancel(false)) {
+                    try {
+                        pending.get();
+                    } catch (Exception ignored) {
+                    }
+                }
+                pending = null;
+            }
+            spare       = null;
+            prefetchBuf = null;
             try {
                 input.close();
             } catch (IOException ignored) {
             }
             input = null;
+            if (owned != null) {
+                release.pending = null;
+                releaseCleanable.clean();
+                owned            = null;
+                release          = null;
+                releaseCleanable = null;
+            }
+        }
+    }
+
+    // Iterates over the batched stat results, in the order of the paths. The
+    // attribute fields are valid only if the status of the entry is 0.
+    final public class StatBatch extends PackedFileAttr
+    {
+        public String path;
+        public int    status;
+
+        private final String[] paths;
+        private int            next;
+        private int            available;
+        private ByteBuffer     buf;
+
+        private StatBatch(String[] paths)
+        {
+            for (int i = 0; i < paths.length; i++) {
+                if (paths[i] == null) {
+                    throw new IllegalArgumentException("null path: " + i);
+                }
+            }
+            this.paths = paths;
+        }
+
+        public boolean next() throws IOException
+        {
+            if (paths.length <= next) {
+                close();
+                return false;
+            }
+            if (available <= 0) {
+                if (buf == null) {
+                    buf = BufferPool.getInstance().getBuffer();
+                }
+                buf.clear();
+                available = statBatch(cPtr, paths, next,
+                    Math.min(paths.length - next, STAT_BATCH_SIZE), buf);
+                kfs_retToIOException(available);
+            }
+            path   = paths[next++];
+            status = buf.getInt();
+            available--;
+            if (status == 0) {
+                decode(buf);
+            } else {
+                filename = null;
+            }
+            return true;
+        }
+
+        // Throws exception corresponding to the current entry status, if the
+        // status is not 0.
+        public void checkStatus() throws IOException
+        {
+            kfs_retToIOException(status, path);
+        }
+
+        public void close()
+        {
+            if (buf != null) {
+                BufferPool.getInstance().releaseBuffer(buf);
+                buf = null;
+            }
+            available = 0;
         }
     }
 
+    // Attributes decoded from the kfs_statPacked() buffer.
+    final public static class PackedStat extends PackedFileAttr
+    {
+        public PackedStat()
+        {
+        }
+
+        // Decodes the record at the buffer position, and advances the
+        // position past the record.
+        public void read(ByteBuffer buf) throws IOException
+        {
+            decode(buf);
+        }
+    }
+
+    // Stat multiple paths with one JNI call per batch. The meta server
+    // lookups within a batch are pipelined. The missing paths are reported
+    // with the entry status, instead of an exception.
+    public StatBatch kfs_statBatch(String[] paths)
+    {
+        return new StatBatch(paths);
+    }
+
     public KfsFileAttr[] kfs_readdirplus(String path)
     {
         DirectoryIterator itr = null;
@@ -448,30 +914,7 @@ final public class KfsAccess
             itr = new DirectoryIterator(path);
             final ArrayList<KfsFileAttr> ret = new ArrayList<KfsFileAttr>();
             while (itr.next()) {
-                KfsFileAttr entry = new KfsFileAttr();
-                entry.modificationTime   = itr.modificationTime;
-                entry.attrChangeTime     = itr.attrChangeTime;
-                entry.creationTime       = itr.creationTime;
-                entry.filesize           = itr.filesize;
-                entry.replication        = itr.replication;
-                entry.isDirectory        = itr.isDirectory;
-                entry.filename           = itr.filename;
-                entry.numStripes         = itr.numStripes;
-                entry.numRecoveryStripes = itr.numRecoveryStripes;
-                entry.striperType        = itr.striperType;
-                entry.stripeSize         = itr.stripeSize;
-                entry.owner              = itr.owner;
-                entry.group              = itr.group;
-                entry.mode               = itr.mode;
-                entry.ownerName          = itr.ownerName;
-                entry.groupName          = itr.groupName;
-                entry.fileId             = itr.fileId;
-                entry.dirCount           = itr.dirCount;
-                entry.fileCount          = itr.fileCount;
-                entry.chunkCount         = itr.chunkCount;
-                entry.minSTier           = itr.minSTier;
-                entry.maxSTier           = itr.maxSTier;
-                ret.add(entry);
+                ret.add(itr.toFileAttr());
             }
             return ret.toArray(new KfsFileAttr[0]);
         } catch (IOException ex) {
@@ -655,6 +1098,21 @@ final public class KfsAccess
     {
         final int fd = kfs_open_ro(path);
         kfs_retToIOException(fd, path);
+        return newInputChannel(fd, bufferSize, readAheadSize);
+    }
+
+    // Open for reading by file id, for example KfsFileAttr.fileId, or
+    // DirectoryIterator.fileId. The meta server resolves the id with a single
+    // request, instead of the path traversal.
+    public KfsInputChannel kfs_open_ex(long fileId, long bufferSize, long readAheadSize) throws IOException
+    {
+        final int fd = openById(cPtr, fileId);
+        kfs_retToIOException(fd, "file id: " + fileId);
+        return newInputChannel(fd, bufferSize, readAheadSize);
+    }
+
+    private KfsInputChannel newInputChannel(int fd, long bufferSize, long readAheadSize) throws IOException
+    {
         if (bufferSize >= 0) {
             setIoBufferSize(cPtr, fd, bufferSize);
         }
@@ -669,6 +1127,9 @@ final public class KfsAccess
                 close(cPtr, fd);
             }
         }
+        if (KfsInputChannel.DEFAULT_PREFETCH_DEPTH > 0) {
+            chan.setPrefetchDepth(KfsInputChannel.DEFAULT_PREFETCH_DEPTH);
+        }
         return chan;
     }
 
@@ -677,6 +1138,14 @@ final public class KfsAccess
         return remove(cPtr, path);
     }
 
+    public int[] kfs_removeBatch(String[] paths) throws IOException
+    {
+        final int[] status = new int[paths.length];
+        kfs_retToIOException(removeBatch(
+            cPtr, paths, META_BATCH_DEPTH, status));
+        return status;
+    }
+
     public int kfs_rename(String oldpath, String newpath)
     {
         return rename(cPtr, oldpath, newpath, true);
@@ -689,11 +1158,33 @@ final public class KfsAccess
         return rename(cPtr, oldpath, newpath, overwrite);
     }
 
+    // rename oldpaths[i] to newpaths[i]
+    public int[] kfs_renameBatch(String[] oldpaths, String[] newpaths,
+            boolean overwrite) throws IOException
+    {
+        if (oldpaths.length != newpaths.length) {
+            throw new IllegalArgumentException(
+                "path arrays length mismatch");
+        }
+        final int[] status = new int[oldpaths.length];
+        kfs_retToIOException(renameBatch(
+            cPtr, oldpaths, newpaths, overwrite, META_BATCH_DEPTH, status));
+        return status;
+    }
+
     public boolean kfs_exists(String path)
     {
         return exists(cPtr, path) == 1;
     }
 
+    // Returns 1 if the path exists, or the negative stat error code. Unlike
+    // kfs_stat() followed by kfs_retToIOException() no error message is
+    // created, use kfs_isNotFound() to tell "no such file" from other errors.
+    public int kfs_existsStatus(String path)
+    {
+        return exists(cPtr, path);
+    }
+
     public boolean kfs_isFile(String path)
     {
         return isFile(cPtr, path) == 1;
@@ -859,9 +1350,61 @@ final public class KfsAccess
         return setEUserAndEGroup(cPtr, user, group, groups);
     }
 
+    // Replace the owner and group names with the shared instances.
+    private static int internNames(int status, KfsFileAttr attr)
+    {
+        if (status == 0) {
+            attr.ownerName = userNames.intern(attr.owner, attr.ownerName);
+            attr.groupName = groupNames.intern(attr.group, attr.groupName);
+        }
+        return status;
+    }
+
     public int kfs_stat(String path, KfsFileAttr attr)
     {
-        return stat(cPtr, path, attr);
+        return internNames(stat(cPtr, path, attr), attr);
+    }
+
+    // Stat by file id, see kfs_open_ex(long, long, long). The file name is set
+    // to the last path component.
+    public int kfs_stat(long fileId, KfsFileAttr attr)
+    {
+        return internNames(statById(cPtr, fileId, attr), attr);
+    }
+
+    // Stat the path, and store the attributes into the caller supplied direct
+    // buffer as a single big endian record, instead of setting the
+    // KfsFileAttr fields one JNI call at a time. On success the buffer
+    // position is set to 0, and the limit to the record end. The record
+    // layout, with the field sizes in bits, is:
+    //   modificationTime:64 attrChangeTime:64 creationTime:64 filesize:64
+    //   replication:32 filenameLength:32 isDirectory:8 numStripes:32
+    //   numRecoveryStripes:32 striperType:32 stripeSize:32 owner:32 group:32
+    //   mode:16 fileId:64
+    //   directory: fileCount:64 dirCount:64, file: chunkCount:64
+    //   minSTier:8 maxSTier:8 ownerNameLength:32 groupNameLength:32
+    //   filename ownerName groupName
+    // The strings are UTF-8, the record can be decoded with PackedStat.read().
+    // Returns the record length, -EOVERFLOW if the buffer is too small, or
+    // -errno.
+    public int kfs_statPacked(String path, ByteBuffer buf)
+    {
+        if (! buf.isDirect()) {
+            throw new IllegalArgumentException("direct buffer required");
+        }
+        final int ret = statPacked(cPtr, path, buf);
+        if (0 <= ret) {
+            buf.order(ByteOrder.BIG_ENDIAN);
+            buf.clear();
+            buf.limit(ret);
+        }
+        return ret;
+    }
+
+    // Returns true if the status is "no such file or directory" error code.
+    public boolean kfs_isNotFound(int ret)
+    {
+        return ret < 0 && isnotfound(cPtr, ret);
     }
 
     public void kfs_retToIOException(int ret) throws IOException
@@ -957,7 +1500,21 @@ final public class KfsAccess
         }
     }
 
+    // Besides the chunk server i/o counters, the native client reports the
+    // client mutex wait and hold times per JNI entry point with
+    // ClientMutex.<entry point>. prefix, and the process wide JNI call counts
+    // and times with JNI.<entry point>. prefix.
     public Map<String, String> kfs_getStats() throws IOException
+    {
+        final Map<String, String> ret = getClientStats();
+        ret.putAll(BufferPool.getInstance().getStats());
+        ret.putAll(ResourceCleaner.getStats());
+        return ret;
+    }
+
+    // Native client counters only, without the process wide Java side
+    // counters.
+    Map<String, String> getClientStats() throws IOException
     {
         final String[] stats = getStats(cPtr);
         if (stats == null) {
@@ -974,21 +1531,21 @@ final public class KfsAccess
         return ret;
     }
 
-    private void kfs_destroy()
+    // Destroys the client once KfsAccess is unreachable. The channels keep
+    // KfsAccess reachable until these are closed or reclaimed, therefore the
+    // client is destroyed after all its files are closed.
+    private final static class Destroy implements Runnable
     {
-        if (cPtr != 0) {
-            final long ptr = cPtr;
-            cPtr = 0;
-            destroy(ptr);
+        private final long ptr;
+
+        Destroy(long ptr)
+        {
+            this.ptr = ptr;
         }
-    }
 
-    protected void finalize() throws Throwable
-    {
-        try {
-            kfs_destroy();
-        } finally {
-            super.finalize();
+        public void run()
+        {
+            destroy(ptr);
         }
     }
 
@@ -0,0 +1,159 @@
+/**
+ * $Id$
+ *
+ * Created 2026/10/17
+ *
+ * Copyright 2026 Quantcast Corporation. All rights reserved.
+ *
+ * This file is part of Quantcast File System
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * \brief Pool of independent native client instances ("shards").
+ *
+ * Most client library calls serialize on the client instance mutex, thus a
+ * single KfsAccess serializes all threads of the process. The pool spreads
+ * the threads across the shards: each thread is assigned a shard round
+ * robin on the first use, and keeps using it, in order to preserve the
+ * per client caches locality. The channels returned by the shard methods
+ * remain bound to the shard that opened the file, therefore the file can be
+ * used from any thread.
+ *
+ * The per client settings, like umask or default buffer sizes, must be
+ * applied to all shards, see getShard(int).
+ */
+
+package com.quantcast.qfs.access;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+final public class KfsAccessPool
+{
+    private final KfsAccess[]     shards;
+    private final AtomicLong[]    selections;
+    private final AtomicInteger[] threads;
+    private final AtomicInteger   nextShard = new AtomicInteger();
+    private final ThreadLocal<Integer> threadShard =
+        new ThreadLocal<Integer>() {
+            protected Integer initialValue() {
+                final int idx = (nextShard.getAndIncrement() & 0x7FFFFFFF) %
+                    shards.length;
+                threads[idx].incrementAndGet();
+                return idx;
+            }
+        };
+
+    public KfsAccessPool(String metaServerHost, int metaServerPort,
+            int shardCount) throws IOException
+    {
+        this(null, metaServerHost, metaServerPort, shardCount);
+    }
+
+    // Use the existing instance as the first shard, and create the remaining
+    // shards. Allows to make the calls that must precede all others, like
+    // kfs_setEUserAndEGroup(), before the pool is created.
+    public KfsAccessPool(KfsAccess first, String metaServerHost,
+            int metaServerPort, int shardCount) throws IOException
+    {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("shard count: " + shardCount);
+        }
+        shards     = new KfsAccess[shardCount];
+        selections = new AtomicLong[shardCount];
+        threads    = new AtomicInteger[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = (i == 0 && first != null) ? first :
+                new KfsAccess(metaServerHost, metaServerPort);
+            selections[i] = new AtomicLong();
+            threads[i]    = new AtomicInteger();
+        }
+    }
+
+    public KfsAccessPool(String configFn, int shardCount) throws IOException
+    {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("shard count: " + shardCount);
+        }
+        shards     = new KfsAccess[shardCount];
+        selections = new AtomicLong[shardCount];
+        threads    = new AtomicInteger[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i]     = new KfsAccess(configFn);
+            selections[i] = new AtomicLong();
+            threads[i]    = new AtomicInteger();
+        }
+    }
+
+    // Returns the shard assigned to the calling thread.
+    public KfsAccess getShard()
+    {
+        if (shards.length == 1) {
+            selections[0].incrementAndGet();
+            return shards[0];
+        }
+        final int idx = threadShard.get().intValue();
+        selections[idx].incrementAndGet();
+        return shards[idx];
+    }
+
+    public KfsAccess getShard(int idx)
+    {
+        return shards[idx];
+    }
+
+    public int getShardCount()
+    {
+        return shards.length;
+    }
+
+    // Apply umask to all shards. Returns the last shard result.
+    public int kfs_setUMask(int umask) throws IOException
+    {
+        int ret = 0;
+        for (int i = 0; i < shards.length; i++) {
+            ret = shards[i].kfs_setUMask(umask);
+        }
+        return ret;
+    }
+
+    // Per shard counters, prefixed with Shard.<index>., including the native
+    // client counters, followed by the process wide counters. The per shard
+    // native client mutex contention counters, Shard.<index>.ClientMutex.*,
+    // are collected by the client mutex observer, per client call type, and
+    // in total. Contended acquisitions and wait time that remain high with
+    // more shards indicate that the threads are not spread evenly, see
+    // AssignedThreads and Selections.
+    public Map<String, String> getStats() throws IOException
+    {
+        final Map<String, String> ret = new TreeMap<String, String>();
+        for (int i = 0; i < shards.length; i++) {
+            final String prefix = "Shard." + i + ".";
+            ret.put(prefix + "Selections",
+                Long.toString(selections[i].get()));
+            ret.put(prefix + "AssignedThreads",
+                Integer.toString(threads[i].get()));
+            final Map<String, String> stats = shards[i].getClientStats();
+            for (Map.Entry<String, String> entry : stats.entrySet()) {
+                ret.put(prefix + entry.getKey(), entry.getValue());
+            }
+        }
+        ret.put("Shards", Integer.toString(shards.length));
+        ret.putAll(BufferPool.getInstance().getStats());
+        ret.putAll(ResourceCleaner.getStats());
+        return ret;
+    }
+}
@@ -31,20 +31,125 @@ package com.quantcast.qfs.access;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ScatteringByteChannel;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /* A byte channel interface with seek support */
-final public class KfsInputChannel implements ReadableByteChannel, Positionable
+final public class KfsInputChannel implements ReadableByteChannel,
+    ScatteringByteChannel, Positionable
 {
     // To get to a byte-buffer from the C++ side as a pointer, need
     // the buffer to be direct memory backed buffer.  So, allocate one
     // for reading/writing.
     private ByteBuffer readBuffer;
-    private int kfsFd = -1;
-    private KfsAccess kfsAccess;
+    private volatile int kfsFd = -1;
+    private volatile KfsAccess kfsAccess;
     private boolean isReadAheadOff = false;
+    // Direct destination buffers with at least this many bytes remaining are
+    // filled by JNI in place, bypassing readBuffer and the extra copy.
+    private final static int DIRECT_READ_THRESHOLD = Integer.getInteger(
+        "qfs.access.direct.read.threshold", 64 << 10);
+    // Read prefetch: up to prefetch depth buffers past readBuffer are filled
+    // asynchronously, while readBuffer is consumed.
+    final static int DEFAULT_PREFETCH_DEPTH = Integer.getInteger(
+        "qfs.access.prefetch.depth", 0);
+    private PrefetchRing prefetch = null;
+    // Closes the file if the channel becomes unreachable without close.
+    private final Reclaim                   reclaim;
+    private final ResourceCleaner.Cleanable cleanable;
+    // Positional reads do not use the channel monitor, and only hold the
+    // read lock to prevent close from releasing the file descriptor while
+    // the read is in flight.
+    private final ReentrantReadWriteLock closeLock =
+        new ReentrantReadWriteLock();
 
     private final static native
     int read(long cPtr, int fd, ByteBuffer buf, int begin, int end);
+    private final static native
+    int pread(long cPtr, int fd, ByteBuffer buf, int begin, int end,
+        long position);
+    private final static native
+    long readv(long cPtr, int fd, ByteBuffer[] bufs, int[] begins, int[] ends,
+        int count);
+    private final static native
+    int readPrefetch(long cPtr, int fd, ByteBuffer buf, int begin, int end,
+        long position);
+
+    // The outstanding prefetches are in the ring slots head ... head +
+    // count - 1, with contiguous file positions starting at the current file
+    // position, and ending at end.
+    private final static class PrefetchRing
+    {
+        final ByteBuffer[] buffers;
+        final long[]       positions;
+        final int[]        sizes;
+        int                head  = 0;
+        int                count = 0;
+        long               end   = -1;
+
+        PrefetchRing(int depth)
+        {
+            buffers   = new ByteBuffer[depth];
+            positions = new long[depth];
+            sizes     = new int[depth];
+            for (int i = 0; i < depth; i++) {
+                buffers[i] = BufferPool.getInstance().getBuffer();
+            }
+        }
+
+        // Wait for all outstanding prefetches to complete, as the prefetch
+        // buffers must not be re-used or released while the reads are in
+        // flight.
+        void drain(long cPtr, int fd)
+        {
+            while (count > 0) {
+                pread(cPtr, fd, buffers[head], 0, sizes[head],
+                    positions[head]);
+                head = (head + 1) % buffers.length;
+                count--;
+            }
+        }
+
+        void release()
+        {
+            final BufferPool pool = BufferPool.getInstance();
+            for (int i = 0; i < buffers.length; i++) {
+                pool.releaseBuffer(buffers[i]);
+                buffers[i] = null;
+            }
+        }
+    }
+
+    // The cleanup action must not reference the channel.
+    private final static class Reclaim implements Runnable
+    {
+        private final    KfsAccess    kfsAccess;
+        private final    int          kfsFd;
+        private volatile PrefetchRing prefetch = null;
+
+        Reclaim(KfsAccess ka, int fd)
+        {
+            kfsAccess = ka;
+            kfsFd     = fd;
+        }
+
+        public void run()
+        {
+            final PrefetchRing ring = prefetch;
+            prefetch = null;
+            if (ring != null) {
+                ring.drain(kfsAccess.getCPtr(), kfsFd);
+                ring.release();
+            }
+            try {
+                kfsAccess.kfs_close(kfsFd);
+            } catch (IOException ex) {
+                // Ignore, nothing can be done at this point.
+            }
+        }
+    }
 
     KfsInputChannel(KfsAccess ka, int fd) 
     {
@@ -53,6 +158,8 @@ final public class KfsInputChannel implements ReadableByteChannel, Positionable
 
         kfsFd = fd;
         kfsAccess = ka;
+        reclaim = new Reclaim(ka, fd);
+        cleanable = ResourceCleaner.register(this, reclaim, true);
     }
 
     public synchronized boolean isOpen()
@@ -74,16 +181,24 @@ final public class KfsInputChannel implements ReadableByteChannel, Positionable
 
         // While the dst buffer has space for more data, fill
         while (dst.hasRemaining()) {
-            // Fill input buffer if it's empty
-            if (!readBuffer.hasRemaining()) {
-                readBuffer.clear();
-                readDirect(readBuffer, dst.remaining());
-                readBuffer.flip();
-
+            // Read directly into the large enough direct dst buffer, once
+            // the input buffer is drained.
+            if (!readBuffer.hasRemaining() && prefetch == null &&
+                    dst.isDirect() &&
+                    dst.remaining() >= DIRECT_READ_THRESHOLD) {
+                final int pos = dst.position();
+                readDirect(dst, dst.remaining());
                 // If we failed to get anything, call that EOF
-                if (!readBuffer.hasRemaining()) {
+                if (dst.position() == pos) {
                     break;
                 }
+                continue;
+            }
+            // Fill input buffer if it's empty
+            // If we failed to get anything, call that EOF
+            if (!readBuffer.hasRemaining() &&
+                    !fillReadBuffer(dst.remaining())) {
+                break;
             }
 
             // Save end of input buffer
@@ -112,12 +227,340 @@ final public class KfsInputChannel implements ReadableByteChannel, Positionable
         return -1;
     }
 
+    // Single byte read. Served from the input buffer without JNI call, and
+    // without allocation. Returns -1 on EOF.
+    public synchronized int read() throws IOException
+    {
+        if (kfsFd < 0) {
+            throw new IOException("File closed");
+        }
+        if (!readBuffer.hasRemaining() && !fillReadBuffer(1)) {
+            return -1;
+        }
+        return readBuffer.get() & 0xFF;
+    }
+
+    // Same as read(ByteBuffer.wrap(b, off, len)), without the wrapper
+    // allocation. Returns -1 on EOF, like read(ByteBuffer), and 0 if len is
+    // 0.
+    public synchronized int read(byte[] b, int off, int len) throws IOException
+    {
+        if (off < 0 || len < 0 || b.length - len < off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (kfsFd < 0) {
+            throw new IOException("File closed");
+        }
+        int pos = off;
+        int rem = len;
+        while (rem > 0) {
+            if (!readBuffer.hasRemaining() && !fillReadBuffer(rem)) {
+                break;
+            }
+            final int n = Math.min(rem, readBuffer.remaining());
+            readBuffer.get(b, pos, n);
+            pos += n;
+            rem -= n;
+        }
+        return (rem < len || len == 0) ? len - rem : -1;
+    }
+
+    // Refill the empty input buffer, returns false on EOF.
+    private boolean fillReadBuffer(int requested) throws IOException
+    {
+        if (prefetch != null) {
+            readPrefetched();
+        } else {
+            readBuffer.clear();
+            readDirect(readBuffer, requested);
+            readBuffer.flip();
+        }
+        return readBuffer.hasRemaining();
+    }
+
+    public long read(ByteBuffer[] dsts) throws IOException
+    {
+        return read(dsts, 0, dsts.length);
+    }
+
+    // Scattering read. Data buffered in readBuffer is copied first, then
+    // the remaining destination buffers are filled with one JNI call per
+    // batch: large direct buffers are filled in place, and the small or heap
+    // buffers are staged in readBuffer, then copied.
+    public synchronized long read(ByteBuffer[] dsts, int offset, int length)
+        throws IOException
+    {
+        if (offset < 0 || length < 0 || dsts.length - length < offset) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (kfsFd < 0) {
+            throw new IOException("File closed");
+        }
+        final int end = offset + length;
+        long      r0  = 0;
+        for (int i = offset; i < end; i++) {
+            r0 += dsts[i].remaining();
+        }
+        int idx = offset;
+        while (idx < end && readBuffer.hasRemaining()) {
+            final ByteBuffer dst = dsts[idx];
+            if (dst.remaining() < readBuffer.remaining()) {
+                final int lim = readBuffer.limit();
+                readBuffer.limit(readBuffer.position() + dst.remaining());
+                dst.put(readBuffer);
+                readBuffer.limit(lim);
+                idx++;
+            } else {
+                dst.put(readBuffer);
+            }
+        }
+        if (prefetch != null) {
+            // Do not disrupt the outstanding prefetches.
+            for (; idx < end; idx++) {
+                if (read(dsts[idx]) < 0) {
+                    break;
+                }
+            }
+        } else {
+            readScatter(dsts, idx, end);
+        }
+        long total = r0;
+        for (int i = offset; i < end; i++) {
+            total -= dsts[i].remaining();
+        }
+        return (total > 0 || r0 == 0) ? total : -1;
+    }
+
+    private void readScatter(ByteBuffer[] dsts, int idx, int end)
+        throws IOException
+    {
+        final int          maxCnt = end - idx;
+        final ByteBuffer[] bufs   = new ByteBuffer[maxCnt];
+        final int[]        begins = new int[maxCnt];
+        final int[]        ends   = new int[maxCnt];
+        final int[]        staged = new int[maxCnt];
+        final int[]        counts = new int[maxCnt];
+        while (idx < end) {
+            // Build batch, staging buffers are allocated sequentially in the
+            // read buffer, and adjacent staging ranges are merged.
+            readBuffer.clear();
+            final int first = idx;
+            int       last  = idx;
+            int       cnt   = 0;
+            long      batch = 0;
+            while (last < end) {
+                final ByteBuffer dst = dsts[last];
+                final int        rem = dst.remaining();
+                final int        k   = last - first;
+                if (dst.isDirect() && DIRECT_READ_THRESHOLD <= rem) {
+                    staged[k]   = -1;
+                    counts[k]   = rem;
+                    bufs[cnt]   = dst;
+                    begins[cnt] = dst.position();
+                    ends[cnt]   = dst.limit();
+                    cnt++;
+                } else {
+                    final int pos = readBuffer.position();
+                    final int len = Math.min(rem, readBuffer.remaining());
+                    if (len <= 0 && 0 < rem) {
+                        break;
+                    }
+                    staged[k] = pos;
+                    counts[k] = len;
+                    readBuffer.position(pos + len);
+                    if (0 < cnt && bufs[cnt - 1] == readBuffer &&
+                            ends[cnt - 1] == pos) {
+                        ends[cnt - 1] = pos + len;
+                    } else if (0 < len) {
+                        bufs[cnt]   = readBuffer;
+                        begins[cnt] = pos;
+                        ends[cnt]   = pos + len;
+                        cnt++;
+                    }
+                }
+                batch += counts[last - first];
+                last++;
+                if (counts[k] < rem) {
+                    break;
+                }
+            }
+            final long sz = readv(kfsAccess.getCPtr(), kfsFd, bufs, begins,
+                ends, cnt);
+            if (sz < 0) {
+                kfsAccess.kfs_retToIOException((int)sz);
+            }
+            // Distribute the data in destination buffers order.
+            long left = sz;
+            for (int i = first; i < last && 0 < left; i++) {
+                final int        k   = i - first;
+                final ByteBuffer dst = dsts[i];
+                final int        n   = (int)Math.min(left, (long)counts[k]);
+                if (staged[k] < 0) {
+                    dst.position(dst.position() + n);
+                } else if (0 < n) {
+                    readBuffer.limit(staged[k] + n);
+                    readBuffer.position(staged[k]);
+                    dst.put(readBuffer);
+                    readBuffer.limit(readBuffer.capacity());
+                }
+                left -= n;
+            }
+            readBuffer.clear();
+            readBuffer.flip();
+            while (idx < end && ! dsts[idx].hasRemaining()) {
+                idx++;
+            }
+            if (sz < batch) {
+                break; // EOF
+            }
+        }
+    }
+
+    // Positional read: read up to dst.remaining() bytes starting at the
+    // specified file position. The file pointer, and the data buffered by
+    // read(ByteBuffer), are not affected. Does not synchronize on the channel,
+    // therefore concurrent positional reads, and positional reads concurrent
+    // with sequential reads, proceed in parallel.
+    // Returns the number of bytes read, or -1 if position is at or past EOF.
+    public int read(long position, ByteBuffer dst) throws IOException
+    {
+        if (position < 0) {
+            throw new IllegalArgumentException(
+                "read(" + kfsFd + "," + position + ")");
+        }
+        final int r0 = dst.remaining();
+        if (r0 <= 0) {
+            return 0;
+        }
+        closeLock.readLock().lock();
+        try {
+            final int       fd = kfsFd;
+            final KfsAccess ka = kfsAccess;
+            if (fd < 0 || ka == null) {
+                throw new IOException("File closed");
+            }
+            if (dst.isDirect()) {
+                final int pos = dst.position();
+                final int sz  = pread(ka.getCPtr(), fd, dst, pos, dst.limit(),
+                    position);
+                ka.kfs_retToIOException(sz);
+                dst.position(pos + sz);
+                return sz > 0 ? sz : -1;
+            }
+            final ByteBuffer buf = BufferPool.getInstance().getBuffer();
+            try {
+                long off = position;
+                while (dst.hasRemaining()) {
+                    buf.clear();
+                    final int end = Math.min(buf.capacity(), dst.remaining());
+                    final int sz  = pread(ka.getCPtr(), fd, buf, 0, end, off);
+                    ka.kfs_retToIOException(sz);
+                    if (sz <= 0) {
+                        break;
+                    }
+                    buf.limit(sz);
+                    dst.put(buf);
+                    off += sz;
+                    if (sz < end) {
+                        break;
+                    }
+                }
+            } finally {
+                BufferPool.getInstance().releaseBuffer(buf);
+            }
+        } finally {
+            closeLock.readLock().unlock();
+        }
+        final int r1 = dst.remaining();
+        return r1 < r0 ? r0 - r1 : -1;
+    }
+
+    // Buffer allocator for vectored read.
+    public interface BufferAllocator
+    {
+        ByteBuffer allocate(int size);
+    }
+
+    // Vectored read file range. The range data becomes available
+    // through the range future, with the buffer position set to 0 and the
+    // limit set to the range length.
+    public static final class ReadRange
+    {
+        private final long               offset;
+        private final int                length;
+        private final VectoredRead.Result result = new VectoredRead.Result();
+        private int                      pending = 0;
+        ByteBuffer                       buffer  = null;
+
+        public ReadRange(long offset, int length)
+        {
+            if (offset < 0 || length < 0) {
+                throw new IllegalArgumentException(
+                    "invalid range: " + offset + "+" + length);
+            }
+            this.offset = offset;
+            this.length = length;
+        }
+        public long getOffset()
+        {
+            return offset;
+        }
+        public int getLength()
+        {
+            return length;
+        }
+        public Future<ByteBuffer> getData()
+        {
+            return result;
+        }
+        synchronized void setParts(int parts)
+        {
+            pending = parts;
+            if (pending <= 0) {
+                result.complete(buffer);
+            }
+        }
+        synchronized void partDone(Throwable ex)
+        {
+            if (result.isDone()) {
+                return;
+            }
+            if (ex != null) {
+                result.fail(ex);
+            } else if (--pending <= 0) {
+                result.complete(buffer);
+            }
+        }
+    }
+
+    // Vectored read: read the specified ranges, with ranges separated by
+    // small gaps coalesced into one read, and large ranges split into
+    // multiple reads. The reads are issued in parallel as positional reads,
+    // therefore the file pointer is not affected. The method returns once
+    // the reads are scheduled, and each range completes via its own future.
+    // Ranges must not overlap, and must not be re-used.
+    public void readVectored(List<? extends ReadRange> ranges,
+            BufferAllocator allocator) throws IOException
+    {
+        if (kfsFd < 0) {
+            throw new IOException("File closed");
+        }
+        VectoredRead.read(this, ranges, allocator);
+    }
+
     ByteBuffer readNext() throws IOException
     {
-        readBuffer.clear();
-        readDirect(readBuffer, 0);
-        readBuffer.flip();
-        return readBuffer;
+        return readNext(readBuffer);
+    }
+
+    // Reads the next batch into the caller supplied direct buffer, used by
+    // the directory iterator read ahead.
+    ByteBuffer readNext(ByteBuffer buf) throws IOException
+    {
+        buf.clear();
+        readDirect(buf, 0);
+        buf.flip();
+        return buf;
     }
 
     private void readDirect(ByteBuffer buf, int remRequestedBytes) throws IOException
@@ -133,6 +576,97 @@ final public class KfsInputChannel implements ReadableByteChannel, Positionable
         buf.position(pos + sz);
     }
 
+    // Refill readBuffer from the next prefetched buffer, if any, then
+    // schedule prefetches to keep prefetch depth buffers in flight.
+    private void readPrefetched() throws IOException
+    {
+        final PrefetchRing pf   = prefetch;
+        final int          ring = pf.buffers.length;
+        if (pf.count > 0) {
+            // The read with the same buffer at the prefetch position waits
+            // for the prefetch completion, and moves the file pointer.
+            final ByteBuffer buf  = pf.buffers[pf.head];
+            final int        size = pf.sizes[pf.head];
+            pf.buffers[pf.head] = readBuffer;
+            pf.head = (pf.head + 1) % ring;
+            pf.count--;
+            readBuffer = buf;
+            readBuffer.clear();
+            readBuffer.limit(size);
+        } else {
+            readBuffer.clear();
+        }
+        readDirect(readBuffer, 0);
+        readBuffer.flip();
+        if (pf.count <= 0) {
+            pf.end = kfsAccess.kfs_tell(kfsFd);
+        }
+        final long cPtr = kfsAccess.getCPtr();
+        while (pf.count < ring) {
+            final int        idx  = (pf.head + pf.count) % ring;
+            final ByteBuffer buf  = pf.buffers[idx];
+            final int        size = readPrefetch(cPtr, kfsFd, buf, 0,
+                buf.capacity(), pf.end);
+            if (size <= 0) {
+                // EOF, or prefetch is not possible -- next read will be
+                // synchronous.
+                break;
+            }
+            pf.positions[idx] = pf.end;
+            pf.sizes[idx]     = size;
+            pf.end += size;
+            pf.count++;
+        }
+    }
+
+    private void drainPrefetch()
+    {
+        if (prefetch != null && prefetch.count > 0) {
+            prefetch.drain(kfsAccess.getCPtr(), kfsFd);
+        }
+    }
+
+    private void releasePrefetchBuffers()
+    {
+        if (prefetch == null) {
+            return;
+        }
+        final PrefetchRing pf = prefetch;
+        prefetch = null;
+        reclaim.prefetch = null;
+        pf.drain(kfsAccess.getCPtr(), kfsFd);
+        pf.release();
+    }
+
+    // Set the number of buffers that are filled asynchronously ahead of the
+    // buffer being consumed by read(ByteBuffer). Zero turns prefetch off.
+    // With prefetch on, the buffers replace the client library read ahead,
+    // therefore the library read ahead is turned off.
+    public synchronized void setPrefetchDepth(int depth) throws IOException
+    {
+        if (depth < 0) {
+            throw new IllegalArgumentException("prefetch depth: " + depth);
+        }
+        if (kfsFd < 0) {
+            throw new IOException("File closed");
+        }
+        if (prefetch != null && prefetch.buffers.length == depth) {
+            return;
+        }
+        releasePrefetchBuffers();
+        if (depth <= 0) {
+            return;
+        }
+        kfsAccess.kfs_setReadAheadSize(kfsFd, 0);
+        prefetch = new PrefetchRing(depth);
+        reclaim.prefetch = prefetch;
+    }
+
+    public synchronized int getPrefetchDepth()
+    {
+        return prefetch == null ? 0 : prefetch.buffers.length;
+    }
+
     // is modeled after the seek of Java's RandomAccessFile; offset is
     // the offset from the beginning of the file.
     public synchronized long seek(long offset) throws IOException
@@ -145,6 +679,7 @@ final public class KfsInputChannel implements ReadableByteChannel, Positionable
         }
         readBuffer.clear();
         readBuffer.flip();
+        drainPrefetch();
         return kfsAccess.kfs_seek(kfsFd, offset);
     }
 
@@ -170,32 +705,25 @@ final public class KfsInputChannel implements ReadableByteChannel, Positionable
         if (kfsFd < 0) {
             return;
         }
+        try {
+            releasePrefetchBuffers();
+        } catch (RuntimeException ex) {
+            // Ignore, proceed with close.
+        }
+        closeLock.writeLock().lock();
         final int fd = kfsFd;
         kfsFd = -1;
         final KfsAccess ka = kfsAccess;
         kfsAccess = null;
+        cleanable.cancel();
         try {
             ka.kfs_close(fd);
         } finally {
+            closeLock.writeLock().unlock();
             BufferPool.getInstance().releaseBuffer(readBuffer);
             readBuffer = null;
         }
     }
-
-    protected void finalize() throws Throwable
-    {
-        try {
-            if (kfsFd >= 0 && kfsAccess != null) {
-                final int fd = kfsFd;
-                kfsFd = -1;
-                final KfsAccess ka = kfsAccess;
-                kfsAccess = null;
-                ka.kfs_close(fd);
-            }
-        } finally {
-            super.finalize();
-        }
-    }
     
     public void setReadAheadSize(long readAheadSize) {
         if(readAheadSize >= 0) {
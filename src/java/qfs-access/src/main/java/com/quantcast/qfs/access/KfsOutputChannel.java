@@ -30,9 +30,11 @@ package com.quantcast.qfs.access;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.WritableByteChannel;
 
-public class KfsOutputChannel implements WritableByteChannel, Positionable
+public class KfsOutputChannel implements WritableByteChannel,
+    GatheringByteChannel, Positionable
 {
     // To get to a byte-buffer from the C++ side as a pointer, need
     // the buffer to be direct memory backed buffer.  So, allocate one
@@ -42,6 +44,23 @@ public class KfsOutputChannel implements WritableByteChannel, Positionable
     private KfsAccess kfsAccess;
     private final boolean append;
     private boolean returnBufferToPool;
+    // Write behind: full buffers are written asynchronously, while the next
+    // buffer is being filled. The buffers must not be modified until the
+    // completion handler returns, and completion handler waits for all
+    // outstanding writes. When all buffers are in flight, the next flush
+    // invokes the completion handler, and the buffers become available.
+    private final static int DEFAULT_WRITE_BEHIND_DEPTH = Integer.getInteger(
+        "qfs.access.write.behind.depth", 0);
+    // Gathering write passes direct source buffers with at least this many
+    // bytes remaining to JNI in place, instead of copying into writeBuffer.
+    private final static int DIRECT_WRITE_THRESHOLD = Integer.getInteger(
+        "qfs.access.direct.write.threshold", 64 << 10);
+    private ByteBuffer[] writeBehindBuffers = null;
+    private int          writeBehindCount   = 0;
+    private ByteBuffer   appendByte         = null;
+    // Closes the file if the channel becomes unreachable without close.
+    private final Reclaim                   reclaim;
+    private final ResourceCleaner.Cleanable cleanable;
 
     private final static native
     int write(long ptr, int fd, ByteBuffer buf, int begin, int end);
@@ -52,6 +71,49 @@ public class KfsOutputChannel implements WritableByteChannel, Positionable
     private final static native
     int sync(long ptr, int fd);
 
+    private final static native
+    long writev(long ptr, int fd, ByteBuffer[] bufs, int[] begins, int[] ends,
+        int count);
+
+    private final static native
+    int writeAsync(long ptr, int fd, ByteBuffer buf, int begin, int end);
+
+    private final static native
+    int writeAsyncCompletion(long ptr, int fd);
+
+    // The cleanup action must not reference the channel. The data buffered
+    // by the channel, and not yet written, is discarded.
+    private final static class Reclaim implements Runnable
+    {
+        private final    KfsAccess    kfsAccess;
+        private final    int          kfsFd;
+        private volatile ByteBuffer[] writeBehindBuffers = null;
+
+        Reclaim(KfsAccess ka, int fd)
+        {
+            kfsAccess = ka;
+            kfsFd     = fd;
+        }
+
+        public void run()
+        {
+            final ByteBuffer[] bufs = writeBehindBuffers;
+            writeBehindBuffers = null;
+            if (bufs != null) {
+                // Wait for the writes from the buffers being reclaimed.
+                writeAsyncCompletion(kfsAccess.getCPtr(), kfsFd);
+                for (int i = 0; i < bufs.length; i++) {
+                    BufferPool.getInstance().releaseBuffer(bufs[i]);
+                }
+            }
+            try {
+                kfsAccess.kfs_close(kfsFd);
+            } catch (IOException ex) {
+                // Ignore, nothing can be done at this point.
+            }
+        }
+    }
+
     KfsOutputChannel(KfsAccess kfsAccess, int fd, boolean append) 
     {
         this.writeBuffer = BufferPool.getInstance().getBuffer();
@@ -60,6 +122,11 @@ public class KfsOutputChannel implements WritableByteChannel, Positionable
         this.append = append;
         this.kfsFd = fd;
         this.kfsAccess = kfsAccess;
+        this.reclaim = new Reclaim(kfsAccess, fd);
+        this.cleanable = ResourceCleaner.register(this, reclaim, true);
+        if (! append && DEFAULT_WRITE_BEHIND_DEPTH > 0) {
+            allocateWriteBehindBuffers(DEFAULT_WRITE_BEHIND_DEPTH);
+        }
     }
 
     public synchronized boolean isOpen()
@@ -93,12 +160,11 @@ public class KfsOutputChannel implements WritableByteChannel, Positionable
                             maxAppendSize
                         );
                     }
-                    final ByteBuffer buf = ByteBuffer.allocateDirect(
-                        (r0 + BufferPool.BUFFER_SIZE - 1) /
-                        BufferPool.BUFFER_SIZE * BufferPool.BUFFER_SIZE
-                    );
+                    final ByteBuffer buf =
+                        BufferPool.getInstance().getBuffer(r0);
                     releaseBuffer();
-                    writeBuffer = buf;
+                    writeBuffer        = buf;
+                    returnBufferToPool = true;
                 }
             }
             // Save end of input buffer
@@ -118,6 +184,187 @@ public class KfsOutputChannel implements WritableByteChannel, Positionable
         return r0 - src.remaining();
     }
 
+    // Single byte write. Copied into the output buffer without allocation.
+    // Append mode writes one byte record.
+    public synchronized void write(int b) throws IOException
+    {
+        if (kfsFd < 0) {
+            throw new IOException("File closed");
+        }
+        if (append) {
+            if (appendByte == null) {
+                appendByte = ByteBuffer.allocate(1);
+            }
+            appendByte.clear();
+            appendByte.put(0, (byte)b);
+            write(appendByte);
+            return;
+        }
+        if (!writeBuffer.hasRemaining()) {
+            syncSelf();
+        }
+        writeBuffer.put((byte)b);
+    }
+
+    // Same as write(ByteBuffer.wrap(b, off, len)), without the wrapper
+    // allocation, except in append mode, where the data is written as one
+    // record.
+    public synchronized int write(byte[] b, int off, int len)
+        throws IOException
+    {
+        if (off < 0 || len < 0 || b.length - len < off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (kfsFd < 0) {
+            throw new IOException("File closed");
+        }
+        if (append) {
+            return write(ByteBuffer.wrap(b, off, len));
+        }
+        int pos = off;
+        int rem = len;
+        while (rem > 0) {
+            if (!writeBuffer.hasRemaining()) {
+                syncSelf();
+            }
+            final int n = Math.min(rem, writeBuffer.remaining());
+            writeBuffer.put(b, pos, n);
+            pos += n;
+            rem -= n;
+        }
+        return len;
+    }
+
+    public long write(ByteBuffer[] srcs) throws IOException
+    {
+        return write(srcs, 0, srcs.length);
+    }
+
+    // Gathering write. Small and heap source buffers are copied into
+    // writeBuffer, and large direct buffers are written in place. The
+    // resulting sequence of ranges is written with one JNI call per batch,
+    // i.e. each time writeBuffer becomes full, and at the end if any large
+    // direct buffers are in the batch. Append mode writes each buffer as
+    // separate record. In write behind mode all buffers are copied through
+    // the write behind queue, as the synchronous batch write would otherwise
+    // be issued ahead of, or concurrently with the queued asynchronous
+    // writes.
+    public synchronized long write(ByteBuffer[] srcs, int offset, int length)
+        throws IOException
+    {
+        if (offset < 0 || length < 0 || srcs.length - length < offset) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (kfsFd < 0) {
+            throw new IOException("File closed");
+        }
+        final int end   = offset + length;
+        long      total = 0;
+        if (append) {
+            for (int i = offset; i < end; i++) {
+                total += write(srcs[i]);
+            }
+            return total;
+        }
+        if (writeBehindBuffers != null) {
+            for (int i = offset; i < end; i++) {
+                final ByteBuffer src = srcs[i];
+                total += src.remaining();
+                while (src.hasRemaining()) {
+                    if (! writeBuffer.hasRemaining()) {
+                        syncSelf();
+                    }
+                    final int lim = src.limit();
+                    if (writeBuffer.remaining() < src.remaining()) {
+                        src.limit(src.position() + writeBuffer.remaining());
+                    }
+                    writeBuffer.put(src);
+                    src.limit(lim);
+                }
+            }
+            return total;
+        }
+        final int          maxCnt = 2 * length + 1;
+        final ByteBuffer[] bufs   = new ByteBuffer[maxCnt];
+        final int[]        begins = new int[maxCnt];
+        final int[]        ends   = new int[maxCnt];
+        // Start of the data in writeBuffer that is not yet in the batch.
+        int                wrPos  = 0;
+        int                cnt    = 0;
+        for (int i = offset; i < end; i++) {
+            final ByteBuffer src = srcs[i];
+            final int        rem = src.remaining();
+            if (rem <= 0) {
+                continue;
+            }
+            if (src.isDirect() && DIRECT_WRITE_THRESHOLD <= rem) {
+                if (wrPos < writeBuffer.position()) {
+                    bufs[cnt]   = writeBuffer;
+                    begins[cnt] = wrPos;
+                    ends[cnt]   = writeBuffer.position();
+                    wrPos       = writeBuffer.position();
+                    cnt++;
+                }
+                bufs[cnt]   = src;
+                begins[cnt] = src.position();
+                ends[cnt]   = src.limit();
+                cnt++;
+                total += rem;
+                continue;
+            }
+            while (src.hasRemaining()) {
+                if (! writeBuffer.hasRemaining()) {
+                    bufs[cnt]   = writeBuffer;
+                    begins[cnt] = wrPos;
+                    ends[cnt]   = writeBuffer.position();
+                    cnt++;
+                    writeVector(bufs, begins, ends, cnt);
+                    cnt   = 0;
+                    wrPos = 0;
+                    writeBuffer.clear();
+                }
+                final int lim = src.limit();
+                if (writeBuffer.remaining() < src.remaining()) {
+                    src.limit(src.position() + writeBuffer.remaining());
+                }
+                writeBuffer.put(src);
+                src.limit(lim);
+            }
+            total += rem;
+        }
+        if (0 < cnt) {
+            writeVector(bufs, begins, ends, cnt);
+            // Move the data past the batch to the beginning of the buffer.
+            writeBuffer.limit(writeBuffer.position());
+            writeBuffer.position(wrPos);
+            writeBuffer.compact();
+        }
+        return total;
+    }
+
+    private void writeVector(ByteBuffer[] bufs, int[] begins, int[] ends,
+        int cnt) throws IOException
+    {
+        long len = 0;
+        for (int i = 0; i < cnt; i++) {
+            len += ends[i] - begins[i];
+        }
+        final long sz = writev(kfsAccess.getCPtr(), kfsFd, bufs, begins, ends,
+            cnt);
+        if (sz < 0) {
+            kfsAccess.kfs_retToIOException((int)sz);
+        }
+        if (sz != len) {
+            throw new RuntimeException("KFS internal error: write(" +
+                len + ") != " + sz);
+        }
+        for (int i = 0; i < cnt; i++) {
+            if (bufs[i] != writeBuffer) {
+                bufs[i].position(ends[i]);
+            }
+        }
+    }
+
     private void writeDirect(ByteBuffer buf) throws IOException
     {
         if (! buf.isDirect()) {
@@ -154,12 +401,18 @@ public class KfsOutputChannel implements WritableByteChannel, Positionable
         }
         if (append) {
             syncSelf();
+        } else if (writeBehindCount > 0) {
+            completeWriteBehind();
         }
         return 0;
     }
 
     private synchronized void syncSelf() throws IOException
     {
+        if (writeBehindBuffers != null) {
+            writeBehind();
+            return;
+        }
         // flush everything
         writeBuffer.flip();
         boolean restore = true;
@@ -173,6 +426,95 @@ public class KfsOutputChannel implements WritableByteChannel, Positionable
         }
     }
 
+    private void writeBehind() throws IOException
+    {
+        if (writeBuffer.position() <= 0) {
+            return;
+        }
+        if (writeBehindCount >= writeBehindBuffers.length) {
+            completeWriteBehind();
+        }
+        final int last = writeBuffer.position();
+        final int sz   = writeAsync(kfsAccess.getCPtr(), kfsFd, writeBuffer,
+            0, last);
+        kfsAccess.kfs_retToIOException(sz);
+        if (sz != last) {
+            throw new RuntimeException("KFS internal error: write async(" +
+                last + ") != " + sz);
+        }
+        final ByteBuffer buf = writeBehindBuffers[writeBehindCount];
+        writeBehindBuffers[writeBehindCount++] = writeBuffer;
+        writeBuffer = buf;
+        writeBuffer.clear();
+    }
+
+    // Wait for all outstanding asynchronous writes, and report the first
+    // error, if any. The native writes reference the queued buffers in place,
+    // and the client library does not report individual write completions.
+    // Waiting for the pending size to drop below a threshold is not
+    // sufficient, as the writes to different chunks can complete out of
+    // order, therefore all buffers are reclaimed at once by the file sync,
+    // once per write behind depth buffers.
+    private void completeWriteBehind() throws IOException
+    {
+        if (writeBehindCount <= 0) {
+            return;
+        }
+        writeBehindCount = 0;
+        kfsAccess.kfs_retToIOException(
+            writeAsyncCompletion(kfsAccess.getCPtr(), kfsFd));
+    }
+
+    // Set the number of buffers that can be written asynchronously, while
+    // the application continues filling the current buffer. Zero turns off
+    // write behind. Write errors are reported by the subsequent write, sync,
+    // or close. Append mode does not support write behind.
+    public synchronized void setWriteBehindDepth(int depth) throws IOException
+    {
+        if (depth < 0) {
+            throw new IllegalArgumentException("write behind depth: " + depth);
+        }
+        if (kfsFd < 0) {
+            throw new IOException("File closed");
+        }
+        if (append || (writeBehindBuffers == null ? 0 :
+                writeBehindBuffers.length) == depth) {
+            return;
+        }
+        completeWriteBehind();
+        releaseWriteBehindBuffers();
+        if (depth > 0) {
+            allocateWriteBehindBuffers(depth);
+        }
+    }
+
+    private void allocateWriteBehindBuffers(int depth)
+    {
+        writeBehindBuffers = new ByteBuffer[depth];
+        for (int i = 0; i < depth; i++) {
+            writeBehindBuffers[i] = BufferPool.getInstance().getBuffer();
+        }
+        reclaim.writeBehindBuffers = writeBehindBuffers;
+    }
+
+    public synchronized int getWriteBehindDepth()
+    {
+        return writeBehindBuffers == null ? 0 : writeBehindBuffers.length;
+    }
+
+    private void releaseWriteBehindBuffers()
+    {
+        if (writeBehindBuffers == null) {
+            return;
+        }
+        for (int i = 0; i < writeBehindBuffers.length; i++) {
+            BufferPool.getInstance().releaseBuffer(writeBehindBuffers[i]);
+        }
+        reclaim.writeBehindBuffers = null;
+        writeBehindBuffers = null;
+        writeBehindCount   = 0;
+    }
+
     // is modeled after the seek of Java's RandomAccessFile; offset is
     // the offset from the beginning of the file.
     public synchronized long seek(long offset) throws IOException
@@ -195,7 +537,7 @@ public class KfsOutputChannel implements WritableByteChannel, Positionable
         // similar issue as read: the position at which we are writing
         // needs to be offset by where the C++ code thinks we are and
         // how much we have buffered
-        return kfsAccess.kfs_tell(kfsFd) + writeBuffer.remaining();
+        return kfsAccess.kfs_tell(kfsFd) + writeBuffer.position();
     }
 
     public synchronized void close() throws IOException
@@ -208,15 +550,24 @@ public class KfsOutputChannel implements WritableByteChannel, Positionable
             syncSelf();
         } catch (IOException ex) {
             origEx = ex;
+        }
+        try {
+            completeWriteBehind();
+        } catch (IOException ex) {
+            if (origEx == null) {
+                origEx = ex;
+            }
         } finally {
             final int fd = kfsFd;
             kfsFd = -1;
             KfsAccess ka = kfsAccess;
             kfsAccess = null;
+            cleanable.cancel();
             try {
                 ka.kfs_close(fd);
             } finally {
                 releaseBuffer();
+                releaseWriteBehindBuffers();
                 if (origEx != null) {
                     throw origEx;
                 }
@@ -233,21 +584,6 @@ public class KfsOutputChannel implements WritableByteChannel, Positionable
         returnBufferToPool = false;
     }
 
-    protected void finalize() throws Throwable
-    {
-        try {
-            if (kfsFd >= 0 && kfsAccess != null) {
-                final int fd = kfsFd;
-                kfsFd = -1;
-                KfsAccess ka = kfsAccess;
-                kfsAccess = null;
-                ka.kfs_close(fd);
-            }
-        } finally {
-            super.finalize();
-        }
-    }
-    
     public void setIoBufferSize(long bufferSize) {
         if(bufferSize >= 0) {
             kfsAccess.kfs_setIoBufferSize(kfsFd, bufferSize);
@@ -32,7 +32,11 @@ import java.util.Random;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.nio.ByteBuffer;
+import java.lang.management.ManagementFactory;
 
 public class KfsTest
 {
@@ -248,6 +252,11 @@ public class KfsTest
             if (kfsAccess.kfs_exists(path)) {
                 throw new IOException(path + " still exists after rename!");
             }
+            final int existsStatus = kfsAccess.kfs_existsStatus(path);
+            if (! kfsAccess.kfs_isNotFound(existsStatus)) {
+                throw new IOException(path +
+                    ": unexpected exists status: " + existsStatus);
+            }
 
             KfsOutputChannel outputChannel1 = kfsAccess.kfs_create(path);
 
@@ -321,6 +330,34 @@ public class KfsTest
             // test read when read-ahead is disabled
             testDisableReadAhead(kfsAccess, basedir);
 
+            // test positional read
+            testPositionalRead(kfsAccess, basedir);
+
+            // test vectored read
+            testVectoredRead(kfsAccess, basedir);
+
+            // test read prefetch
+            testReadPrefetch(kfsAccess, basedir);
+
+            // test write behind
+            testWriteBehind(kfsAccess, basedir);
+
+            // test gathering write and scattering read
+            testGatherScatter(kfsAccess, basedir);
+
+            // test single byte and small array i/o
+            testSmallIo(kfsAccess, basedir);
+
+            // test client pool
+            testAccessPool(new KfsAccessPool(args[0], port, 3), basedir);
+            testStatBatch(kfsAccess, basedir);
+            testMetaBatch(kfsAccess, basedir);
+            testStatPacked(kfsAccess, basedir);
+            testById(kfsAccess, basedir);
+            testTreeWalk(new KfsAccessPool(args[0], port, 2), basedir);
+            testDirPrefetch(kfsAccess, basedir);
+            testNameCache(kfsAccess, basedir);
+
             final Iterator<Map.Entry<String, String> > it =
                 kfsAccess.kfs_getStats().entrySet().iterator();
             System.out.println("Clients stats:");
@@ -528,4 +565,824 @@ public class KfsTest
         inputChannel.close();
         delete(kfsAccess, filePath);
     }
+
+    private static void testPositionalRead(KfsAccess kfsAccess, String baseDir)
+            throws IOException {
+        final String filePath = baseDir + "/sample_file.pread";
+        final KfsOutputChannel outputChannel = kfsAccess.kfs_create(filePath);
+        final int numBytes = 1048576;
+        final char[] dataBuf = new char[numBytes];
+        generateData(dataBuf, numBytes);
+        final byte[] buf = new String(dataBuf).getBytes();
+        int res = outputChannel.write(ByteBuffer.wrap(buf, 0, buf.length));
+        if (res != buf.length) {
+            throw new IOException(filePath + ": was able to write only: " + res);
+        }
+        outputChannel.sync();
+        outputChannel.close();
+
+        final KfsInputChannel inputChannel = kfsAccess.kfs_open(filePath);
+        final byte[] dstBuf = new byte[128];
+        res = inputChannel.read(ByteBuffer.wrap(dstBuf, 0, 64));
+        if (res != 64) {
+            throw new IOException(filePath + ": read returned: " + res);
+        }
+        final long[] offsets = { 4096, 0, numBytes - 128, 777 };
+        for (int k = 0; k < offsets.length; k++) {
+            final ByteBuffer dst = (k & 1) == 0 ?
+                ByteBuffer.wrap(dstBuf) : ByteBuffer.allocateDirect(128);
+            res = inputChannel.read(offsets[k], dst);
+            if (res != 128) {
+                throw new IOException(filePath + ": positional read at " +
+                    offsets[k] + " returned: " + res);
+            }
+            dst.flip();
+            for (int i = 0; i < 128; i++) {
+                if (buf[(int)offsets[k] + i] != dst.get(i)) {
+                    throw new IOException(filePath + ": data mismatch at " +
+                        (offsets[k] + i) + " positional read");
+                }
+            }
+        }
+        // positional reads must not move the file pointer
+        final long pos = inputChannel.tell();
+        if (pos != 64) {
+            throw new IOException(filePath +
+                ": positional read moved file pointer to: " + pos);
+        }
+        res = inputChannel.read(numBytes, ByteBuffer.wrap(dstBuf));
+        if (res != -1) {
+            throw new IOException(filePath +
+                ": positional read at EOF returned: " + res);
+        }
+        // large direct buffer read bypasses channel's buffer
+        final ByteBuffer direct = ByteBuffer.allocateDirect(numBytes);
+        direct.position(64);
+        res = inputChannel.read(direct);
+        if (res != numBytes - 64) {
+            throw new IOException(filePath + ": direct read returned: " + res);
+        }
+        for (int i = 64; i < numBytes; i++) {
+            if (buf[i] != direct.get(i)) {
+                throw new IOException(filePath + ": data mismatch at " + i +
+                    " direct read");
+            }
+        }
+        inputChannel.close();
+        delete(kfsAccess, filePath);
+    }
+
+    private static void testVectoredRead(KfsAccess kfsAccess, String baseDir)
+            throws IOException {
+        final String filePath = baseDir + "/sample_file.vread";
+        final KfsOutputChannel outputChannel = kfsAccess.kfs_create(filePath);
+        final int numBytes = 3 * 1048576 + 12345;
+        final char[] dataBuf = new char[numBytes];
+        generateData(dataBuf, numBytes);
+        final byte[] buf = new String(dataBuf).getBytes();
+        final int res = outputChannel.write(ByteBuffer.wrap(buf, 0, buf.length));
+        if (res != buf.length) {
+            throw new IOException(filePath + ": was able to write only: " + res);
+        }
+        outputChannel.sync();
+        outputChannel.close();
+
+        final KfsInputChannel inputChannel = kfsAccess.kfs_open(filePath);
+        final List<KfsInputChannel.ReadRange> ranges =
+            new ArrayList<KfsInputChannel.ReadRange>();
+        // out of order, adjacent, small gaps, large gap, large range, empty
+        ranges.add(new KfsInputChannel.ReadRange(2000000, 1000));
+        ranges.add(new KfsInputChannel.ReadRange(0, 100));
+        ranges.add(new KfsInputChannel.ReadRange(100, 100));
+        ranges.add(new KfsInputChannel.ReadRange(300, 4096));
+        ranges.add(new KfsInputChannel.ReadRange(10000, 2 * 1048576 - 10000));
+        ranges.add(new KfsInputChannel.ReadRange(numBytes - 10, 10));
+        ranges.add(new KfsInputChannel.ReadRange(numBytes - 5, 0));
+        final KfsInputChannel.ReadRange pastEof =
+            new KfsInputChannel.ReadRange(numBytes - 1, 2);
+        ranges.add(pastEof);
+        final boolean[] direct = { false };
+        inputChannel.readVectored(ranges,
+            new KfsInputChannel.BufferAllocator() {
+                public ByteBuffer allocate(int size) {
+                    direct[0] = ! direct[0];
+                    return direct[0] ? ByteBuffer.allocateDirect(size) :
+                        ByteBuffer.allocate(size);
+                }
+            });
+        for (int k = 0; k < ranges.size(); k++) {
+            final KfsInputChannel.ReadRange range = ranges.get(k);
+            final ByteBuffer data;
+            try {
+                data = range.getData().get();
+            } catch (java.util.concurrent.ExecutionException ex) {
+                if (range == pastEof && ex.getCause() instanceof EOFException) {
+                    continue;
+                }
+                throw new IOException(filePath + ": vectored read failure: " +
+                    ex.getCause());
+            } catch (InterruptedException ex) {
+                throw new IOException(filePath + ": interrupted");
+            }
+            if (range == pastEof) {
+                throw new IOException(filePath +
+                    ": vectored read past EOF succeeded");
+            }
+            if (data.position() != 0 || data.remaining() != range.getLength()) {
+                throw new IOException(filePath + ": vectored read range: " +
+                    range.getOffset() + " invalid buffer: " + data);
+            }
+            for (int i = 0; i < range.getLength(); i++) {
+                if (buf[(int)range.getOffset() + i] != data.get(i)) {
+                    throw new IOException(filePath + ": data mismatch at " +
+                        (range.getOffset() + i) + " vectored read");
+                }
+            }
+        }
+        if (inputChannel.tell() != 0) {
+            throw new IOException(filePath +
+                ": vectored read moved file pointer");
+        }
+        inputChannel.close();
+        delete(kfsAccess, filePath);
+    }
+
+    private static void testReadPrefetch(KfsAccess kfsAccess, String baseDir)
+            throws IOException {
+        final String filePath = baseDir + "/sample_file.prefetch";
+        final KfsOutputChannel outputChannel = kfsAccess.kfs_create(filePath);
+        final int numBytes = 5 * 1048576 + 333;
+        final char[] dataBuf = new char[numBytes];
+        generateData(dataBuf, numBytes);
+        final byte[] buf = new String(dataBuf).getBytes();
+        int res = outputChannel.write(ByteBuffer.wrap(buf, 0, buf.length));
+        if (res != buf.length) {
+            throw new IOException(filePath + ": was able to write only: " + res);
+        }
+        outputChannel.sync();
+        outputChannel.close();
+
+        final KfsInputChannel inputChannel = kfsAccess.kfs_open(filePath);
+        inputChannel.setPrefetchDepth(2);
+        final byte[] dstBuf = new byte[100000];
+        int pos = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            while ((res = inputChannel.read(ByteBuffer.wrap(dstBuf))) > 0) {
+                for (int i = 0; i < res; i++) {
+                    if (buf[pos + i] != dstBuf[i]) {
+                        throw new IOException(filePath + ": data mismatch at " +
+                            (pos + i) + " prefetch read");
+                    }
+                }
+                pos += res;
+                if (pass == 0 && 2 * 1048576 < pos) {
+                    // seek back with prefetch in flight
+                    pos = 12345;
+                    inputChannel.seek(pos);
+                    break;
+                }
+            }
+        }
+        if (pos != numBytes || inputChannel.tell() != numBytes) {
+            throw new IOException(filePath + ": prefetch read ended at: " +
+                pos + " tell: " + inputChannel.tell());
+        }
+        inputChannel.close();
+        delete(kfsAccess, filePath);
+    }
+
+    private static void testWriteBehind(KfsAccess kfsAccess, String baseDir)
+            throws IOException {
+        final String filePath = baseDir + "/sample_file.wbehind";
+        final KfsOutputChannel outputChannel = kfsAccess.kfs_create(filePath);
+        outputChannel.setWriteBehindDepth(3);
+        final int numBytes = 7 * 1048576 + 777;
+        final char[] dataBuf = new char[numBytes];
+        generateData(dataBuf, numBytes);
+        final byte[] buf = new String(dataBuf).getBytes();
+        for (int pos = 0; pos < numBytes; ) {
+            final int len = Math.min(numBytes - pos, 65000);
+            final int res = outputChannel.write(ByteBuffer.wrap(buf, pos, len));
+            if (res != len) {
+                throw new IOException(filePath + ": was able to write only: " +
+                    res);
+            }
+            pos += len;
+            if (outputChannel.tell() != pos) {
+                throw new IOException(filePath + ": write behind position: " +
+                    outputChannel.tell() + " expected: " + pos);
+            }
+        }
+        outputChannel.close();
+
+        final KfsInputChannel inputChannel = kfsAccess.kfs_open(filePath);
+        final ByteBuffer dst = ByteBuffer.allocate(numBytes + 1);
+        while (inputChannel.read(dst) > 0)
+            {}
+        inputChannel.close();
+        if (dst.position() != numBytes) {
+            throw new IOException(filePath + ": write behind size mismatch: " +
+                dst.position());
+        }
+        for (int i = 0; i < numBytes; i++) {
+            if (buf[i] != dst.get(i)) {
+                throw new IOException(filePath + ": data mismatch at " + i +
+                    " write behind");
+            }
+        }
+        delete(kfsAccess, filePath);
+    }
+
+    // Files created by one shard must be visible and readable through the
+    // other shards, and the channels must remain usable from other threads.
+    private static void testAccessPool(final KfsAccessPool pool,
+            final String baseDir) throws IOException {
+        final int numThreads = 6;
+        final IOException[] errors = new IOException[numThreads];
+        final KfsInputChannel[] channels = new KfsInputChannel[numThreads];
+        final Thread[] threads = new Thread[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            final int idx = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        final KfsAccess fs = pool.getShard();
+                        final String filePath =
+                            baseDir + "/sample_file.pool." + idx;
+                        final KfsOutputChannel out = fs.kfs_create(filePath);
+                        final byte[] data = ("shard data " + idx).getBytes();
+                        out.write(ByteBuffer.wrap(data));
+                        out.close();
+                        channels[idx] = pool.getShard().kfs_open(filePath);
+                    } catch (IOException ex) {
+                        errors[idx] = ex;
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (int i = 0; i < numThreads; i++) {
+            try {
+                threads[i].join();
+            } catch (InterruptedException ex) {
+                throw new IOException("interrupted");
+            }
+            if (errors[i] != null) {
+                throw errors[i];
+            }
+        }
+        for (int i = 0; i < numThreads; i++) {
+            final byte[] expected = ("shard data " + i).getBytes();
+            final ByteBuffer dst = ByteBuffer.allocate(expected.length + 1);
+            while (channels[i].read(dst) > 0)
+                {}
+            channels[i].close();
+            dst.flip();
+            if (! ByteBuffer.wrap(expected).equals(dst)) {
+                throw new IOException("pool shard data mismatch: " + i);
+            }
+            final KfsAccess other =
+                pool.getShard((i + 1) % pool.getShardCount());
+            final String filePath = baseDir + "/sample_file.pool." + i;
+            if (other.kfs_filesize(filePath) != expected.length) {
+                throw new IOException(filePath + ": pool size mismatch");
+            }
+            delete(other, filePath);
+        }
+        final Map<String, String> stats = pool.getStats();
+        int assigned = 0;
+        for (int i = 0; i < pool.getShardCount(); i++) {
+            assigned += Integer.parseInt(
+                stats.get("Shard." + i + ".AssignedThreads"));
+        }
+        if (assigned != numThreads) {
+            throw new IOException("pool assigned threads: " + assigned +
+                " expected: " + numThreads);
+        }
+    }
+
+    private static void testStatBatch(KfsAccess kfsAccess, String baseDir)
+            throws IOException {
+        final int numFiles = 300;
+        final String dir = baseDir + "/stat_batch";
+        kfsAccess.kfs_retToIOException(kfsAccess.kfs_mkdirs(dir), dir);
+        final String[] paths = new String[numFiles * 2 + 1];
+        for (int i = 0; i < numFiles; i++) {
+            final String path = dir + "/f." + i;
+            final KfsOutputChannel out = kfsAccess.kfs_create(path);
+            out.write(ByteBuffer.wrap(new byte[i]));
+            out.close();
+            paths[2 * i]     = path;
+            paths[2 * i + 1] = path + ".missing";
+        }
+        paths[numFiles * 2] = dir;
+        final KfsAccess.StatBatch batch = kfsAccess.kfs_statBatch(paths);
+        int count = 0;
+        while (batch.next()) {
+            if (! paths[count].equals(batch.path)) {
+                throw new IOException("stat batch path mismatch: " +
+                    batch.path + " expected: " + paths[count]);
+            }
+            final KfsFileAttr attr = new KfsFileAttr();
+            final int ret = kfsAccess.kfs_stat(batch.path, attr);
+            if (count % 2 != 0 && count < numFiles * 2) {
+                if (batch.status == 0 || ret == 0) {
+                    throw new IOException(batch.path + ": exists");
+                }
+                try {
+                    batch.checkStatus();
+                    throw new IOException(batch.path + ": no exception");
+                } catch (FileNotFoundException ex) {
+                    // Expected.
+                }
+            } else {
+                batch.checkStatus();
+                kfsAccess.kfs_retToIOException(ret, batch.path);
+                if (batch.isDirectory != attr.isDirectory ||
+                        batch.filesize != attr.filesize ||
+                        batch.fileId != attr.fileId ||
+                        batch.mode != attr.mode ||
+                        ! attr.filename.equals(batch.filename) ||
+                        ! attr.ownerName.equals(batch.ownerName) ||
+                        ! attr.groupName.equals(batch.groupName)) {
+                    throw new IOException(batch.path +
+                        ": stat batch attribute mismatch: " +
+                        attrToString(attr, " "));
+                }
+                if (count < numFiles * 2 && batch.filesize != count / 2) {
+                    throw new IOException(batch.path +
+                        ": stat batch size mismatch: " + batch.filesize);
+                }
+            }
+            count++;
+        }
+        batch.close();
+        if (count != paths.length) {
+            throw new IOException("stat batch entries: " + count +
+                " expected: " + paths.length);
+        }
+        delete(kfsAccess, dir);
+    }
+
+    private static void testStatPacked(KfsAccess kfsAccess, String baseDir)
+            throws IOException {
+        final String dir  = baseDir + "/stat_packed";
+        final String file = dir + "/file";
+        kfsAccess.kfs_retToIOException(kfsAccess.kfs_mkdirs(dir), dir);
+        final KfsOutputChannel out = kfsAccess.kfs_create(file);
+        out.write(ByteBuffer.wrap(new byte[123]));
+        out.close();
+        final ByteBuffer buf = ByteBuffer.allocateDirect(1 << 10);
+        final KfsAccess.PackedStat packed = new KfsAccess.PackedStat();
+        final KfsFileAttr attr = new KfsFileAttr();
+        final String[] paths = new String[] { dir, file };
+        for (int i = 0; i < paths.length; i++) {
+            final int len = kfsAccess.kfs_statPacked(paths[i], buf);
+            kfsAccess.kfs_retToIOException(len, paths[i]);
+            kfsAccess.kfs_retToIOException(
+                kfsAccess.kfs_stat(paths[i], attr), paths[i]);
+            packed.read(buf);
+            if (buf.remaining() != 0 ||
+                    packed.isDirectory != attr.isDirectory ||
+                    packed.filesize != attr.filesize ||
+                    packed.fileId != attr.fileId ||
+                    packed.mode != attr.mode ||
+                    packed.owner != attr.owner ||
+                    packed.group != attr.group ||
+                    packed.modificationTime != attr.modificationTime ||
+                    packed.minSTier != attr.minSTier ||
+                    packed.maxSTier != attr.maxSTier ||
+                    ! attr.filename.equals(packed.filename) ||
+                    ! attr.ownerName.equals(packed.ownerName) ||
+                    ! attr.groupName.equals(packed.groupName)) {
+                throw new IOException(paths[i] +
+                    ": packed stat attribute mismatch: " +
+                    attrToString(attr, " ") + " length: " + len);
+            }
+        }
+        if (kfsAccess.kfs_statPacked(file, ByteBuffer.allocateDirect(8)) >= 0) {
+            throw new IOException(file + ": packed stat buffer overflow");
+        }
+        if (kfsAccess.kfs_statPacked(file + ".missing", buf) >= 0) {
+            throw new IOException(file + ".missing: packed stat success");
+        }
+        delete(kfsAccess, dir);
+    }
+
+    private static void testById(KfsAccess kfsAccess, String baseDir)
+            throws IOException {
+        final int    numFiles = 10;
+        final String dir      = baseDir + "/by_id/a/b/c";
+        kfsAccess.kfs_retToIOException(kfsAccess.kfs_mkdirs(dir), dir);
+        for (int i = 0; i < numFiles; i++) {
+            final KfsOutputChannel out = kfsAccess.kfs_create(dir + "/f." + i);
+            final ByteBuffer buf = ByteBuffer.allocate(4);
+            buf.putInt(i).flip();
+            out.write(buf);
+            out.close();
+        }
+        final KfsFileAttr attr  = new KfsFileAttr();
+        int               count = 0;
+        final KfsAccess.DirectoryIterator it =
+            kfsAccess.new DirectoryIterator(dir);
+        while (it.next()) {
+            if (it.filename.equals(".") || it.filename.equals("..")) {
+                continue;
+            }
+            kfsAccess.kfs_retToIOException(
+                kfsAccess.kfs_stat(it.fileId, attr), it.filename);
+            if (attr.fileId != it.fileId ||
+                    attr.filesize != it.filesize ||
+                    ! attr.filename.equals(it.filename)) {
+                throw new IOException(it.filename +
+                    ": stat by id mismatch: " + attrToString(attr, " "));
+            }
+            if (it.isDirectory) {
+                continue;
+            }
+            final KfsInputChannel in =
+                kfsAccess.kfs_open_ex(it.fileId, -1, -1);
+            final ByteBuffer buf = ByteBuffer.allocate(8);
+            final int len = in.read(buf);
+            in.close();
+            buf.flip();
+            if (len != 4 || ! it.filename.equals("f." + buf.getInt())) {
+                throw new IOException(it.filename +
+                    ": open by id read mismatch");
+            }
+            count++;
+        }
+        it.close();
+        if (count != numFiles) {
+            throw new IOException("open by id files: " + count +
+                " expected: " + numFiles);
+        }
+        if (kfsAccess.kfs_stat(-1, attr) == 0) {
+            throw new IOException("stat by invalid id succeeded");
+        }
+        delete(kfsAccess, baseDir + "/by_id");
+    }
+
+    private static void checkBatchStatus(KfsAccess kfsAccess, int[] status,
+            String[] paths) throws IOException {
+        for (int i = 0; i < status.length; i++) {
+            kfsAccess.kfs_retToIOException(status[i], paths[i]);
+        }
+    }
+
+    private static void testMetaBatch(KfsAccess kfsAccess, String baseDir)
+            throws IOException {
+        final int numDirs = 200;
+        final String dir = baseDir + "/meta_batch";
+        final String[] dirs    = new String[numDirs];
+        final String[] files   = new String[numDirs];
+        final String[] renamed = new String[numDirs];
+        for (int i = 0; i < numDirs; i++) {
+            // Every other directory requires the parent to be created.
+            dirs[i]    = dir + "/d." + (i / 2) + (i % 2 == 0 ? "" : "/s");
+            files[i]   = dirs[i] + "/f";
+            renamed[i] = dirs[i] + "/r";
+        }
+        checkBatchStatus(kfsAccess,
+            kfsAccess.kfs_mkdirsBatch(dirs, 0777), dirs);
+        // Existing directories must not fail.
+        checkBatchStatus(kfsAccess,
+            kfsAccess.kfs_mkdirsBatch(dirs, 0777), dirs);
+        for (int i = 0; i < numDirs; i++) {
+            if (! kfsAccess.kfs_isDirectory(dirs[i])) {
+                throw new IOException(dirs[i] + ": not a directory");
+            }
+            kfsAccess.kfs_create(files[i]).close();
+        }
+        checkBatchStatus(kfsAccess,
+            kfsAccess.kfs_renameBatch(files, renamed, false), files);
+        for (int i = 0; i < numDirs; i++) {
+            if (kfsAccess.kfs_exists(files[i]) ||
+                    ! kfsAccess.kfs_isFile(renamed[i])) {
+                throw new IOException(renamed[i] + ": batch rename failure");
+            }
+        }
+        checkBatchStatus(kfsAccess,
+            kfsAccess.kfs_renameBatch(renamed, files, false), renamed);
+        final int[] status = kfsAccess.kfs_removeBatch(renamed);
+        for (int i = 0; i < numDirs; i++) {
+            if (status[i] == 0) {
+                throw new IOException(renamed[i] + ": removed non existent");
+            }
+        }
+        checkBatchStatus(kfsAccess,
+            kfsAccess.kfs_removeBatch(files), files);
+        for (int i = 0; i < numDirs; i++) {
+            if (kfsAccess.kfs_exists(files[i])) {
+                throw new IOException(files[i] + ": batch remove failure");
+            }
+        }
+        delete(kfsAccess, dir);
+    }
+
+    private static void testTreeWalk(KfsAccessPool pool, String baseDir)
+            throws IOException {
+        final KfsAccess fs = pool.getShard(0);
+        final String dir = baseDir + "/tree_walk";
+        final int fanOut = 4;
+        final HashSet<String> expected = new HashSet<String>();
+        final String[] dirs = new String[fanOut * fanOut];
+        for (int i = 0; i < fanOut; i++) {
+            expected.add(dir + "/d." + i);
+            for (int k = 0; k < fanOut; k++) {
+                dirs[i * fanOut + k] = dir + "/d." + i + "/s." + k;
+            }
+        }
+        checkBatchStatus(fs, fs.kfs_mkdirsBatch(dirs, 0777), dirs);
+        for (String d : dirs) {
+            expected.add(d);
+            for (int i = 0; i < fanOut; i++) {
+                final String file = d + "/f." + i;
+                fs.kfs_create(file).close();
+                expected.add(file);
+            }
+        }
+        final KfsTreeWalker walker = new KfsTreeWalker(null, pool, 3, 4);
+        // Stop walks early, the walk tasks must not hold the executor threads.
+        for (int i = 0; i < 64; i++) {
+            final KfsTreeWalker.Walk partial = walker.walk(dir);
+            if (partial.next() == null) {
+                throw new IOException("tree walk: no entries");
+            }
+            partial.close();
+            if (partial.next() != null) {
+                throw new IOException("tree walk: entry after close");
+            }
+        }
+        final KfsTreeWalker.Walk walk = walker.walk(dir);
+        final HashSet<String> found = new HashSet<String>();
+        try {
+            KfsFileAttr attr;
+            while ((attr = walk.next()) != null) {
+                final String parent = attr.filename.substring(
+                    0, attr.filename.lastIndexOf('/'));
+                if (! parent.equals(dir) && ! found.contains(parent)) {
+                    throw new IOException(attr.filename +
+                        ": returned before its parent");
+                }
+                if (! found.add(attr.filename)) {
+                    throw new IOException(attr.filename +
+                        ": returned more than once");
+                }
+                if (attr.isDirectory ==
+                        attr.filename.startsWith("/f.", parent.length())) {
+                    throw new IOException(attr.filename + ": invalid type");
+                }
+            }
+        } finally {
+            walk.close();
+        }
+        if (! found.equals(expected)) {
+            throw new IOException("tree walk: expected " + expected.size() +
+                " entries, found " + found.size());
+        }
+        if (walk.getDirCount() != 1 + fanOut + dirs.length) {
+            throw new IOException("tree walk: invalid directory count: " +
+                walk.getDirCount());
+        }
+        delete(fs, dir);
+    }
+
+    private static void testDirPrefetch(KfsAccess kfsAccess, String baseDir)
+            throws IOException {
+        // Enough entries to span several directory listing buffers.
+        final int numDirs = 5000;
+        final String dir = baseDir + "/dir_prefetch";
+        final String[] dirs = new String[numDirs];
+        for (int i = 0; i < numDirs; i++) {
+            dirs[i] = dir + "/d." + i;
+        }
+        checkBatchStatus(kfsAccess, kfsAccess.kfs_mkdirsBatch(dirs, 0777), dirs);
+        final HashSet<String> found = new HashSet<String>();
+        KfsAccess.DirectoryIterator itr = kfsAccess.new DirectoryIterator(dir);
+        try {
+            while (itr.next()) {
+                if (! itr.filename.equals(".") && ! itr.filename.equals("..") &&
+                        (! itr.isDirectory || ! found.add(itr.filename))) {
+                    throw new IOException(dir + "/" + itr.filename +
+                        ": invalid directory entry");
+                }
+            }
+        } finally {
+            itr.close();
+        }
+        if (found.size() != numDirs) {
+            throw new IOException(dir + ": expected " + numDirs +
+                " entries, found " + found.size());
+        }
+        // Filter by name suffix without decoding the names.
+        final byte[] suffix = "7".getBytes("UTF-8");
+        int matched = 0;
+        itr = kfsAccess.new DirectoryIterator(dir, true);
+        try {
+            while (itr.next()) {
+                if (itr.filename != null) {
+                    throw new IOException(dir + ": name decoded");
+                }
+                if (itr.isDotOrDotDot() || ! itr.nameEndsWith(suffix)) {
+                    continue;
+                }
+                if (! found.contains(itr.getFilename()) ||
+                        ! itr.getFilename().endsWith("7")) {
+                    throw new IOException(dir + "/" + itr.getFilename() +
+                        ": invalid lazy name");
+                }
+                matched++;
+            }
+        } finally {
+            itr.close();
+        }
+        if (matched != numDirs / 10) {
+            throw new IOException(dir + ": expected " + numDirs / 10 +
+                " suffix matches, found " + matched);
+        }
+        // Close with the read ahead in flight.
+        itr = kfsAccess.new DirectoryIterator(dir);
+        for (int i = 0; i < 10; i++) {
+            if (! itr.next()) {
+                throw new IOException(dir + ": premature end of directory");
+            }
+        }
+        itr.close();
+        delete(kfsAccess, dir);
+    }
+
+    private static void testNameCache(KfsAccess kfsAccess, String baseDir)
+            throws IOException {
+        final String file = baseDir + "/name_cache";
+        kfsAccess.kfs_create(file).close();
+        final KfsFileAttr a1 = new KfsFileAttr();
+        final KfsFileAttr a2 = new KfsFileAttr();
+        kfsAccess.kfs_retToIOException(kfsAccess.kfs_stat(file, a1), file);
+        kfsAccess.kfs_retToIOException(kfsAccess.kfs_stat(file, a2), file);
+        if (a1.ownerName != a2.ownerName || a1.groupName != a2.groupName) {
+            throw new IOException(file + ": owner or group name not shared");
+        }
+        final KfsAccess.DirectoryIterator itr =
+            kfsAccess.new DirectoryIterator(baseDir);
+        try {
+            while (itr.next()) {
+                if (itr.filename.equals("name_cache") &&
+                        (itr.ownerName != a1.ownerName ||
+                        itr.groupName != a1.groupName)) {
+                    throw new IOException(file +
+                        ": readdir owner or group name not shared");
+                }
+            }
+        } finally {
+            itr.close();
+        }
+        // Chown by name, resolved by the client library.
+        kfsAccess.kfs_retToIOException(
+            kfsAccess.kfs_chown(file, a1.ownerName, a1.groupName), file);
+        kfsAccess.kfs_retToIOException(kfsAccess.kfs_stat(file, a2), file);
+        if (a1.owner != a2.owner || a1.group != a2.group) {
+            throw new IOException(file + ": chown by name changed ids");
+        }
+        kfsAccess.kfs_remove(file);
+    }
+
+    // Returns the number of bytes allocated by the current thread, or -1 if
+    // the JVM does not support thread allocation accounting.
+    private static long getThreadAllocatedBytes() {
+        final java.lang.management.ThreadMXBean bean =
+            ManagementFactory.getThreadMXBean();
+        if (! (bean instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        return ((com.sun.management.ThreadMXBean)bean)
+            .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    // Single byte and small array reads and writes, the pattern used by the
+    // text readers and writers, must not allocate per call.
+    private static void testSmallIo(KfsAccess kfsAccess, String baseDir)
+            throws IOException {
+        final String filePath = baseDir + "/sample_file.smallio";
+        final int numBytes = 3 * 1048576 + 333;
+        final char[] dataBuf = new char[numBytes];
+        generateData(dataBuf, numBytes);
+        final byte[] buf = new String(dataBuf).getBytes();
+        final byte[] small = new byte[17];
+
+        final KfsOutputChannel outputChannel = kfsAccess.kfs_create(filePath);
+        long allocated = getThreadAllocatedBytes();
+        long startTime = System.nanoTime();
+        int pos = 0;
+        while (pos < numBytes) {
+            if ((pos & 1) == 0 || numBytes - pos < small.length) {
+                outputChannel.write(buf[pos++]);
+            } else {
+                System.arraycopy(buf, pos, small, 0, small.length);
+                pos += outputChannel.write(small, 0, small.length);
+            }
+        }
+        long endTime = System.nanoTime();
+        if (0 <= allocated) {
+            allocated = getThreadAllocatedBytes() - allocated;
+        }
+        System.out.println("Small write: " + numBytes + " bytes " +
+            (endTime - startTime) / 1000 + " usec allocated: " + allocated);
+        outputChannel.close();
+
+        final KfsInputChannel inputChannel = kfsAccess.kfs_open(filePath);
+        allocated = getThreadAllocatedBytes();
+        startTime = System.nanoTime();
+        pos = 0;
+        for (; ;) {
+            if ((pos & 1) == 0) {
+                final int b = inputChannel.read();
+                if (b < 0) {
+                    break;
+                }
+                if ((byte)b != buf[pos]) {
+                    throw new IOException(filePath +
+                        ": single byte read mismatch at " + pos);
+                }
+                pos++;
+            } else {
+                final int nrd = inputChannel.read(small, 0, small.length);
+                if (nrd <= 0) {
+                    break;
+                }
+                for (int i = 0; i < nrd; i++) {
+                    if (small[i] != buf[pos + i]) {
+                        throw new IOException(filePath +
+                            ": small read mismatch at " + (pos + i));
+                    }
+                }
+                pos += nrd;
+            }
+        }
+        endTime = System.nanoTime();
+        if (0 <= allocated) {
+            allocated = getThreadAllocatedBytes() - allocated;
+        }
+        System.out.println("Small read: " + pos + " bytes " +
+            (endTime - startTime) / 1000 + " usec allocated: " + allocated);
+        inputChannel.close();
+        if (pos != numBytes) {
+            throw new IOException(filePath + ": small read size mismatch: " +
+                pos + " expected: " + numBytes);
+        }
+        delete(kfsAccess, filePath);
+    }
+
+    private static void testGatherScatter(KfsAccess kfsAccess, String baseDir)
+            throws IOException {
+        final String filePath = baseDir + "/sample_file.gather";
+        final int[] sizes = { 10, 200000, 0, 7, 1048576, 1048570, 300000, 5 };
+        int numBytes = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            numBytes += sizes[i];
+        }
+        final char[] dataBuf = new char[numBytes];
+        generateData(dataBuf, numBytes);
+        final byte[] buf = new String(dataBuf).getBytes();
+        final ByteBuffer[] srcs = new ByteBuffer[sizes.length];
+        final ByteBuffer[] dsts = new ByteBuffer[sizes.length];
+        for (int i = 0, pos = 0; i < sizes.length; pos += sizes[i], i++) {
+            srcs[i] = (i & 1) == 0 ? ByteBuffer.allocate(sizes[i]) :
+                ByteBuffer.allocateDirect(sizes[i]);
+            srcs[i].put(buf, pos, sizes[i]);
+            srcs[i].flip();
+            dsts[i] = (i & 1) != 0 ? ByteBuffer.allocate(sizes[i]) :
+                ByteBuffer.allocateDirect(sizes[i]);
+        }
+        final KfsOutputChannel outputChannel = kfsAccess.kfs_create(filePath);
+        outputChannel.write(ByteBuffer.wrap(buf, 0, 3));
+        srcs[0].position(3);
+        long res = outputChannel.write(srcs);
+        if (res != numBytes - 3 || outputChannel.tell() != numBytes) {
+            throw new IOException(filePath + ": gathering write returned: " +
+                res + " pos: " + outputChannel.tell());
+        }
+        outputChannel.close();
+
+        final KfsInputChannel inputChannel = kfsAccess.kfs_open(filePath);
+        res = inputChannel.read(dsts);
+        if (res != numBytes) {
+            throw new IOException(filePath + ": scattering read returned: " +
+                res);
+        }
+        for (int i = 0, pos = 0; i < sizes.length; pos += sizes[i], i++) {
+            for (int k = 0; k < sizes[i]; k++) {
+                if (buf[pos + k] != dsts[i].get(k)) {
+                    throw new IOException(filePath + ": data mismatch at " +
+                        (pos + k) + " gathering write / scattering read");
+                }
+            }
+            dsts[i].clear();
+        }
+        if (inputChannel.read(dsts) != -1) {
+            throw new IOException(filePath + ": scattering read past EOF");
+        }
+        inputChannel.close();
+        delete(kfsAccess, filePath);
+    }
 }
@@ -0,0 +1,487 @@
+/**
+ * $Id$
+ *
+ * Created 2026/10/17
+ *
+ * Copyright 2026 Quantcast Corporation. All rights reserved.
+ *
+ * This file is part of Quantcast File System
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * \brief Parallel recursive directory tree walker.
+ *
+ * The directories are listed concurrently with DirectoryIterator by the
+ * tasks run on a bounded process wide executor, shared by all walks. Each
+ * walk runs at most the walker thread count listing tasks at a time, and
+ * each task normally has one directory open at a time. The sub directories
+ * found are pushed onto a per walk stack, and any idle task of the walk
+ * picks up the most recently found directory. Processing the stack in the
+ * last in first out order walks the tree depth first, and keeps the number
+ * of pending directories small. The stack is bounded by the queue size: when
+ * it is full, the task lists the directory it found right away, before it
+ * continues with the current one, therefore the number of open directories
+ * is then bounded by the thread count times the tree depth.
+ *
+ * The entries are returned through a bounded queue, in no particular order,
+ * except that a directory is always returned before its entries. The tasks
+ * do not block the executor threads when the queue is full: the task saves
+ * its open directories and its position, and ends. The walk resubmits the
+ * saved tasks once the caller has consumed half of the queue. The memory use
+ * is thus bounded regardless of the tree size. The tasks reference only the
+ * walk state, not the walk, so the walk that the caller abandons without
+ * closing it becomes unreachable, and the resource cleaner then stops its
+ * tasks, and closes the directories.
+ */
+
+package com.quantcast.qfs.access;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+final public class KfsTreeWalker
+{
+    // Process wide limit of the number of directories listed concurrently
+    // by all walks.
+    private final static int WALK_THREADS = Math.max(1,
+        Integer.getInteger("qfs.access.tree.walk.threads", 16));
+    private static ThreadPoolExecutor executor = null;
+
+    private final KfsAccess     fs;
+    private final KfsAccessPool pool;
+    private final int           threadCount;
+    private final int           queueSize;
+
+    public KfsTreeWalker(KfsAccessPool pool, int threadCount)
+    {
+        this(null, pool, threadCount, 1 << 12);
+    }
+
+    public KfsTreeWalker(KfsAccess fs, int threadCount)
+    {
+        this(fs, null, threadCount, 1 << 12);
+    }
+
+    // The thread count is the maximum number of directories listed
+    // concurrently by one walk.
+    public KfsTreeWalker(KfsAccess fs, KfsAccessPool pool, int threadCount,
+            int queueSize)
+    {
+        if ((fs == null) == (pool == null)) {
+            throw new IllegalArgumentException(
+                "either client or client pool must be specified");
+        }
+        if (threadCount <= 0 || queueSize <= 0) {
+            throw new IllegalArgumentException("thread count: " +
+                threadCount + " queue size: " + queueSize);
+        }
+        this.fs          = fs;
+        this.pool        = pool;
+        this.threadCount = threadCount;
+        this.queueSize   = queueSize;
+    }
+
+    private static synchronized ThreadPoolExecutor getExecutor()
+    {
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(
+                WALK_THREADS, WALK_THREADS,
+                60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        final Thread t = new Thread(r, "QFS tree walk");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    private KfsAccess access()
+    {
+        return pool == null ? fs : pool.getShard();
+    }
+
+    // Starts walking the tree rooted at the path. The root itself is not
+    // returned. The walk should be closed, unless all entries are consumed,
+    // otherwise the listing continues until the walk is garbage collected.
+    public Walk walk(String root) throws IOException
+    {
+        final KfsAccess   access = access();
+        final KfsFileAttr attr   = new KfsFileAttr();
+        access.kfs_retToIOException(access.kfs_stat(root, attr), root);
+        if (! attr.isDirectory) {
+            throw new IOException(root + ": not a directory");
+        }
+        return new Walk(root);
+    }
+
+    // Open directory, and the entry that was read, but not queued yet.
+    private static final class Lister
+    {
+        private final String                      prefix;
+        private final KfsAccess.DirectoryIterator itr;
+        private KfsFileAttr                       pending = null;
+
+        Lister(String dir, KfsAccess.DirectoryIterator itr)
+        {
+            this.prefix = dir.endsWith("/") ? dir : dir + "/";
+            this.itr    = itr;
+        }
+    }
+
+    private static void closeAll(LinkedList<Lister> stack)
+    {
+        while (! stack.isEmpty()) {
+            stack.removeFirst().itr.close();
+        }
+    }
+
+    // The walk state shared by the listing tasks and the walk.
+    private final class State
+    {
+        private final Object                end        = new Object();
+        // The entries are counted by queued, the queue itself is not bounded,
+        // in order to always accept the end marker and the error.
+        private final BlockingQueue<Object> queue      =
+            new LinkedBlockingQueue<Object>();
+        private final AtomicInteger         queued     = new AtomicInteger();
+        private final LinkedList<String>    dirs       =
+            new LinkedList<String>();
+        // The open directory stacks of the tasks that ended because the
+        // queue was full.
+        private final LinkedList<LinkedList<Lister>> parked =
+            new LinkedList<LinkedList<Lister>>();
+        private final AtomicLong            dirCount   = new AtomicLong();
+        private final AtomicLong            entryCount = new AtomicLong();
+        // Running and parked tasks.
+        private int                         active     = 0;
+        private volatile int                parkedCount = 0;
+        private volatile boolean            closed     = false;
+        private volatile boolean            failed     = false;
+
+        private final class Task implements Runnable
+        {
+            private final LinkedList<Lister> stack;
+
+            Task(LinkedList<Lister> stack)
+            {
+                this.stack = stack;
+            }
+
+            public void run()
+            {
+                boolean done = false;
+                while (! done) {
+                    Object  status = null;
+                    boolean park   = false;
+                    try {
+                        park = list(stack);
+                    } catch (IOException ex) {
+                        status = ex;
+                    } catch (RuntimeException ex) {
+                        status = ex;
+                    } catch (Error ex) {
+                        status = ex;
+                        throw ex;
+                    } finally {
+                        done = (park && park(stack)) || finish(stack, status);
+                    }
+                }
+            }
+        }
+
+        // Pushes the directory, and starts a listing task, unless the walk
+        // already has the maximum number of tasks. Returns false if the stack
+        // is full.
+        private synchronized boolean addDir(String path)
+        {
+            if (queueSize <= dirs.size()) {
+                return false;
+            }
+            dirs.addFirst(path);
+            if (threadCount <= active) {
+                return true;
+            }
+            active++;
+            getExecutor().execute(new Task(new LinkedList<Lister>()));
+            return true;
+        }
+
+        private boolean offer(Object item)
+        {
+            if (queueSize < queued.incrementAndGet()) {
+                queued.decrementAndGet();
+                return false;
+            }
+            queue.add(item);
+            return true;
+        }
+
+        private Lister open(String dir) throws IOException
+        {
+            final KfsAccess.DirectoryIterator itr;
+            try {
+                itr = access().new DirectoryIterator(dir);
+            } catch (FileNotFoundException ex) {
+                return null; // Removed after it was found, skip.
+            }
+            dirCount.incrementAndGet();
+            return new Lister(dir, itr);
+        }
+
+        // Lists the directories on the stack, then the directories from the
+        // walk stack. Returns true if the queue is full, and the task should
+        // be parked, or false if there is nothing left to do.
+        private boolean list(LinkedList<Lister> stack) throws IOException
+        {
+            while (! closed && ! failed) {
+                if (stack.isEmpty()) {
+                    final String dir;
+                    synchronized (this) {
+                        if (dirs.isEmpty()) {
+                            return false;
+                        }
+                        dir = dirs.removeFirst();
+                    }
+                    final Lister lister = open(dir);
+                    if (lister != null) {
+                        stack.addFirst(lister);
+                    }
+                    continue;
+                }
+                final Lister lister = stack.getFirst();
+                final KfsFileAttr attr = lister.pending;
+                if (attr != null) {
+                    if (! offer(attr)) {
+                        return true;
+                    }
+                    lister.pending = null;
+                    if (attr.isDirectory && ! addDir(attr.filename)) {
+                        // The walk stack is full, list the directory now.
+                        final Lister sub = open(attr.filename);
+                        if (sub != null) {
+                            stack.addFirst(sub);
+                        }
+                    }
+                    continue;
+                }
+                if (! lister.itr.next()) {
+                    stack.removeFirst().itr.close();
+                    continue;
+                }
+                if (lister.itr.filename.equals(".") ||
+                        lister.itr.filename.equals("..")) {
+                    continue;
+                }
+                lister.pending = lister.itr.toFileAttr();
+                lister.pending.filename = lister.prefix + lister.itr.filename;
+                entryCount.incrementAndGet();
+            }
+            return false;
+        }
+
+        // Saves the task state. Returns false if the walk is stopped, and the
+        // task must finish instead.
+        private boolean park(LinkedList<Lister> stack)
+        {
+            synchronized (this) {
+                if (closed || failed) {
+                    return false;
+                }
+                parked.addLast(stack);
+                parkedCount = parked.size();
+            }
+            // The queue might have been drained before the task was parked.
+            resume();
+            return true;
+        }
+
+        // Resubmits the parked tasks if the queue is at most half full.
+        private synchronized void resume()
+        {
+            while (! parked.isEmpty() && queued.get() <= queueSize / 2 &&
+                    ! closed && ! failed) {
+                getExecutor().execute(new Task(parked.removeFirst()));
+            }
+            parkedCount = parked.size();
+        }
+
+        // Closes the task directories, and releases the task. Returns false
+        // if more directories were added since the task found the walk stack
+        // empty, and the task must continue.
+        private boolean finish(LinkedList<Lister> stack, Object status)
+        {
+            closeAll(stack);
+            LinkedList<LinkedList<Lister>> stopped = null;
+            final boolean last;
+            synchronized (this) {
+                if (status == null && ! closed && ! failed && ! dirs.isEmpty()) {
+                    return false;
+                }
+                if (status != null) {
+                    // Stop the remaining tasks, the first error is returned
+                    // to the caller.
+                    failed = true;
+                    dirs.clear();
+                    stopped = unpark();
+                }
+                last = --active == 0;
+            }
+            if (stopped != null) {
+                while (! stopped.isEmpty()) {
+                    closeAll(stopped.removeFirst());
+                }
+            }
+            if (status != null) {
+                queue.add(status);
+            }
+            if (last) {
+                queue.add(end);
+            }
+            return true;
+        }
+
+        private LinkedList<LinkedList<Lister>> unpark()
+        {
+            final LinkedList<LinkedList<Lister>> ret =
+                new LinkedList<LinkedList<Lister>>(parked);
+            active -= parked.size();
+            parked.clear();
+            parkedCount = 0;
+            return ret;
+        }
+
+        // Called by the walk after an entry was taken from the queue.
+        private void taken()
+        {
+            queued.decrementAndGet();
+            if (0 < parkedCount) {
+                resume();
+            }
+        }
+
+        private void close()
+        {
+            final LinkedList<LinkedList<Lister>> stopped;
+            synchronized (this) {
+                closed = true;
+                dirs.clear();
+                stopped = unpark();
+            }
+            while (! stopped.isEmpty()) {
+                closeAll(stopped.removeFirst());
+            }
+            queue.clear();
+        }
+    }
+
+    // The resource cleaner action, must not reference the walk.
+    private static final class Stop implements Runnable
+    {
+        private final State state;
+
+        Stop(State state)
+        {
+            this.state = state;
+        }
+
+        public void run()
+        {
+            state.close();
+        }
+    }
+
+    // Iterates over the entries of the tree. The KfsFileAttr filename field
+    // is set to the entry's path name.
+    final public class Walk
+    {
+        private final State                     state   = new State();
+        private final ResourceCleaner.Cleanable cleanable;
+        private boolean                         done    = false;
+
+        private Walk(String root)
+        {
+            cleanable = ResourceCleaner.register(this, new Stop(state), false);
+            state.addDir(root);
+        }
+
+        // Returns the next entry, or null once the walk is complete.
+        public KfsFileAttr next() throws IOException
+        {
+            if (done) {
+                return null;
+            }
+            final Object item;
+            try {
+                item = state.queue.take();
+            } catch (InterruptedException ex) {
+                close();
+                throw new IOException("tree walk interrupted");
+            }
+            if (item == state.end) {
+                done = true;
+                cleanable.cancel();
+                return null;
+            }
+            if (item instanceof IOException) {
+                close();
+                throw (IOException)item;
+            }
+            if (item instanceof RuntimeException) {
+                close();
+                throw (RuntimeException)item;
+            }
+            if (item instanceof Error) {
+                close();
+                throw (Error)item;
+            }
+            state.taken();
+            return (KfsFileAttr)item;
+        }
+
+        // Stops the walk, and closes the directories. May be called more than
+        // once.
+        public void close()
+        {
+            if (done) {
+                return;
+            }
+            done = true;
+            cleanable.clean();
+        }
+
+        // Returns the number of directories listed so far.
+        public long getDirCount()
+        {
+            return state.dirCount.get();
+        }
+
+        // Returns the number of entries found so far.
+        public long getEntryCount()
+        {
+            return state.entryCount.get();
+        }
+    }
+}
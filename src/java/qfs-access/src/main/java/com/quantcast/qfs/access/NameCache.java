@@ -0,0 +1,131 @@
+/**
+ * $Id$
+ *
+ * Created 2026/10/17
+ *
+ * Copyright 2026 Quantcast Corporation. All rights reserved.
+ *
+ * This file is part of Quantcast File System
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * \brief Bounded user or group id to name cache, shared by all clients in
+ * the process, in order to return the same name string instance for the same
+ * id, instead of decoding a new one for every stat and directory entry.
+ *
+ * The cache is a direct mapped table indexed by the id, therefore lookups do
+ * not allocate memory, and a new entry replaces the entry with the same
+ * index. The entries expire after the time to live, in order to pick up user
+ * and group database changes. The name lookups by id verify the name bytes,
+ * if present, and the cached name is returned only if the bytes match. The
+ * cache is never used to convert names into ids, as the clients in the same
+ * process might be connected to the meta servers with different user and
+ * group databases.
+ */
+
+package com.quantcast.qfs.access;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+final class NameCache
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final class Entry
+    {
+        final long   id;
+        final String name;
+        final byte[] utf8;
+        final long   expires;
+
+        Entry(long id, String name, byte[] utf8, long expires)
+        {
+            this.id      = id;
+            this.name    = name;
+            this.utf8    = utf8;
+            this.expires = expires;
+        }
+    }
+
+    private final Entry[] byId;
+    private final int     mask;
+    private final long    ttlMs;
+
+    NameCache(int size, long ttlMs)
+    {
+        int sz = 1;
+        while (sz < size) {
+            sz <<= 1;
+        }
+        this.byId  = new Entry[sz];
+        this.mask  = sz - 1;
+        this.ttlMs = ttlMs;
+    }
+
+    private int idIndex(long id)
+    {
+        final long h = id * 0x9E3779B97F4A7C15L;
+        return (int)(h >>> 32) & mask;
+    }
+
+    private Entry lookup(long id)
+    {
+        final Entry entry = byId[idIndex(id)];
+        if (entry == null || entry.id != id ||
+                entry.expires <= System.currentTimeMillis()) {
+            return null;
+        }
+        return entry;
+    }
+
+    // Returns the cached name if the len bytes at the buffer position are
+    // the same as the cached name bytes, or null. The buffer position is not
+    // changed.
+    String get(long id, ByteBuffer buf, int len)
+    {
+        final Entry entry = lookup(id);
+        if (entry == null || entry.utf8.length != len) {
+            return null;
+        }
+        final int pos = buf.position();
+        for (int i = 0; i < len; i++) {
+            if (buf.get(pos + i) != entry.utf8[i]) {
+                return null;
+            }
+        }
+        return entry.name;
+    }
+
+    void put(long id, String name, byte[] utf8)
+    {
+        final Entry entry = new Entry(id, name, utf8,
+            System.currentTimeMillis() + ttlMs);
+        byId[idIndex(id)] = entry;
+    }
+
+    // Returns the cached instance of the name, if the cache has the same name
+    // for the id, otherwise adds the name to the cache.
+    String intern(long id, String name)
+    {
+        if (name == null || name.length() <= 0) {
+            return name;
+        }
+        final Entry entry = lookup(id);
+        if (entry != null && entry.name.equals(name)) {
+            return entry.name;
+        }
+        put(id, name, name.getBytes(UTF8));
+        return name;
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * $Id$
+ *
+ * Created 2026/10/17
+ *
+ * Copyright 2026 Quantcast Corporation. All rights reserved.
+ *
+ * This file is part of Quantcast File System
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * \brief Reclaims native resources of the objects that became unreachable
+ * without being closed. Replaces finalize(): the objects are tracked with
+ * phantom references, and the cleanup actions are run by a single daemon
+ * thread once the objects are collected. The cleanup action must not
+ * reference the object it cleans, otherwise the object never becomes
+ * phantom reachable.
+ *
+ * With leak detection on (qfs.access.leak.detection=true) the registration
+ * stack is recorded, and the stack of each object that was not closed is
+ * reported to the standard error when the object is reclaimed.
+ */
+
+package com.quantcast.qfs.access;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+final class ResourceCleaner
+{
+    final static boolean LEAK_DETECTION = Boolean.getBoolean(
+        "qfs.access.leak.detection");
+
+    private final static ReferenceQueue<Object> queue =
+        new ReferenceQueue<Object>();
+    // Keeps the references reachable until these are cleaned or cancelled.
+    private final static ConcurrentHashMap<Cleanable, Boolean> registered =
+        new ConcurrentHashMap<Cleanable, Boolean>();
+    private final static AtomicLong registeredCount = new AtomicLong();
+    private final static AtomicLong leakedCount  = new AtomicLong();
+    private final static AtomicLong errorCount      = new AtomicLong();
+
+    static {
+        final Thread thread = new Thread("QFS resource cleaner") {
+            public void run() {
+                for (; ;) {
+                    try {
+                        ((Cleanable)queue.remove()).reclaim();
+                    } catch (InterruptedException ex) {
+                        // Ignore.
+                    } catch (Throwable ex) {
+                        errorCount.incrementAndGet();
+                    }
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY - 2);
+        thread.start();
+    }
+
+    final static class Cleanable extends PhantomReference<Object>
+    {
+        private final    Runnable  action;
+        private final    boolean   closeable;
+        private final    Throwable allocationSite;
+        private final    String    description;
+        private volatile boolean   done = false;
+
+        private Cleanable(Object obj, Runnable action, boolean closeable)
+        {
+            super(obj, queue);
+            this.action      = action;
+            this.closeable   = closeable;
+            this.description = obj.getClass().getName();
+            this.allocationSite = (closeable && LEAK_DETECTION) ?
+                new Throwable(description + " allocation site") : null;
+        }
+
+        private boolean deregister()
+        {
+            synchronized (this) {
+                if (done) {
+                    return false;
+                }
+                done = true;
+            }
+            registered.remove(this);
+            clear();
+            return true;
+        }
+
+        // Run the cleanup action now, at most once. Used by the explicit
+        // close.
+        void clean()
+        {
+            if (deregister()) {
+                action.run();
+            }
+        }
+
+        // Deregister without running the cleanup action, once the resources
+        // were released by the explicit close.
+        void cancel()
+        {
+            deregister();
+        }
+
+        private void reclaim()
+        {
+            if (! deregister()) {
+                return;
+            }
+            if (closeable) {
+                leakedCount.incrementAndGet();
+            }
+            if (allocationSite != null) {
+                System.err.println("QFS resource leak: " + description +
+                    " was not closed");
+                allocationSite.printStackTrace();
+            }
+            action.run();
+        }
+    }
+
+    private ResourceCleaner()
+    {
+    }
+
+    // Register the cleanup action to run after the object becomes phantom
+    // reachable. The closeable objects that are reclaimed by the cleaner,
+    // instead of being closed, are counted as leaked.
+    static Cleanable register(Object obj, Runnable action, boolean closeable)
+    {
+        if (obj == null || action == null) {
+            throw new NullPointerException();
+        }
+        final Cleanable ret = new Cleanable(obj, action, closeable);
+        registered.put(ret, Boolean.TRUE);
+        registeredCount.incrementAndGet();
+        return ret;
+    }
+
+    // Number of closeable objects reclaimed without being closed.
+    static long getLeakedCount()
+    {
+        return leakedCount.get();
+    }
+
+    static Map<String, String> getStats()
+    {
+        final Map<String, String> ret = new TreeMap<String, String>();
+        ret.put("Cleaner.Registered", Long.toString(registeredCount.get()));
+        ret.put("Cleaner.Pending",    Integer.toString(registered.size()));
+        ret.put("Cleaner.Leaked",     Long.toString(leakedCount.get()));
+        ret.put("Cleaner.Errors",     Long.toString(errorCount.get()));
+        ret.put("Cleaner.LeakDetection", LEAK_DETECTION ? "1" : "0");
+        return ret;
+    }
+}
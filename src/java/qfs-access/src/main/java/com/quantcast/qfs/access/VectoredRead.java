@@ -0,0 +1,335 @@
+/**
+ * $Id$
+ *
+ * Created 2026/10/17
+ *
+ * Copyright 2026 Quantcast Corporation. All rights reserved.
+ *
+ * This file is part of Quantcast File System
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ * \brief Vectored read implementation. Sorts the requested ranges, merges
+ * ranges separated by small gaps into a single read, splits large ranges,
+ * and issues the resulting positional reads in parallel.
+ */
+
+package com.quantcast.qfs.access;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+final class VectoredRead
+{
+    // Ranges with gap less or equal to the min seek are read with one read.
+    private final static int MIN_SEEK = Integer.getInteger(
+        "qfs.access.vectored.min.seek", 16 << 10);
+    // Max size of merged read, and max size of a single read of a range.
+    private final static int MAX_READ = Math.max(1, Math.min(
+        BufferPool.BUFFER_SIZE,
+        Integer.getInteger("qfs.access.vectored.max.read", 1 << 20)));
+    private final static int THREADS = Math.max(1, Integer.getInteger(
+        "qfs.access.vectored.threads", 8));
+
+    private static ExecutorService executor = null;
+
+    private static synchronized ExecutorService getExecutor()
+    {
+        if (executor == null) {
+            final AtomicInteger count = new AtomicInteger();
+            final ThreadPoolExecutor ex = new ThreadPoolExecutor(
+                THREADS, THREADS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        final Thread t = new Thread(r,
+                            "QFS vectored read " + count.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+            ex.allowCoreThreadTimeOut(true);
+            executor = ex;
+        }
+        return executor;
+    }
+
+    final static class Result extends FutureTask<ByteBuffer>
+    {
+        private final static Callable<ByteBuffer> NONE =
+            new Callable<ByteBuffer>() {
+                public ByteBuffer call() {
+                    throw new IllegalStateException("not runnable");
+                }
+            };
+        Result()
+        {
+            super(NONE);
+        }
+        public void run()
+        {
+            // Completed only by the read.
+        }
+        void complete(ByteBuffer buf)
+        {
+            set(buf);
+        }
+        void fail(Throwable ex)
+        {
+            setException(ex);
+        }
+    }
+
+    private final static Comparator<KfsInputChannel.ReadRange> BY_OFFSET =
+        new Comparator<KfsInputChannel.ReadRange>() {
+            public int compare(KfsInputChannel.ReadRange a,
+                    KfsInputChannel.ReadRange b) {
+                return a.getOffset() < b.getOffset() ? -1 :
+                    (a.getOffset() == b.getOffset() ? 0 : 1);
+            }
+        };
+
+    // Single positional read, that fills one or more ranges.
+    private final static class Fetch implements Runnable
+    {
+        private final KfsInputChannel           channel;
+        private final long                      position;
+        private final int                       length;
+        private final KfsInputChannel.ReadRange target; // split range part
+        private final List<KfsInputChannel.ReadRange> ranges;
+
+        Fetch(KfsInputChannel channel, long position, int length,
+                KfsInputChannel.ReadRange target,
+                List<KfsInputChannel.ReadRange> ranges)
+        {
+            this.channel  = channel;
+            this.position = position;
+            this.length   = length;
+            this.target   = target;
+            this.ranges   = ranges;
+        }
+
+        public void run()
+        {
+            if (target != null) {
+                runPart();
+            } else {
+                runMerged();
+            }
+        }
+
+        // Fails the ranges of the fetch that could not be issued.
+        void fail(Throwable ex)
+        {
+            if (target != null) {
+                target.partDone(ex);
+            } else {
+                failAll(ranges, ex);
+            }
+        }
+
+        private void runPart()
+        {
+            final ByteBuffer dst = target.buffer.duplicate();
+            final int        off = (int)(position - target.getOffset());
+            dst.limit(off + length);
+            dst.position(off);
+            try {
+                if (readFully(channel, position, dst) < length) {
+                    throw eof(target);
+                }
+                target.partDone(null);
+            } catch (Throwable ex) {
+                target.partDone(ex);
+            }
+        }
+
+        private void runMerged()
+        {
+            final ByteBuffer buf = BufferPool.getInstance().getBuffer();
+            try {
+                buf.limit(length);
+                final int nrd = readFully(channel, position, buf);
+                for (int i = 0; i < ranges.size(); i++) {
+                    final KfsInputChannel.ReadRange range = ranges.get(i);
+                    final int off = (int)(range.getOffset() - position);
+                    if (nrd < off + range.getLength()) {
+                        range.partDone(eof(range));
+                        continue;
+                    }
+                    buf.limit(off + range.getLength());
+                    buf.position(off);
+                    final ByteBuffer dst = range.buffer.duplicate();
+                    dst.put(buf);
+                    range.partDone(null);
+                }
+            } catch (Throwable ex) {
+                for (int i = 0; i < ranges.size(); i++) {
+                    ranges.get(i).partDone(ex);
+                }
+            } finally {
+                BufferPool.getInstance().releaseBuffer(buf);
+            }
+        }
+    }
+
+    private static EOFException eof(KfsInputChannel.ReadRange range)
+    {
+        return new EOFException("range: " + range.getOffset() + "+" +
+            range.getLength() + " is past end of file");
+    }
+
+    // Returns number of bytes read, which is less than dst.remaining() only
+    // if end of file is reached.
+    private static int readFully(KfsInputChannel channel, long position,
+            ByteBuffer dst) throws IOException
+    {
+        int total = 0;
+        while (dst.hasRemaining()) {
+            final int nrd = channel.read(position + total, dst);
+            if (nrd <= 0) {
+                break;
+            }
+            total += nrd;
+        }
+        return total;
+    }
+
+    private static void failAll(List<KfsInputChannel.ReadRange> ranges,
+            Throwable ex)
+    {
+        for (int i = 0; i < ranges.size(); i++) {
+            ranges.get(i).partDone(ex);
+        }
+    }
+
+    private static void allocate(KfsInputChannel.ReadRange range,
+            KfsInputChannel.BufferAllocator allocator)
+    {
+        final ByteBuffer buf = allocator.allocate(range.getLength());
+        if (buf.capacity() < range.getLength()) {
+            throw new IllegalArgumentException("allocated buffer capacity: " +
+                buf.capacity() + " less than range length: " +
+                range.getLength());
+        }
+        buf.clear();
+        buf.limit(range.getLength());
+        range.buffer = buf;
+    }
+
+    static void read(KfsInputChannel channel,
+            List<? extends KfsInputChannel.ReadRange> ranges,
+            KfsInputChannel.BufferAllocator allocator)
+    {
+        final List<KfsInputChannel.ReadRange> sorted =
+            new ArrayList<KfsInputChannel.ReadRange>(ranges);
+        Collections.sort(sorted, BY_OFFSET);
+        for (int i = 1; i < sorted.size(); i++) {
+            final KfsInputChannel.ReadRange prev = sorted.get(i - 1);
+            if (sorted.get(i).getOffset() < prev.getOffset() + prev.getLength()) {
+                throw new IllegalArgumentException("overlapping ranges: " +
+                    prev.getOffset() + "+" + prev.getLength() + " " +
+                    sorted.get(i).getOffset());
+            }
+        }
+        final List<Fetch> fetches = new ArrayList<Fetch>();
+        // Nothing is issued until all ranges are set up, therefore on
+        // allocation failure all ranges are failed, including the ones
+        // already set up, otherwise their futures would never complete.
+        try {
+            int i = 0;
+            while (i < sorted.size()) {
+                final KfsInputChannel.ReadRange first = sorted.get(i);
+                allocate(first, allocator);
+                if (first.getLength() == 0) {
+                    first.setParts(0);
+                    i++;
+                    continue;
+                }
+                if (first.getLength() > MAX_READ) {
+                    // Split large range into parts read in parallel.
+                    first.setParts(
+                        (first.getLength() + MAX_READ - 1) / MAX_READ);
+                    for (int off = 0; off < first.getLength();
+                            off += MAX_READ) {
+                        fetches.add(new Fetch(channel, first.getOffset() + off,
+                            Math.min(MAX_READ, first.getLength() - off), first,
+                            null));
+                    }
+                    i++;
+                    continue;
+                }
+                final List<KfsInputChannel.ReadRange> group =
+                    new ArrayList<KfsInputChannel.ReadRange>();
+                group.add(first);
+                first.setParts(1);
+                long end = first.getOffset() + first.getLength();
+                for (i++; i < sorted.size(); i++) {
+                    final KfsInputChannel.ReadRange next = sorted.get(i);
+                    final long nextEnd = next.getOffset() + next.getLength();
+                    if (next.getLength() <= 0 ||
+                            MIN_SEEK < next.getOffset() - end ||
+                            MAX_READ < nextEnd - first.getOffset()) {
+                        break;
+                    }
+                    allocate(next, allocator);
+                    next.setParts(1);
+                    group.add(next);
+                    end = nextEnd;
+                }
+                if (group.size() == 1) {
+                    fetches.add(new Fetch(channel, first.getOffset(),
+                        first.getLength(), first, null));
+                } else {
+                    fetches.add(new Fetch(channel, first.getOffset(),
+                        (int)(end - first.getOffset()), null, group));
+                }
+            }
+        } catch (RuntimeException ex) {
+            failAll(sorted, ex);
+            throw ex;
+        } catch (Error ex) {
+            failAll(sorted, ex);
+            throw ex;
+        }
+        if (fetches.size() == 1) {
+            fetches.get(0).run();
+            return;
+        }
+        final ExecutorService ex = getExecutor();
+        int k = 0;
+        try {
+            for (; k < fetches.size(); k++) {
+                ex.execute(fetches.get(k));
+            }
+        } catch (RuntimeException e) {
+            for (; k < fetches.size(); k++) {
+                fetches.get(k).fail(e);
+            }
+            throw e;
+        }
+    }
+}
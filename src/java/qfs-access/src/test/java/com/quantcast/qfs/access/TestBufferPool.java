@@ -0,0 +1,173 @@
+/**
+ * $Id$
+ *
+ *
+ * Copyright 2026 Quantcast Corporation. All rights reserved.
+ *
+ * This file is part of Quantcast File System (QFS).
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package com.quantcast.qfs.access;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+public class TestBufferPool extends TestCase
+{
+    public void testSizeClasses()
+    {
+        final BufferPool pool = new BufferPool(1 << 20, 0, 0, 2, 0);
+        assertEquals(4096, pool.getBuffer(1).capacity());
+        assertEquals(4096, pool.getBuffer(4096).capacity());
+        assertEquals(8192, pool.getBuffer(4097).capacity());
+        assertEquals(1 << 20, pool.getBuffer(1 << 20).capacity());
+        // Larger than max pooled size is not rounded.
+        assertEquals((1 << 20) + 1, pool.getBuffer((1 << 20) + 1).capacity());
+        final ByteBuffer buf = pool.getBuffer(100);
+        assertTrue(buf.isDirect());
+        assertEquals(0, buf.position());
+        assertEquals(buf.capacity(), buf.limit());
+    }
+
+    public void testReuseAndCounters()
+    {
+        final BufferPool pool = new BufferPool(1 << 20, 0, 0, 2, 0);
+        final ByteBuffer buf = pool.getBuffer(5000);
+        assertEquals(8192, pool.getAllocatedBytes());
+        assertEquals(8192, pool.getInUseBytes());
+        assertEquals(0, pool.getPooledBytes());
+        buf.position(10);
+        pool.releaseBuffer(buf);
+        assertEquals(8192, pool.getPooledBytes());
+        assertEquals(0, pool.getInUseBytes());
+        final ByteBuffer other = pool.getBuffer(6000);
+        assertSame(buf, other);
+        assertEquals(0, other.position());
+        assertEquals(8192, pool.getAllocatedBytes());
+        // Non pooled size is discarded on release.
+        final ByteBuffer large = pool.getBuffer((1 << 20) + 1);
+        pool.releaseBuffer(large);
+        pool.releaseBuffer(other);
+        assertEquals(8192, pool.getAllocatedBytes());
+        assertEquals(8192, pool.getPooledBytes());
+    }
+
+    public void testMagazineOverflow()
+    {
+        final BufferPool pool = new BufferPool(1 << 20, 0, 0, 2, 0);
+        final ByteBuffer[] bufs = new ByteBuffer[10];
+        for (int i = 0; i < bufs.length; i++) {
+            bufs[i] = pool.getBuffer(4096);
+        }
+        for (int i = 0; i < bufs.length; i++) {
+            pool.releaseBuffer(bufs[i]);
+        }
+        assertEquals(bufs.length * 4096L, pool.getPooledBytes());
+        for (int i = 0; i < bufs.length; i++) {
+            pool.getBuffer(4096);
+        }
+        assertEquals(0, pool.getPooledBytes());
+        assertEquals(bufs.length * 4096L, pool.getAllocatedBytes());
+    }
+
+    public void testCapacityLimit()
+    {
+        final BufferPool pool = new BufferPool(1 << 20, 16 << 10, 0, 0, 0);
+        final ByteBuffer small1 = pool.getBuffer(4096);
+        final ByteBuffer small2 = pool.getBuffer(4096);
+        pool.releaseBuffer(small1);
+        pool.releaseBuffer(small2);
+        assertEquals(8192, pool.getPooledBytes());
+        // Free buffers of other size classes are discarded to make room.
+        final ByteBuffer big = pool.getBuffer(16 << 10);
+        assertEquals(0, pool.getPooledBytes());
+        assertEquals(16 << 10, pool.getAllocatedBytes());
+        // Over limit allocation succeeds, and is discarded on release.
+        final ByteBuffer over = pool.getBuffer(4096);
+        assertEquals((16 << 10) + 4096, pool.getAllocatedBytes());
+        pool.releaseBuffer(over);
+        assertEquals(16 << 10, pool.getAllocatedBytes());
+        assertEquals(0, pool.getPooledBytes());
+        pool.releaseBuffer(big);
+        assertEquals(16 << 10, pool.getPooledBytes());
+        assertEquals("1",
+            pool.getStats().get("BufferPool.OverLimitAllocations"));
+    }
+
+    public void testWaitForRelease() throws Exception
+    {
+        final BufferPool pool = new BufferPool(1 << 20, 4096, 10000, 2, 0);
+        final ByteBuffer buf = pool.getBuffer(4096);
+        final Thread releaser = new Thread() {
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                pool.releaseBuffer(buf);
+            }
+        };
+        releaser.start();
+        final ByteBuffer next = pool.getBuffer(4096);
+        releaser.join();
+        assertSame(buf, next);
+        assertEquals(4096, pool.getAllocatedBytes());
+    }
+
+    public void testIdleTrim() throws Exception
+    {
+        final BufferPool pool = new BufferPool(1 << 20, 0, 0, 0, 0);
+        final ByteBuffer buf1 = pool.getBuffer(4096);
+        final ByteBuffer buf2 = pool.getBuffer(4096);
+        pool.releaseBuffer(buf1);
+        pool.releaseBuffer(buf2);
+        pool.trim();
+        // Only one buffer was used after the first trim.
+        pool.releaseBuffer(pool.getBuffer(4096));
+        pool.releaseBuffer(pool.getBuffer(4096));
+        assertEquals(8192, pool.getPooledBytes());
+        pool.trim();
+        assertEquals(4096, pool.getPooledBytes());
+        pool.trim();
+        assertEquals(0, pool.getPooledBytes());
+        assertEquals(0, pool.getAllocatedBytes());
+
+        // Magazine of the exited thread is reclaimed.
+        final BufferPool magPool = new BufferPool(1 << 20, 0, 0, 4, 0);
+        final Thread thread = new Thread() {
+            public void run() {
+                magPool.releaseBuffer(magPool.getBuffer(4096));
+            }
+        };
+        thread.start();
+        thread.join();
+        assertEquals(4096, magPool.getPooledBytes());
+        magPool.trim();
+        magPool.trim();
+        assertEquals(0, magPool.getAllocatedBytes());
+
+        // Idle magazine of the live thread is moved to the shared free list
+        // by the second trim, and then discarded by the third.
+        magPool.releaseBuffer(magPool.getBuffer(4096));
+        magPool.trim();
+        magPool.trim();
+        assertEquals(4096, magPool.getPooledBytes());
+        magPool.trim();
+        assertEquals(0, magPool.getAllocatedBytes());
+    }
+}
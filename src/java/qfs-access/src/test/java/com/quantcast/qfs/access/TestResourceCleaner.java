@@ -0,0 +1,80 @@
+/**
+ * $Id$
+ *
+ *
+ * Copyright 2026 Quantcast Corporation. All rights reserved.
+ *
+ * This file is part of Quantcast File System (QFS).
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package com.quantcast.qfs.access;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class TestResourceCleaner extends TestCase
+{
+    private static final class Counter implements Runnable
+    {
+        final AtomicInteger  runs  = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        public void run()
+        {
+            runs.incrementAndGet();
+            latch.countDown();
+        }
+    }
+
+    public void testExplicitClean()
+    {
+        final Object    obj     = new Object();
+        final Counter   counter = new Counter();
+        final ResourceCleaner.Cleanable cleanable =
+            ResourceCleaner.register(obj, counter, true);
+        cleanable.clean();
+        cleanable.clean();
+        assertEquals(1, counter.runs.get());
+        cleanable.cancel();
+        assertEquals(1, counter.runs.get());
+    }
+
+    public void testCancel()
+    {
+        final Counter counter = new Counter();
+        ResourceCleaner.register(new Object(), counter, true).cancel();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        assertEquals(0, counter.runs.get());
+    }
+
+    public void testReclaimUnreachable() throws Exception
+    {
+        final long    leaked  = ResourceCleaner.getLeakedCount();
+        final Counter counter = new Counter();
+        ResourceCleaner.register(new Object(), counter, true);
+        for (int i = 0; i < 100 && counter.latch.getCount() > 0; i++) {
+            System.gc();
+            counter.latch.await(100, TimeUnit.MILLISECONDS);
+        }
+        assertEquals(1, counter.runs.get());
+        assertTrue(leaked < ResourceCleaner.getLeakedCount());
+    }
+}
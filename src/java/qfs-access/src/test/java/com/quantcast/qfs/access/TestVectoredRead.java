@@ -0,0 +1,70 @@
+/**
+ * $Id$
+ *
+ *
+ * Copyright 2026 Quantcast Corporation. All rights reserved.
+ *
+ * This file is part of Quantcast File System (QFS).
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package com.quantcast.qfs.access;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class TestVectoredRead extends TestCase
+{
+    public void testAllocationFailure() throws Exception
+    {
+        // Adjacent ranges are merged into one read, the large one is split.
+        final List<KfsInputChannel.ReadRange> ranges =
+            new ArrayList<KfsInputChannel.ReadRange>();
+        ranges.add(new KfsInputChannel.ReadRange(0, 100));
+        ranges.add(new KfsInputChannel.ReadRange(200, 100));
+        ranges.add(new KfsInputChannel.ReadRange(1 << 20, 4 << 20));
+        ranges.add(new KfsInputChannel.ReadRange(16 << 20, 100));
+        final RuntimeException failure = new RuntimeException("no memory");
+        final int[] count = new int[1];
+        try {
+            // Nothing must be read, therefore the channel is not needed.
+            VectoredRead.read(null, ranges,
+                new KfsInputChannel.BufferAllocator() {
+                    public ByteBuffer allocate(int size) {
+                        if (++count[0] == 3) {
+                            throw failure;
+                        }
+                        return ByteBuffer.allocate(size);
+                    }
+                });
+            fail("allocation failure expected");
+        } catch (RuntimeException ex) {
+            assertSame(failure, ex);
+        }
+        for (KfsInputChannel.ReadRange range : ranges) {
+            try {
+                range.getData().get(10, TimeUnit.SECONDS);
+                fail("range " + range.getOffset() + " failure expected");
+            } catch (ExecutionException ex) {
+                assertSame(failure, ex.getCause());
+            }
+        }
+    }
+}